@@ -27,6 +27,14 @@ public class SerializableStateObservation {
      */
     public byte[] imageArray;
 
+    /**
+     * Size of the image, and if it holds raw RGB pixels (3 bytes per pixel, row by row)
+     * instead of a PNG file. Only set with the binary protocol.
+     */
+    public int imageWidth;
+    public int imageHeight;
+    public boolean isImageRaw;
+
     /**
      * Indicates the state of the protocol
      */
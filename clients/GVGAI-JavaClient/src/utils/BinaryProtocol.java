@@ -0,0 +1,288 @@
+package utils;
+
+import serialization.Observation;
+import serialization.SerializableStateObservation;
+import serialization.Types;
+import serialization.Vector2d;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Binary protocol of the learning track, an alternative to the JSON text lines when using sockets.
+ * The client asks for it appending "#BINARY" to its START_DONE reply. If the server agrees, all the
+ * following messages in both directions are frames:
+ *
+ *   int length (of the rest of the frame) | long message ID | byte kind | payload
+ *
+ * The payload of a TEXT frame is a UTF-8 string, and the payload of an OBSERVATION frame is a
+ * state observation packed in primitives (see readObservation()). A BATCH frame holds the
+ * observations of a vectorized environment (see readBatch()). If the client also appends "#DELTA",
+ * observations come in DELTA and DELTA_BATCH frames instead, with only what changed since the
+ * previous observation (see readDelta()). The first byte of a frame is
+ * always 0, while text lines start with a digit, so the client can tell if the server agreed.
+ */
+public class BinaryProtocol {
+
+    /**
+     * Suffix of the START_DONE reply to ask for the binary protocol.
+     */
+    public static final String BINARY = "BINARY";
+
+    /**
+     * Kinds of frames.
+     */
+    public static final byte TEXT = 0;
+    public static final byte OBSERVATION = 1;
+    public static final byte BATCH = 2;
+    public static final byte DELTA = 3;
+    public static final byte DELTA_BATCH = 4;
+
+    /**
+     * Suffix of the START_DONE reply (after BINARY) to ask for delta observations.
+     */
+    public static final String DELTA_OBSERVATIONS = "DELTA";
+
+    /**
+     * Last observation received in a stream of delta observations (one per game of a vectorized
+     * environment), which the next delta is applied to.
+     */
+    public static class DeltaState {
+        private int[] layout;
+        private SerializableStateObservation scalars;
+        private Observation[][][] rows = new Observation[7][0][];
+    }
+
+    /**
+     * Reads the text of a TEXT frame.
+     * @param payload payload of the frame.
+     * @return the text.
+     */
+    public static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the observation of an OBSERVATION frame, in the order the server writes it.
+     * @param in payload of the frame.
+     * @return the observation.
+     */
+    public static SerializableStateObservation readObservation(ByteBuffer in) {
+        SerializableStateObservation sso = readHeader(in);
+        if (in.get() == 0)
+            return sso;
+
+        readScalars(in, sso);
+        int columns = in.getInt();
+        if (columns >= 0) {
+            sso.observationGrid = new Observation[columns][][];
+            for (int i = 0; i < columns; i++)
+                sso.observationGrid[i] = readObservations(in);
+        }
+        sso.NPCPositions = readObservations(in);
+        sso.immovablePositions = readObservations(in);
+        sso.movablePositions = readObservations(in);
+        sso.resourcesPositions = readObservations(in);
+        sso.portalsPositions = readObservations(in);
+        sso.fromAvatarSpritesPositions = readObservations(in);
+        return sso;
+    }
+
+    /**
+     * Reads the observation of a DELTA frame, applying it to the previous observation of its stream.
+     * After the image and the data flag come: the keyframe flag (if set, previous observations are
+     * forgotten), the layout flag and, if set, the layout (columns and rows of observationGrid, and
+     * rows of each of the six arrays of positions, -1 if null), the scalars flag and, if set, the
+     * fields from worldDimension to avatarResources, and the rows that changed: their number, and
+     * the section, index and observations of each one. Section 0 holds the cells of observationGrid
+     * (cell [i][j] has index i * rows + j), and sections 1 to 6 the rows of NPCPositions,
+     * immovablePositions, movablePositions, resourcesPositions, portalsPositions and
+     * fromAvatarSpritesPositions.
+     * @param in payload of the frame.
+     * @param state previous observation of the stream, updated with this one.
+     * @return the observation.
+     */
+    public static SerializableStateObservation readDelta(ByteBuffer in, DeltaState state) {
+        SerializableStateObservation sso = readHeader(in);
+        if (in.get() == 0)
+            return sso;
+
+        if (in.get() != 0) {
+            state.layout = null;
+            state.scalars = null;
+            state.rows = new Observation[7][0][];
+        }
+
+        if (in.get() != 0) {
+            int[] layout = new int[8];
+            for (int i = 0; i < layout.length; i++)
+                layout[i] = in.getInt();
+            if (state.layout == null || state.layout[0] != layout[0] || state.layout[1] != layout[1])
+                state.rows[0] = new Observation[Math.max(0, layout[0]) * layout[1]][];
+            for (int i = 1; i < state.rows.length; i++)
+                state.rows[i] = Arrays.copyOf(state.rows[i], Math.max(0, layout[i + 1]));
+            state.layout = layout;
+        }
+
+        if (in.get() != 0) {
+            readScalars(in, sso);
+            state.scalars = sso;
+        } else {
+            copyScalars(state.scalars, sso);
+        }
+
+        int changed = in.getInt();
+        for (int i = 0; i < changed; i++) {
+            int section = in.get();
+            int idx = in.getInt();
+            state.rows[section][idx] = readRow(in);
+        }
+
+        int[] layout = state.layout;
+        if (layout[0] >= 0) {
+            sso.observationGrid = new Observation[layout[0]][][];
+            for (int i = 0; i < layout[0]; i++)
+                sso.observationGrid[i] = Arrays.copyOfRange(state.rows[0], i * layout[1], (i + 1) * layout[1]);
+        }
+        Observation[][][] lists = new Observation[7][][];
+        for (int i = 1; i < lists.length; i++)
+            if (layout[i + 1] >= 0)
+                lists[i] = state.rows[i].clone();
+        sso.NPCPositions = lists[1];
+        sso.immovablePositions = lists[2];
+        sso.movablePositions = lists[3];
+        sso.resourcesPositions = lists[4];
+        sso.portalsPositions = lists[5];
+        sso.fromAvatarSpritesPositions = lists[6];
+        return sso;
+    }
+
+    /**
+     * Reads the fields from phase to the image.
+     */
+    private static SerializableStateObservation readHeader(ByteBuffer in) {
+        SerializableStateObservation sso = new SerializableStateObservation();
+        sso.phase = SerializableStateObservation.Phase.values()[in.get()];
+        sso.isValidation = in.get() != 0;
+        sso.gameScore = in.getFloat();
+        sso.gameTick = in.getInt();
+        int winner = in.get();
+        sso.gameWinner = winner < 0 ? null : Types.WINNER.values()[winner];
+        sso.isGameOver = in.get() != 0;
+        int numActions = in.getInt();
+        if (numActions >= 0) {
+            sso.availableActions = new ArrayList<>(numActions);
+            for (int i = 0; i < numActions; i++)
+                sso.availableActions.add(Types.ACTIONS.values()[in.get()]);
+        }
+
+        sso.isImageRaw = in.get() != 0;
+        sso.imageWidth = in.getInt();
+        sso.imageHeight = in.getInt();
+        int imageLength = in.getInt();
+        if (imageLength >= 0) {
+            sso.imageArray = new byte[imageLength];
+            in.get(sso.imageArray);
+        }
+        return sso;
+    }
+
+    /**
+     * Reads the fields from worldDimension to avatarResources.
+     */
+    private static void readScalars(ByteBuffer in, SerializableStateObservation sso) {
+        sso.worldDimension = new double[]{in.getDouble(), in.getDouble()};
+        sso.blockSize = in.getInt();
+        sso.noOfPlayers = in.getInt();
+        sso.avatarSpeed = in.getFloat();
+        sso.avatarOrientation = new double[]{in.getDouble(), in.getDouble()};
+        sso.avatarPosition = new double[]{in.getDouble(), in.getDouble()};
+        int lastAction = in.get();
+        sso.avatarLastAction = lastAction < 0 ? null : Types.ACTIONS.values()[lastAction];
+        sso.avatarType = in.getInt();
+        sso.avatarHealthPoints = in.getInt();
+        sso.avatarMaxHealthPoints = in.getInt();
+        sso.avatarLimitHealthPoints = in.getInt();
+        sso.isAvatarAlive = in.get() != 0;
+
+        int numResources = in.getInt();
+        if (numResources >= 0) {
+            sso.avatarResources = new HashMap<>();
+            for (int i = 0; i < numResources; i++)
+                sso.avatarResources.put(in.getInt(), in.getInt());
+        }
+    }
+
+    private static void copyScalars(SerializableStateObservation from, SerializableStateObservation to) {
+        to.worldDimension = from.worldDimension;
+        to.blockSize = from.blockSize;
+        to.noOfPlayers = from.noOfPlayers;
+        to.avatarSpeed = from.avatarSpeed;
+        to.avatarOrientation = from.avatarOrientation;
+        to.avatarPosition = from.avatarPosition;
+        to.avatarLastAction = from.avatarLastAction;
+        to.avatarType = from.avatarType;
+        to.avatarHealthPoints = from.avatarHealthPoints;
+        to.avatarMaxHealthPoints = from.avatarMaxHealthPoints;
+        to.avatarLimitHealthPoints = from.avatarLimitHealthPoints;
+        to.isAvatarAlive = from.isAvatarAlive;
+        to.avatarResources = from.avatarResources;
+    }
+
+    /**
+     * Reads the observations of a BATCH frame: their number, followed by each observation.
+     * @param in payload of the frame.
+     * @return the observations, one per game.
+     */
+    public static SerializableStateObservation[] readBatch(ByteBuffer in) {
+        SerializableStateObservation[] batch = new SerializableStateObservation[in.getInt()];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = readObservation(in);
+        return batch;
+    }
+
+    /**
+     * Reads the observations of a DELTA_BATCH frame: their number, followed by the delta of each game.
+     * @param in payload of the frame.
+     * @param states previous observation of each game, updated with these ones.
+     * @return the observations, one per game.
+     */
+    public static SerializableStateObservation[] readDeltaBatch(ByteBuffer in, DeltaState[] states) {
+        SerializableStateObservation[] batch = new SerializableStateObservation[in.getInt()];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = readDelta(in, states[i]);
+        return batch;
+    }
+
+    private static Observation[][] readObservations(ByteBuffer in) {
+        int rows = in.getInt();
+        if (rows < 0)
+            return null;
+
+        Observation[][] obs = new Observation[rows][];
+        for (int i = 0; i < rows; i++)
+            obs[i] = readRow(in);
+        return obs;
+    }
+
+    private static Observation[] readRow(ByteBuffer in) {
+        Observation[] row = new Observation[in.getInt()];
+        for (int j = 0; j < row.length; j++) {
+            Observation o = new Observation();
+            o.category = in.getInt();
+            o.itype = in.getInt();
+            o.obsID = in.getInt();
+            o.position = new Vector2d(in.getDouble(), in.getDouble());
+            if (in.get() != 0)
+                o.reference = new Vector2d(in.getDouble(), in.getDouble());
+            o.sqDist = in.getDouble();
+            row[j] = o;
+        }
+        return row;
+    }
+}
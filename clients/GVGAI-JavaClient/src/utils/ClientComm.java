@@ -1,11 +1,14 @@
 package utils;
 
 import serialization.SerializableStateObservation;
+import serialization.Types;
 import serialization.Types.LEARNING_SSO_TYPE;
 import utils.com.google.gson.Gson;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  *  -----  DO NOT MODIFY THIS CLASS -----
@@ -62,6 +65,21 @@ public class ClientComm {
      */
     private LEARNING_SSO_TYPE lastSsoType = LEARNING_SSO_TYPE.JSON;
 
+    /**
+     * Observations of all the games of a vectorized environment, if the last message was a batch.
+     */
+    private SerializableStateObservation[] batch;
+
+    /**
+     * True once the agent has been initialized for a vectorized environment.
+     */
+    private boolean batchInitialized;
+
+    /**
+     * Previous observation of each stream of delta observations (one per game of a vectorized environment).
+     */
+    private BinaryProtocol.DeltaState[] deltaStates = new BinaryProtocol.DeltaState[0];
+
     /**
      * Creates the client.
      */
@@ -98,19 +116,28 @@ public class ClientComm {
         // Continuously listen for messages
         while (line != null) {
 
-            // Read a line from System.in and save it as a String
-            line = io.readLine();
+            if (io.isBinary()) {
+                // Read a frame and process it
+                processFrame(io.readFrame());
+            } else {
+                // Read a line from System.in and save it as a String
+                line = io.readLine();
 
-            // Process the line
-            processLine(line);
+                // Process the line
+                processLine(line);
+            }
             //io.writeToFile("line: " + line);
 
-            if(sso.phase == SerializableStateObservation.Phase.START)
+            if(batch != null)
+            {
+                this.actBatch();
+
+            }else if(sso.phase == SerializableStateObservation.Phase.START)
             {
                 //io.writeToFile(lastMessageId + "#in start");
                 this.start();
 
-            }if(sso.phase == SerializableStateObservation.Phase.INIT)
+            }else if(sso.phase == SerializableStateObservation.Phase.INIT)
             {
 
                 //io.writeToFile(lastMessageId + "#in init");
@@ -158,6 +185,7 @@ public class ClientComm {
 
             lastMessageId = Integer.parseInt(message[0]);
             String json = message[1];
+            this.batch = null;
 
             //io.writeToFile("message received " + lastMessageId + "#" + json);
 
@@ -175,6 +203,12 @@ public class ClientComm {
                 return;
             }
 
+            // Observations of a vectorized environment come in a json array.
+            if (json.startsWith("[")) {
+                this.batch = gson.fromJson(json, SerializableStateObservation[].class);
+                return;
+            }
+
             // Else, deserialize the json using GSon
             this.sso = gson.fromJson(json, SerializableStateObservation.class);
 
@@ -195,6 +229,74 @@ public class ClientComm {
     }
 
 
+    /***
+     * Interprets a message received from the server with the binary protocol (see BinaryProtocol):
+     * a string, a state observation or the observations of a vectorized environment.
+     * @param frame Frame received from the server, null if the connection was closed.
+     */
+    private void processFrame(ByteBuffer frame) {
+        if (frame == null) {
+            sso.phase = SerializableStateObservation.Phase.FINISH;
+            return;
+        }
+
+        try {
+            lastMessageId = frame.getLong();
+            this.batch = null;
+            byte kind = frame.get();
+            if (kind == BinaryProtocol.BATCH) {
+                this.batch = BinaryProtocol.readBatch(frame);
+                return;
+            }
+            if (kind == BinaryProtocol.DELTA_BATCH) {
+                this.batch = BinaryProtocol.readDeltaBatch(frame, deltaStates(frame.getInt(frame.position())));
+                return;
+            }
+            if (kind == BinaryProtocol.TEXT) {
+                String text = BinaryProtocol.readString(frame);
+                if (text.equals("START")) {
+                    this.sso.phase = SerializableStateObservation.Phase.START;
+                } else if (text.equals("FINISH")) {
+                    this.sso.phase = SerializableStateObservation.Phase.FINISH;
+                }
+                return;
+            }
+
+            if (kind == BinaryProtocol.DELTA)
+                this.sso = BinaryProtocol.readDelta(frame, deltaStates(1)[0]);
+            else
+                this.sso = BinaryProtocol.readObservation(frame);
+
+            // If expect image
+            if (lastSsoType == LEARNING_SSO_TYPE.IMAGE || lastSsoType == LEARNING_SSO_TYPE.BOTH) {
+                if (!sso.isImageRaw && sso.phase != SerializableStateObservation.Phase.INIT
+                    && sso.phase != SerializableStateObservation.Phase.ABORT) {
+                    // If an image has been received, then save its PNG equivalent
+                    sso.convertBytesToPng(sso.imageArray);
+                }
+            }
+        } catch (Exception e){
+            io.logStackTrace(e);
+        }
+    }
+
+
+    /**
+     * Returns the previous observations of the streams of delta observations, creating them as needed.
+     * @param streams number of streams needed.
+     * @return the state of each stream.
+     */
+    private BinaryProtocol.DeltaState[] deltaStates(int streams) {
+        if (deltaStates.length < streams) {
+            int length = deltaStates.length;
+            deltaStates = Arrays.copyOf(deltaStates, streams);
+            for (int i = length; i < streams; i++)
+                deltaStates[i] = new BinaryProtocol.DeltaState();
+        }
+        return deltaStates;
+    }
+
+
     /// Specific state functions
 
     /**
@@ -219,7 +321,16 @@ public class ClientComm {
             io.writeToServer(lastMessageId, "START_FAILED", LOG);
         }else {
             //io.writeToFile("start done");
-            io.writeToServer(lastMessageId, "START_DONE" + TOKEN_SEP + player.lastSsoType, LOG);
+            boolean binary = CompetitionParameters.USE_BINARY_PROTOCOL && io.supportsBinary();
+            String protocol = "";
+            if (binary) {
+                protocol = TOKEN_SEP + BinaryProtocol.BINARY;
+                if (CompetitionParameters.USE_DELTA_OBSERVATIONS)
+                    protocol += TOKEN_SEP + BinaryProtocol.DELTA_OBSERVATIONS;
+            }
+            io.writeToServer(lastMessageId, "START_DONE" + TOKEN_SEP + player.lastSsoType + protocol, LOG);
+            if (binary)
+                io.requestBinary();
         }
 
     }
@@ -286,6 +397,46 @@ public class ClientComm {
         }
     }
 
+    /**
+     * Manages the action request of a vectorized environment, where the server plays several games
+     * at the same time. The agent is asked for an action in each game still being played, and all
+     * the actions are sent back to the server in one message, separated by commas. Games that are
+     * over get ACTION_NIL, as the server restarts them. The agent is initialized with the first game
+     * the first time, and the server is told to stop when TOTAL_LEARNING_TIME is over.
+     */
+    private void actBatch()
+    {
+        if (global_ect.exceededMaxTime()) {
+            io.writeToServer(lastMessageId, "END_TRAINING", LOG);
+            batch = null;
+            return;
+        }
+
+        if (!batchInitialized) {
+            ElapsedCpuTimer ect = new ElapsedCpuTimer();
+            ect.setMaxTimeMillis(CompetitionParameters.INITIALIZATION_TIME);
+            player.init(batch[0], ect);
+            batchInitialized = true;
+        }
+
+        StringBuilder actions = new StringBuilder();
+        for (int i = 0; i < batch.length; i++) {
+            if (i > 0)
+                actions.append(',');
+
+            Types.ACTIONS action = null;
+            if (batch[i].phase == SerializableStateObservation.Phase.ACT) {
+                ElapsedCpuTimer ect = new ElapsedCpuTimer();
+                ect.setMaxTimeMillis(CompetitionParameters.ACTION_TIME);
+                action = player.act(batch[i], ect);
+            }
+            actions.append(action == null ? Types.ACTIONS.ACTION_NIL : action);
+        }
+        this.lastSsoType = player.lastSsoType;
+        io.writeToServer(lastMessageId, actions.toString(), LOG);
+        batch = null;
+    }
+
     /**
      * Manages the aresult sent to the agent. The time limit for this call will be TOTAL_LEARNING_TIME
      * or EXTRA_LEARNING_TIME if current global time is beyond TOTAL_LEARNING_TIME.
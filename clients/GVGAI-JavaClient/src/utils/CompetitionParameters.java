@@ -59,5 +59,15 @@ public class CompetitionParameters
      */
     public static final int SOCKET_PORT = 8080;//3000;
 
+    /**
+     * Ask the server for the binary protocol when using sockets (see BinaryProtocol)?
+     */
+    public static final boolean USE_BINARY_PROTOCOL = true;
+
+    /**
+     * With the binary protocol, ask the server to send only what changed in each observation?
+     */
+    public static final boolean USE_DELTA_OBSERVATIONS = true;
+
     public static String SCREENSHOT_FILENAME = "gameStateByBytes.png";
 }
@@ -3,6 +3,7 @@ package utils;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by dperez on 01/06/2017.
@@ -60,6 +61,36 @@ public abstract class IO extends Thread{
 
     public abstract String readLine() throws IOException;
 
+    /**
+     * Indicates if this kind of communication supports the binary protocol (see BinaryProtocol).
+     * @return true if the binary protocol can be asked for.
+     */
+    public boolean supportsBinary() {
+        return false;
+    }
+
+    /**
+     * Notifies that the binary protocol has been asked for to the server.
+     */
+    public void requestBinary() {
+    }
+
+    /**
+     * Indicates if messages are binary frames, to be read with readFrame() instead of readLine().
+     * @return true if messages are binary frames.
+     */
+    public boolean isBinary() throws IOException {
+        return false;
+    }
+
+    /**
+     * Reads a binary frame.
+     * @return the frame (message ID, kind and payload), or null if the connection was closed.
+     */
+    public ByteBuffer readFrame() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
     public void logStackTrace(Exception e) {
         e.printStackTrace(this.fileOutput);
     }
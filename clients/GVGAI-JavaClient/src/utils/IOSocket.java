@@ -2,8 +2,10 @@ package utils;
 
 import java.io.*;
 import java.net.ConnectException;
-import java.net.Socket;
-import java.util.Scanner;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Created by dperez on 23/05/2017.
@@ -11,9 +13,32 @@ import java.util.Scanner;
 public class IOSocket extends IO {
 
 
-    private Socket socket;
-    private Scanner in;
-    private PrintStream out;
+    private SocketChannel socket;
+
+    /**
+     * Data received from the server, not processed yet.
+     */
+    private ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+
+    /**
+     * Messages to send to the server.
+     */
+    private ByteBuffer out = ByteBuffer.allocateDirect(1 << 12);
+
+    /**
+     * Bytes of the text line being read.
+     */
+    private ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    /**
+     * The binary protocol was asked for, and the server's answer is not known yet.
+     */
+    private boolean binaryRequested;
+
+    /**
+     * True if messages are exchanged in binary frames (see BinaryProtocol).
+     */
+    private boolean binary;
 
     private String hostname = "localhost";
     private int port;
@@ -36,7 +61,7 @@ public class IOSocket extends IO {
             while(!connected)
             {
                 try{
-                    socket = new Socket(hostname, port);
+                    socket = SocketChannel.open(new InetSocketAddress(hostname, port));
                     connected = true;
                     System.out.println("Client connected to server [OK]");
                 }catch (ConnectException e) {
@@ -44,8 +69,8 @@ public class IOSocket extends IO {
                 }
             }
 
-            out = new PrintStream(socket.getOutputStream());
-            in = new Scanner(socket.getInputStream());
+            socket.socket().setTcpNoDelay(true);
+            in.flip();
 
         } catch (Exception e) {
             System.out.println("Exception creating the client process: " + e);
@@ -65,13 +90,104 @@ public class IOSocket extends IO {
     public void writeToServer(long messageId, String line, boolean log)
     {
         String msg = messageId + ClientComm.TOKEN_SEP + line;
-        this.writeToServer(msg);
+        if (binary) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if (out.capacity() < 4 + 8 + 1 + bytes.length)
+                out = ByteBuffer.allocateDirect(4 + 8 + 1 + bytes.length);
+            out.clear();
+            out.putInt(8 + 1 + bytes.length);
+            out.putLong(messageId);
+            out.put(BinaryProtocol.TEXT);
+            out.put(bytes);
+            out.flip();
+            write(msg);
+        } else {
+            this.writeToServer(msg);
+        }
         if(log) this.writeToFile(msg);
     }
 
     @Override
     public String readLine() throws IOException{
-        return in.nextLine();
+        this.line.reset();
+        while (true) {
+            if (!in.hasRemaining() && !fill(1))
+                return null;
+            byte b = in.get();
+            if (b == '\n')
+                return this.line.toString("UTF-8");
+            if (b != '\r')
+                this.line.write(b);
+        }
+    }
+
+    @Override
+    public boolean supportsBinary() {
+        return true;
+    }
+
+    @Override
+    public void requestBinary() {
+        binaryRequested = true;
+    }
+
+    /**
+     * Indicates if messages are binary frames. After asking for the binary protocol, this waits
+     * for the next message to know the answer of the server.
+     * @return true if messages must be read with readFrame().
+     */
+    @Override
+    public boolean isBinary() throws IOException {
+        if (binaryRequested && fill(1)) {
+            binaryRequested = false;
+            binary = in.get(in.position()) == 0;
+        }
+        return binary;
+    }
+
+    /**
+     * Reads a binary frame.
+     * @return the frame (message ID, kind and payload), or null if the connection was closed. It's
+     * only valid until the next message is read.
+     */
+    @Override
+    public ByteBuffer readFrame() throws IOException {
+        if (!fill(4))
+            return null;
+        int length = in.getInt();
+        if (!fill(length))
+            return null;
+
+        ByteBuffer frame = in.slice();
+        frame.limit(length);
+        in.position(in.position() + length);
+        return frame;
+    }
+
+    /**
+     * Reads from the socket until the input buffer has some bytes available.
+     * @param bytes number of bytes needed.
+     * @return false if the connection was closed before.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (in.remaining() >= bytes)
+            return true;
+
+        in.compact();
+        if (in.capacity() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(bytes, in.capacity() * 2));
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+        while (in.position() < bytes) {
+            if (socket.read(in) < 0) {
+                in.flip();
+                return false;
+            }
+        }
+        in.flip();
+        return true;
     }
 
     /**
@@ -80,10 +196,25 @@ public class IOSocket extends IO {
      */
     @Override
     protected void writeToServer(String line)
+    {
+        byte[] bytes = (line + lineSep).getBytes(StandardCharsets.UTF_8);
+        if (out.capacity() < bytes.length)
+            out = ByteBuffer.allocateDirect(bytes.length);
+        out.clear();
+        out.put(bytes);
+        out.flip();
+        write(line);
+    }
+
+    /**
+     * Writes the output buffer to the socket.
+     * @param line message being written, for error reporting.
+     */
+    private void write(String line)
     {
         try {
-            out.print(line + lineSep);
-            out.flush();
+            while (out.hasRemaining())
+                socket.write(out);
         }catch(Exception e)
         {
             System.out.println("Error trying to write " + line + " to the server.");
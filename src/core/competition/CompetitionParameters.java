@@ -141,14 +141,62 @@ public class CompetitionParameters
     public static boolean killWindowOnEnd = true;
 
     /**
-     * Java Warm-up time before starting the game.
+     * Java Warm-up time before starting the game. The warm-up finishes earlier, after at least
+     * WARMUP_CP copies and WARMUP_ADV advances, when the time of both stays within WARMUP_TOLERANCE
+     * (relative) of its mean (see tracks.WarmUp).
      */
     public static final long WARMUP_TIME = 5000;
     public static final long WARMUP_CP = 100;
     public static final long WARMUP_ADV = 1000;
+    public static double WARMUP_TOLERANCE = 0.1;
 
     /**
-     * Key input type. We set the default here, but this will be set by the game in VGDL.
+     * File where the cost of copy() and advance() measured in the warm-up of each game is kept,
+     * for example "warmup_calibration.properties". Null (default) to not keep it.
+     */
+    public static String WARMUP_CACHE = null;
+
+    /**
+     * Game ticks between the keyframes (snapshots of the game) taken by tracks.ReplayEngine when
+     * a game is recorded or replayed, to seek to any tick without replaying it from the start.
+     */
+    public static int REPLAY_KEYFRAME_INTERVAL = 100;
+
+    /**
+     * Use a spatial grid for collision detection between sprites. If false, all pairs of
+     * sprites are checked (legacy behaviour). Both produce exactly the same results.
+     */
+    public static boolean SPATIAL_COLLISIONS = true;
+
+    /**
+     * Number of threads used to play the runs of ArcadeMachine.runGames() and
+     * AudioMachine.runGames(). Each thread plays its own copy of the game.
+     */
+    public static int BATCH_THREADS = 1;
+
+    /**
+     * Forward models are headless (see Game.setHeadless()): sprites created in them don't load
+     * their images and animations are not updated. Forward models are never drawn.
+     */
+    public static boolean HEADLESS_FORWARD_MODEL = true;
+
+    /**
+     * Maximum number of sounds played at the same time, and of sound commands waiting
+     * to be played (see SoundManager).
+     */
+    public static int SOUND_VOICES = 16;
+    public static int SOUND_QUEUE_SIZE = 256;
+
+    /**
+     * Measure the time of each phase of game cycles and forward model advances, sprite type, effect
+     * and collision pair (see core.game.Profiler). The report is printed at the end of runGames(), and
+     * also every PROFILE_SAMPLE_SECONDS if it's greater than 0.
+     */
+    public static boolean PROFILE = false;
+    public static int PROFILE_SAMPLE_SECONDS = 0;
+
+    /**
+     * Key input type. We set the default here, but each game can set its own in VGDL.
      */
     public static final int KEY_INPUT = 0;
     public static final int KEY_PULSE = 1;
@@ -156,6 +204,30 @@ public class CompetitionParameters
 
     public static double MAX_WINDOW_SIZE = 800.0;
     public static int LEARNING_BLOCK_SIZE = 10;
+
+    /**
+     * If true, IMAGE observations carry the raw RGB pixels of the screen instead of a PNG file.
+     */
+    public static boolean LEARNING_RAW_IMAGE = false;
+
+    /**
+     * If true, socket clients can ask for the binary protocol (see tracks.singleLearning.utils.BinaryProtocol).
+     */
+    public static boolean LEARNING_BINARY_PROTOCOL = true;
+
+    /**
+     * Socket clients using the binary protocol can ask for observations sent as deltas of the previous
+     * ones, with a full observation (keyframe) at least every this many observations. 0 disables deltas.
+     */
+    public static int LEARNING_DELTA_KEYFRAME_INTERVAL = 100;
+
+    /**
+     * Number of games played at the same time by a learning client (vectorized environment, see
+     * LearningMachine.runVectorGames()), and number of threads that step them. 1 plays the usual
+     * training and validation phases, one game at a time.
+     */
+    public static int LEARNING_ENVS = 1;
+    public static int LEARNING_ENV_THREADS = Runtime.getRuntime().availableProcessors();
     public static boolean IS_LEARNING = false;
     public static final int validation_times = 10;
 }
@@ -58,6 +58,12 @@ public class LearnerExecutor {
     if (params.containsKey("gameFile")) {
       gameFile = params.get("gameFile").get(0);
     }
+    if (params.containsKey("envs")) {
+      CompetitionParameters.LEARNING_ENVS = Integer.parseInt(params.get("envs").get(0));
+    }
+    if (params.containsKey("envThreads")) {
+      CompetitionParameters.LEARNING_ENV_THREADS = Integer.parseInt(params.get("envThreads").get(0));
+    }
     if (params.containsKey("levelFile")) {
       String levelFileStr = params.get("levelFile").get(0);
       String[] levelFileSplitted = levelFileStr.split(":");
@@ -2,7 +2,8 @@ package core.game;
 
 import com.musicg.wave.Wave;
 import com.musicg.wave.extension.Spectrogram;
-import tools.SoundManager;
+import tools.AudioAsset;
+import tools.AudioAssets;
 
 /**
  * Created by Diego on 19/03/14.
@@ -20,7 +21,7 @@ public class AudioObservation implements Comparable<AudioObservation>
     public double intensity;
 
     public String audioSrc;
-    private Wave wave;
+    private AudioAsset asset;
 
     public AudioObservation() {
         // used for learning track
@@ -34,11 +35,24 @@ public class AudioObservation implements Comparable<AudioObservation>
      * @param intensity intensity of this observation, based on distance to avatar
      */
     public AudioObservation(int itype, double intensity, String audio)
+    {
+        this(itype, intensity, audio, true);
+    }
+
+    /**
+     * New observation. If the sound is not loaded, this observation only has the source id, the
+     * sound name and the intensity (getAsset() and the sound data methods are not available).
+     * @param itype type of the sprite of this observation
+     * @param intensity intensity of this observation, based on distance to avatar
+     * @param loadAsset true to look up the sound of this observation.
+     */
+    public AudioObservation(int itype, double intensity, String audio, boolean loadAsset)
     {
         this.itype = itype;
         this.intensity = intensity;
         this.audioSrc = audio;
-        wave = SoundManager.getInstance().getWave(audioSrc);
+        if (loadAsset)
+            asset = AudioAssets.getInstance().get(audioSrc);
     }
 
     /**
@@ -51,23 +65,35 @@ public class AudioObservation implements Comparable<AudioObservation>
         this.itype = itype;
         this.intensity = intensity;
         this.audioSrc = audioSrc;
-        wave = SoundManager.getInstance().getWave(audioSrc);
+        asset = AudioAssets.getInstance().get(audioSrc);
+    }
+
+    /**
+     * Returns the sound of this observation, shared by all observations of the same sound.
+     * @return the sound, or null if there is no sound file for it.
+     */
+    public AudioAsset getAsset() {
+        return asset;
+    }
+
+    public Wave getWave() {
+        return asset != null ? asset.getWave() : null;
     }
 
     public byte[] getBytes() {
-        return wave.getBytes();
+        return asset.getBytes();
     }
 
     public byte[] getFingerprint() {
-        return wave.getFingerprint();
+        return asset.getFingerprint();
     }
 
     public double[] getNormalizedAmplitudes() {
-        return wave.getNormalizedAmplitudes();
+        return asset.getNormalizedAmplitudes();
     }
 
     public Spectrogram getSpectrogram() {
-        return wave.getSpectrogram();
+        return asset.getSpectrogram();
     }
 
     /**
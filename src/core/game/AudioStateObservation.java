@@ -19,6 +19,12 @@ public class AudioStateObservation {
     protected ForwardModel model;
     private Game trueModel;
 
+    /**
+     * True if this observation has been advanced, so its sounds are simulated by the
+     * forward model instead of taken from the real game.
+     */
+    private boolean simulated;
+
     /**
      * Constructor for StateObservation. Requires a forward model
      *
@@ -36,7 +42,9 @@ public class AudioStateObservation {
      * @return a copy of the state observation.
      */
     public AudioStateObservation copy() {
-        return new AudioStateObservation(trueModel, model.copy(), this.playerID);
+        AudioStateObservation copy = new AudioStateObservation(trueModel, model.copy(), this.playerID);
+        copy.simulated = simulated;
+        return copy;
     }
 
     /**
@@ -51,6 +59,7 @@ public class AudioStateObservation {
      */
     public void advance(Types.ACTIONS action) {
         model.advance(action);
+        simulated = true;
     }
 
     /**
@@ -116,8 +125,23 @@ public class AudioStateObservation {
         return model.isGameOver();
     }
 
+    /**
+     * Returns the sounds heard in this state, sorted by intensity. For the state received from
+     * the game these are the sounds of the real game; once advanced, the sounds simulated by
+     * the forward model in the last step.
+     * @return the audio observations of this state.
+     */
     public ArrayList<AudioObservation> getAudioObservations() {
-        return trueModel.getAudioObservations();
+        return simulated ? model.getAudioObservations() : trueModel.getAudioObservations();
+    }
+
+    /**
+     * Sets whether the sounds simulated by this state (and its copies) only record source ids
+     * and intensities. This is cheaper for agents that don't need the sound data in rollouts.
+     * @param cheapAudio true to skip looking up the sounds.
+     */
+    public void setCheapAudio(boolean cheapAudio) {
+        model.cheapAudio = cheapAudio;
     }
 
 
@@ -128,4 +152,10 @@ public class AudioStateObservation {
      */
     public KeyHandler getKeyHandler(int playerID) { return model.avatars[playerID].getKeyHandler(); }
 
+    /**
+     * Returns the key handler of the game, which receives the keys pressed by human players.
+     * @return KeyHandler object.
+     */
+    public KeyHandler getGameKeyHandler() { return model.getKeyHandler(); }
+
 }
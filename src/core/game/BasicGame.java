@@ -160,6 +160,9 @@ public class BasicGame extends Game {
 						if (s.is_avatar) {
 							avatars.add(s);
 						}
+						if (headless) {
+							continue;
+						}
 						if (s.autotiling) {
 
 							ArrayList<Image> images = s.images.get("NONE");
@@ -188,12 +191,14 @@ public class BasicGame extends Game {
 			for (SpriteGroup spriteGroup : this.spriteGroups) {
 				for (int j = no_players; j < avatars.size(); j++) {
 					spriteGroup.removeSprite(avatars.get(j));
+					if (spatialGrid != null)
+						spatialGrid.remove(avatars.get(j));
 				}
 			}
 		}
 
 		// Nobody has been killed... yet!
-		kill_list = new ArrayList<>();
+		clearKillList();
 
 		// Generate the initial state observation.
 		this.createAvatars();
@@ -0,0 +1,237 @@
+package core.game;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only history of events, ordered asc. by game step (and by Event.compareTo() within
+ * the same game step). Events that compare equal to one already in the log are discarded, as
+ * in a TreeSet.
+ *
+ * Copies of a log share all events added before the copy was made: events are stored in
+ * chunks that are shared by all logs, and each log only keeps its own length. A log writes
+ * in place while no other log has added events after it. Otherwise it first takes its own
+ * chunk array. Full chunks are shared and only the last one is copied. Events must not be
+ * modified once added. A log can be copied by several threads at once, and the copies used
+ * from different threads, as long as the log itself is not modified meanwhile.
+ */
+public class EventLog implements Iterable<Event>
+{
+    /**
+     * Number of events in each chunk (a power of 2).
+     */
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Chunks of events shared by a log and its copies.
+     */
+    private static class Chunks
+    {
+        /**
+         * Chunks of events, CHUNK_SIZE events each. Volatile, as logs in other threads read the
+         * events they share without locking while this array is grown.
+         */
+        volatile Event[][] chunks = new Event[4][];
+
+        /**
+         * Number of events written in these chunks. Only the log with this length can write more.
+         */
+        int size;
+    }
+
+    /**
+     * Chunks this log reads from and writes to.
+     */
+    private Chunks chunks;
+
+    /**
+     * Number of events in this log.
+     */
+    private int length;
+
+    /**
+     * Positions of this log below this one may be seen by other logs (they are in chunks
+     * that are shared, or were added before this log was last copied), so they can't be modified.
+     */
+    private int shared;
+
+    /**
+     * Creates an empty log.
+     */
+    public EventLog()
+    {
+        chunks = new Chunks();
+    }
+
+    /**
+     * Creates a copy of this log that shares all its events.
+     * @return the copy of this log.
+     */
+    public EventLog copy()
+    {
+        EventLog log = new EventLog(chunks, length);
+        synchronized (chunks)
+        {
+            shared = length;
+        }
+        return log;
+    }
+
+    private EventLog(Chunks chunks, int length)
+    {
+        this.chunks = chunks;
+        this.length = length;
+        this.shared = length;
+    }
+
+    /**
+     * Adds an event to the log, unless there is already one that compares equal to it.
+     * The event must not happen before the last event of the log.
+     * @param event event to add.
+     * @return true if the event was added.
+     */
+    public boolean add(Event event)
+    {
+        //Find where the event goes, among the events of its same game step at the end of the log.
+        int pos = length;
+        while(pos > 0)
+        {
+            int cmp = get(pos - 1).compareTo(event);
+            if(cmp == 0)
+                return false;
+            if(cmp < 0)
+                break;
+            pos--;
+        }
+
+        synchronized (chunks)
+        {
+            if(chunks.size != length || pos < shared)
+                fork(pos);
+            else
+                ensureCapacity(length + 1);
+
+            for(int i = length; i > pos; --i)
+                set(i, get(i - 1));
+            set(pos, event);
+            chunks.size = ++length;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of events in the log.
+     * @return the number of events in the log.
+     */
+    public int size()
+    {
+        return length;
+    }
+
+    /**
+     * Returns an event of the log.
+     * @param index position of the event, from 0 to size()-1.
+     * @return the event in that position.
+     */
+    public Event get(int index)
+    {
+        return chunks.chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the position of the first event that happened at the given game step or later.
+     * @param gameStep game step to look for.
+     * @return the position of the first event from gameStep, or size() if there are none.
+     */
+    public int firstIndexFrom(int gameStep)
+    {
+        int low = 0, high = length;
+        while(low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if(get(mid).gameStep < gameStep)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Returns an iterator over the events of the log, in order.
+     * @return an iterator over the events of the log.
+     */
+    @Override
+    public Iterator<Event> iterator()
+    {
+        return new Iterator<Event>()
+        {
+            private int next = 0;
+            private final int end = length;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < end;
+            }
+
+            @Override
+            public Event next()
+            {
+                if(next >= end)
+                    throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * Takes a private chunk array with room for one more event, where the events from the given
+     * position on can be modified. The chunks before that position are still shared with other
+     * logs; the rest are copied.
+     * @param from first position that will be modified.
+     */
+    private void fork(int from)
+    {
+        Chunks own = new Chunks();
+        int firstCopied = from >>> CHUNK_BITS;
+        int numChunks = (length >>> CHUNK_BITS) + 1;
+        own.chunks = new Event[Math.max(4, numChunks * 2)][];
+        System.arraycopy(chunks.chunks, 0, own.chunks, 0, firstCopied);
+
+        for(int c = firstCopied; c < numChunks; ++c)
+        {
+            own.chunks[c] = new Event[CHUNK_SIZE];
+            if(c < chunks.chunks.length && chunks.chunks[c] != null)
+                System.arraycopy(chunks.chunks[c], 0, own.chunks[c], 0, CHUNK_SIZE);
+        }
+
+        own.size = length;
+        chunks = own;
+        shared = firstCopied << CHUNK_BITS;
+    }
+
+    /**
+     * Makes sure there is room for the given number of events in the chunks of this log.
+     * @param capacity number of events.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        int chunk = (capacity - 1) >>> CHUNK_BITS;
+        if(chunk >= chunks.chunks.length)
+        {
+            Event[][] grown = new Event[chunks.chunks.length * 2][];
+            System.arraycopy(chunks.chunks, 0, grown, 0, chunks.chunks.length);
+            chunks.chunks = grown;
+        }
+        if(chunks.chunks[chunk] == null)
+            chunks.chunks[chunk] = new Event[CHUNK_SIZE];
+    }
+
+    private void set(int index, Event event)
+    {
+        chunks.chunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = event;
+    }
+}
@@ -4,10 +4,13 @@ import java.applet.AudioClip;
 import java.awt.Dimension;
 import java.util.*;
 
+import core.competition.CompetitionParameters;
 import core.vgdl.SpriteGroup;
 import core.vgdl.VGDLSprite;
+import core.termination.Termination;
 import ontology.Types;
 import ontology.avatar.MovingAvatar;
+import ontology.effects.Effect;
 import ontology.effects.TimeEffect;
 import tools.*;
 
@@ -93,6 +96,101 @@ public class ForwardModel extends Game
      */
     private ArrayList<Observation>[][] observationGrid;
 
+    /**
+     * Sprite groups of this model that are not shared with other models (copies of this one, or
+     * the one this is a copy of), so they can be modified. Shared groups are copied the first time
+     * one of their sprites may be modified (see ownGroup()).
+     */
+    private boolean[] ownedGroups;
+
+    /**
+     * Number of steps the sprites of each shared group have not been updated, because they are
+     * idle (see tick()). It's added to their lastmove when the group is copied.
+     */
+    private int[] lastMoveLag;
+
+    /**
+     * Copies of the shared sprites taken in the current step, by the sprite they replace.
+     */
+    private IdentityHashMap<VGDLSprite, VGDLSprite> copies = new IdentityHashMap<>();
+
+    /**
+     * Indicates if the time effects and shields of this model, and the avatars that are not
+     * in a sprite group, are shared with another model. They are copied the first time this
+     * model is advanced (see ownEffects()).
+     */
+    private boolean effectsShared;
+
+    /**
+     * Indicates if the observations and the observation grid of this model are shared with
+     * another model. They are copied the first time they need to be modified (see ownObservations()).
+     */
+    private boolean observationsShared;
+
+    /**
+     * Indicates if the observations in each cell of the observation grid must be put in the order
+     * of the sprites when they are copied, as they are in a new model (see update()). Set in copies,
+     * with the game tick they were taken at.
+     */
+    private boolean sortObservationGrid;
+    private int copyTick;
+
+    /**
+     * Set when this model is copied, so it stops modifying the state it now shares (see checkCopied()).
+     * Copying a model doesn't modify anything else in it, so it can be copied from several threads at once.
+     */
+    private volatile boolean copied;
+
+    /**
+     * Effects and terminations this model executes, for each thread that advances models of the
+     * game (see useThreadRules()). Shared by all the models of a game.
+     */
+    private ThreadLocal<Rules> threadRules;
+
+    /**
+     * Thread whose effects and terminations this model executes: the one that created the model
+     * from the game executes those of the game.
+     */
+    private Thread rulesThread;
+
+    /**
+     * Indicates if the observations of this model are out of date because the model has been
+     * advanced. They are only brought up to date when queried (see refreshObservations()), so
+     * models that are advanced without looking at them don't pay for it.
+     */
+    private boolean observationsDirty;
+
+    /**
+     * IDs of the sprites removed from the game since the observations were last brought up to date.
+     */
+    private ArrayList<Integer> removedObservations = new ArrayList<>();
+
+    /**
+     * Hash of the state of this model, without the game tick (see Game.getStateHash()), if
+     * stateHashValid. It's computed when first asked for after the model changes, and copies
+     * inherit it.
+     */
+    private long stateHash;
+    private boolean stateHashValid;
+
+    /**
+     * Events of the log historicEvents, as returned by getEventsHistory(), and log they were taken from.
+     */
+    private TreeSet<Event> eventsHistory;
+    private EventLog eventsHistoryLog;
+
+    /**
+     * If true, the audio observations of this model only have source ids and intensities
+     * (sounds are not looked up). Copies inherit this setting.
+     */
+    boolean cheapAudio;
+
+    /**
+     * Indicates if the sound emissions of this model are shared with another model (its copies, or
+     * the one it is a copy of). They are replaced the first time this model emits a sound.
+     */
+    private boolean emissionsShared;
+
     /**
      * Constructor for StateObservation. Initializes everything
      * @param a_gameState - initial game state
@@ -103,9 +201,33 @@ public class ForwardModel extends Game
 
         //All static elements of the game are assigned from the game we create the copy from.
         initNonVolatile(a_gameState);
+        initAvatars(a_gameState);
+        initObservations();
 
         //Init those variables that take a determined value at the beginning of a game.
         init();
+
+        //Effects and terminations for other threads, copied before this thread executes any of them.
+        int players = no_players;
+        Rules rules = new Rules(collisionEffects, eosEffects, terminations, players);
+        threadRules = ThreadLocal.withInitial(() -> new Rules(rules.collisionEffects, rules.eosEffects, rules.terminations,
+                players));
+        rulesThread = Thread.currentThread();
+    }
+
+    /**
+     * Constructor for copies of a forward model. The new model shares its state with a_model
+     * until one of them modifies it (see share()).
+     * @param a_model forward model to copy.
+     */
+    private ForwardModel(ForwardModel a_model)
+    {
+        this.playerID = a_model.playerID;
+        initNonVolatile(a_model);
+        init();
+        share(a_model);
+        threadRules = a_model.threadRules;
+        rulesThread = a_model.rulesThread;
     }
 
 
@@ -117,18 +239,30 @@ public class ForwardModel extends Game
     final public void update(Game a_gameState)
     {
         int numSpriteTypes = a_gameState.spriteGroups.length;
-        kill_list = new ArrayList<>();
-        bucketList = new Bucket[numSpriteTypes];
-        historicEvents = new TreeSet<>();
+        clearKillList();
+        killIdBase = a_gameState.killIdBase;
+        spatialGrid = null;
         shieldedEffects = new ArrayList[numSpriteTypes];
+        //The observations are updated below, so they must be copied first if they are shared.
+        checkCopied();
+        effectsShared = false;
+        stateHashValid = false;
+        audioObservations = null;
+        soundEmissions = a_gameState.soundEmissions.copy();
+        emissionsShared = false;
+        framebuffer = a_gameState.framebuffer;
+        ownObservations();
+        refreshObservations();
 
         //Copy of sprites from the game.
         spriteGroups = new SpriteGroup[numSpriteTypes];
+        ownedGroups = new boolean[numSpriteTypes];
+        Arrays.fill(ownedGroups, true);
+        lastMoveLag = new int[numSpriteTypes];
         num_sprites = 0;
 
         for(int i = 0; i < spriteGroups.length; ++i)
         {
-            bucketList[i] = new Bucket();
             spriteGroups[i] = new SpriteGroup(i);
 
             // Index in the sprite group passed to the checkSpriteFeatures method to identify the player in case of
@@ -137,19 +271,11 @@ public class ForwardModel extends Game
             if(spriteIt != null) while(spriteIt.hasNext())
             {
                 VGDLSprite sp = spriteIt.next();
-                VGDLSprite spCopy = sp.copy();
+                VGDLSprite spCopy = sp.copy(this);
 
                 spriteGroups[i].addSprite(spCopy);
 
-                String hidden = "False";
-                if (spCopy.hidden != null) {
-                    String[] split = spCopy.hidden.split(",");
-                    if (playerID > split.length - 1)
-                        hidden = split[split.length - 1];
-                    else
-                        hidden = split[playerID];
-                }
-                if(!Boolean.parseBoolean(hidden)) {
+                if(isVisible(spCopy)) {
                     checkSpriteFeatures(spCopy, i);
                     updateObservation(spCopy);
                 }
@@ -164,10 +290,8 @@ public class ForwardModel extends Game
                 shieldedEffects[i].add(p.copy());
         }
 
-        //events:
-        for (Event historicEvent : a_gameState.historicEvents) {
-            historicEvents.add(historicEvent.copy());
-        }
+        //events (the log is shared, only new events are added to the copy):
+        historicEvents = a_gameState.historicEvents.copy();
 
         //copy the time effects:
         this.timeEffects = new TreeSet<>();
@@ -179,6 +303,11 @@ public class ForwardModel extends Game
         }
         //System.out.println("Tef size: " + this.timeEffects.size());
 
+        //Pathfinder, shared until the obstacles change (see Game.getPath()):
+        this.pathf = a_gameState.pathf;
+        this.pathfDirty = a_gameState.pathfDirty;
+        this.pathfTick = a_gameState.pathfTick;
+
         //Game state variables:
         this.gameTick = a_gameState.gameTick;
         this.isEnded = a_gameState.isEnded;
@@ -187,6 +316,24 @@ public class ForwardModel extends Game
         this.nextSpriteID = a_gameState.nextSpriteID;
     }
 
+    /**
+     * Indicates if a sprite is visible for the player of this model.
+     * @param sp sprite to check.
+     * @return true if the sprite is not hidden for this player.
+     */
+    private boolean isVisible(VGDLSprite sp)
+    {
+        String hidden = "False";
+        if (sp.hidden != null) {
+            String[] split = sp.hidden.split(",");
+            if (playerID > split.length - 1)
+                hidden = split[split.length - 1];
+            else
+                hidden = split[playerID];
+        }
+        return !Boolean.parseBoolean(hidden);
+    }
+
     /**
      * Updates the persistent observation of this sprite, or creates it if the
      * observation is new.
@@ -221,13 +368,36 @@ public class ForwardModel extends Game
      */
     final void removeSpriteObservation(VGDLSprite sprite)
     {
-        int spriteId = sprite.spriteID;
+        //Removed when the observations are brought up to date.
+        removedObservations.add(sprite.spriteID);
+    }
 
-        Observation obs = observations.get(spriteId);
-        if(obs != null)
+    /**
+     * Brings the observations and the observation grid up to date: removes the observations of
+     * the sprites removed from the game and, if the model has been advanced, updates the
+     * observations of all sprites. Only the sprites that moved are moved in the grid. Copies
+     * take their own observations first (see ownObservations()).
+     */
+    private void refreshObservations()
+    {
+        if(!observationsDirty && removedObservations.isEmpty() && !sortObservationGrid)
+            return;
+
+        ownObservations();
+        for(Integer spriteId : removedObservations)
         {
-            removeObservationFromGrid(obs, obs.position);
-            observations.remove(spriteId);
+            Observation obs = observations.remove(spriteId);
+            if(obs != null)
+                removeObservationFromGrid(obs, obs.position);
+        }
+        removedObservations.clear();
+
+        if(observationsDirty)
+        {
+            long t = Profiler.start();
+            updateAllObservations();
+            Profiler.phase(Profiler.MODEL_OBSERVATIONS, t);
+            observationsDirty = false;
         }
     }
 
@@ -307,6 +477,7 @@ public class ForwardModel extends Game
      */
     public void printObservationGrid()
     {
+        refreshObservations();
         System.out.println("#########################");
         for(int j = 0; j < observationGrid[0].length; ++j)
         {
@@ -389,16 +560,7 @@ public class ForwardModel extends Game
                 movList[itype] = true;
         }
         unknownList[itype] = true;
-
-        String hidden = "False";
-        if (sp.hidden != null) {
-            String[] split = sp.hidden.split(",");
-            if (playerID > split.length - 1)
-                hidden = split[split.length - 1];
-            else
-                hidden = split[playerID];
-        }
-        visibleList[playerID][itype] = !Boolean.parseBoolean(hidden);
+        visibleList[playerID][itype] = isVisible(sp);
     }
 
     private int getSpriteCategory(VGDLSprite sp)
@@ -453,6 +615,7 @@ public class ForwardModel extends Game
         this.classConst = a_gameState.classConst;
         this.parameters = a_gameState.parameters;
         this.templateSprites = a_gameState.templateSprites;
+        this.keyHandler = a_gameState.keyHandler;
         this.collisionEffects = a_gameState.collisionEffects;
         this.definedEffects = a_gameState.definedEffects;
         this.eosEffects = a_gameState.eosEffects;
@@ -468,13 +631,6 @@ public class ForwardModel extends Game
         this.no_counters = a_gameState.no_counters;
         this.avatarLastAction = new Types.ACTIONS[no_players];
         System.arraycopy(a_gameState.avatarLastAction, 0, avatarLastAction, 0, no_players);
-        this.avatars = new MovingAvatar[no_players];
-        for (int i = 0; i < no_players; i++) {
-            if(a_gameState.avatars[i] != null){
-                avatars[i] = (MovingAvatar) a_gameState.avatars[i].copy();
-                avatars[i].setKeyHandler(a_gameState.avatars[i].getKeyHandler());
-            }
-        }
         this.counter = new int[no_counters];
         System.arraycopy(a_gameState.counter, 0, this.counter, 0, no_counters);
 
@@ -488,14 +644,420 @@ public class ForwardModel extends Game
         unknownList = new boolean[a_gameState.spriteGroups.length];
         visibleList = new boolean[no_players][a_gameState.spriteGroups.length];
 
+        this.pathf = a_gameState.pathf;
+        this.playAudio = false;
+        this.headless = a_gameState.headless || CompetitionParameters.HEADLESS_FORWARD_MODEL;
+        this.framebuffer = a_gameState.framebuffer;
+    }
+
+    /**
+     * Initializes the avatars of this model with copies of the avatars of a_gameState.
+     * @param a_gameState Reference to the original game
+     */
+    private void initAvatars(Game a_gameState)
+    {
+        this.avatars = new MovingAvatar[no_players];
+        for (int i = 0; i < no_players; i++) {
+            if(a_gameState.avatars[i] != null){
+                avatars[i] = (MovingAvatar) a_gameState.avatars[i].copy(this);
+                avatars[i].setKeyHandler(a_gameState.avatars[i].getKeyHandler());
+            }
+        }
+    }
+
+    /**
+     * Creates the (empty) observations and observation grid of this model.
+     */
+    private void initObservations()
+    {
         observations = new HashMap<>();
         observationGrid = new ArrayList[screenSize.width/block_size][screenSize.height/block_size];
         for(int i = 0; i < observationGrid.length; ++i)
             for(int j = 0; j < observationGrid[i].length; ++j)
                 observationGrid[i][j] = new ArrayList<>();
+    }
 
-        this.pathf = a_gameState.pathf;
-        this.playAudio = false;
+    /**
+     * Makes this model a copy of a_model that shares its sprites, events and observations with it.
+     * Neither of both models modifies the shared state: each sprite group is copied the first time
+     * one of its sprites may be modified, the observations the first time they change and the events
+     * when a new one is added. This makes copies that are only advanced a few steps, or not at all,
+     * cheap, and sprites that don't change (e.g. walls) are seldom copied.
+     * @param a_model forward model to copy.
+     */
+    private void share(ForwardModel a_model)
+    {
+        clearKillList();
+        killIdBase = a_model.killIdBase;
+        spatialGrid = null;
+
+        //Sprite groups, copied in ownGroup(); time effects and shields, copied in ownEffects().
+        spriteGroups = a_model.spriteGroups.clone();
+        ownedGroups = new boolean[spriteGroups.length];
+        lastMoveLag = a_model.lastMoveLag.clone();
+        timeEffects = a_model.timeEffects;
+        shieldedEffects = a_model.shieldedEffects;
+        avatars = a_model.avatars.clone();
+        num_sprites = a_model.num_sprites;
+        effectsShared = true;
+
+        //Observations, copied in ownObservations().
+        observations = a_model.observations;
+        observationGrid = a_model.observationGrid;
+        observationsShared = true;
+        sortObservationGrid = true;
+        copyTick = a_model.gameTick;
+        observationsDirty = a_model.observationsDirty;
+        removedObservations = new ArrayList<>(a_model.removedObservations);
+
+        //Events, shared by the copy of the log.
+        historicEvents = a_model.historicEvents.copy();
+        cheapAudio = a_model.cheapAudio;
+        soundEmissions = a_model.soundEmissions;
+        emissionsShared = true;
+
+        stateHash = a_model.stateHash;
+        stateHashValid = a_model.stateHashValid;
+
+        pathf = a_model.pathf;
+        pathfDirty = a_model.pathfDirty;
+        pathfTick = a_model.pathfTick;
+
+        //The categories of the sprite types are determined from the sprites in the game.
+        for(int i = 0; i < spriteGroups.length; ++i)
+        {
+            VGDLSprite sp = spriteGroups[i].getFirstSprite();
+            if(sp != null && isVisible(sp))
+                checkSpriteFeatures(sp, i);
+        }
+
+        //Game state variables:
+        this.gameTick = a_model.gameTick;
+        this.isEnded = a_model.isEnded;
+        this.nextSpriteID = a_model.nextSpriteID;
+
+        //From now on, a_model shares its state with this copy too.
+        a_model.copied = true;
+    }
+
+    /**
+     * Stops modifying the state this model shares with its copies, if it has been copied since
+     * this was last checked: the sprite groups, effects and observations are copied again before
+     * they are modified.
+     */
+    private void checkCopied()
+    {
+        if(!copied)
+            return;
+
+        copied = false;
+        Arrays.fill(ownedGroups, false);
+        effectsShared = true;
+        observationsShared = true;
+        emissionsShared = true;
+        spatialGrid = null;
+    }
+
+    /**
+     * Copies the time effects and shields of this model, and the avatars that are not in a
+     * sprite group, if they are shared with another model, so they can be modified. The
+     * sprite groups of the avatars are copied too.
+     */
+    private void ownEffects()
+    {
+        if(!effectsShared)
+            return;
+
+        //Avatars, and those that are not in the game anymore.
+        MovingAvatar[] sharedAvatars = avatars.clone();
+        for (int j = 0; j < no_players; j++) {
+            if(sharedAvatars[j] != null)
+                ownGroup(sharedAvatars[j].getType());
+        }
+        for (int j = 0; j < no_players; j++) {
+            if(sharedAvatars[j] != null && avatars[j] == sharedAvatars[j]) {
+                avatars[j] = (MovingAvatar) sharedAvatars[j].copy();
+                avatars[j].setKeyHandler(sharedAvatars[j].getKeyHandler());
+            }
+        }
+
+        ArrayList<Pair<Integer, Long>>[] sharedShields = shieldedEffects;
+        shieldedEffects = new ArrayList[sharedShields.length];
+        for(int i = 0; i < shieldedEffects.length; ++i)
+        {
+            shieldedEffects[i] = new ArrayList<>();
+            for(Pair p : sharedShields[i])
+                shieldedEffects[i].add(p.copy());
+        }
+
+        TreeSet<TimeEffect> sharedTimeEffects = this.timeEffects;
+        this.timeEffects = new TreeSet<>();
+        Iterator<TimeEffect> timeEffects = sharedTimeEffects.descendingIterator();
+        while(timeEffects.hasNext())
+        {
+            TimeEffect tef = timeEffects.next().copy();
+            this.timeEffects.add(tef);
+        }
+
+        effectsShared = false;
+    }
+
+    /**
+     * Makes this model execute the effects and terminations of the current thread, if it was
+     * created or last advanced by another one. Effects and terminations keep state while they are
+     * executed, so models advanced by several threads at once can't share them. The delegates of
+     * the time effects are copied too, and the avatars are given the key handler of the thread
+     * (see updateAvatars()).
+     */
+    private void useThreadRules()
+    {
+        Thread thread = Thread.currentThread();
+        if(rulesThread == thread)
+            return;
+
+        Rules rules = threadRules.get();
+        collisionEffects = rules.collisionEffects;
+        eosEffects = rules.eosEffects;
+        terminations = rules.terminations;
+        keyHandler = rules.keyHandler;
+        rulesThread = thread;
+
+        TreeSet<TimeEffect> sharedTimeEffects = this.timeEffects;
+        this.timeEffects = new TreeSet<>();
+        Iterator<TimeEffect> timeEffects = sharedTimeEffects.descendingIterator();
+        while(timeEffects.hasNext())
+        {
+            TimeEffect tef = timeEffects.next().copy();
+            if(tef.delegate != null)
+                tef.delegate = tef.delegate.clone();
+            this.timeEffects.add(tef);
+        }
+    }
+
+    /**
+     * Effects and terminations of a game, with the instances executed by one thread, and the
+     * key handler the thread passes the actions of the avatars through.
+     */
+    private static class Rules
+    {
+        final ArrayList<Effect>[][] collisionEffects;
+        final ArrayList<Effect>[] eosEffects;
+        final ArrayList<Termination> terminations;
+        final KeyHandler keyHandler;
+
+        /**
+         * Creates a copy of the effects and terminations of a game. Effects that appear more
+         * than once (e.g. for several pairs of sprite types) are copied once.
+         */
+        Rules(ArrayList<Effect>[][] collisionEffects, ArrayList<Effect>[] eosEffects, ArrayList<Termination> terminations,
+              int no_players)
+        {
+            keyHandler = new KeyPulse(no_players);
+
+            IdentityHashMap<Effect, Effect> copies = new IdentityHashMap<>();
+            this.collisionEffects = new ArrayList[collisionEffects.length][];
+            for(int i = 0; i < collisionEffects.length; ++i)
+            {
+                this.collisionEffects[i] = new ArrayList[collisionEffects[i].length];
+                for(int j = 0; j < collisionEffects[i].length; ++j)
+                    this.collisionEffects[i][j] = copy(collisionEffects[i][j], copies);
+            }
+
+            this.eosEffects = new ArrayList[eosEffects.length];
+            for(int i = 0; i < eosEffects.length; ++i)
+                this.eosEffects[i] = copy(eosEffects[i], copies);
+
+            this.terminations = new ArrayList<>(terminations.size());
+            for(Termination t : terminations)
+                this.terminations.add(t.clone());
+        }
+
+        private static ArrayList<Effect> copy(ArrayList<Effect> effects, IdentityHashMap<Effect, Effect> copies)
+        {
+            ArrayList<Effect> list = new ArrayList<>(effects.size());
+            for(Effect ef : effects)
+                list.add(copies.computeIfAbsent(ef, Effect::clone));
+            return list;
+        }
+    }
+
+    @Override
+    boolean isShared(int itype)
+    {
+        return !ownedGroups[itype];
+    }
+
+    /**
+     * Copies the sprite group of a type if it is shared with another model, so its sprites can be
+     * modified. The avatars, and the spatial grid if there is one, take the copies of their sprites,
+     * and so do the sprites taken from the group in this step (see current()).
+     * @param itype type of the sprites.
+     */
+    @Override
+    void ownGroup(int itype)
+    {
+        if(ownedGroups[itype])
+            return;
+
+        SpriteGroup sharedGroup = spriteGroups[itype];
+        SpriteGroup group = new SpriteGroup(itype);
+        for(VGDLSprite sp : sharedGroup.getSprites())
+        {
+            VGDLSprite spCopy = catchUp(sp.copy(), itype);
+            group.addSprite(spCopy);
+            copies.put(sp, spCopy);
+
+            //Avatars must point to the copies of their sprites.
+            if(sp.is_avatar)
+            {
+                for (int j = 0; j < no_players; j++)
+                    if(avatars[j] == sp)
+                        avatars[j] = (MovingAvatar) spCopy;
+            }
+        }
+
+        spriteGroups[itype] = group;
+        ownedGroups[itype] = true;
+        lastMoveLag[itype] = 0;
+        if(spatialGrid != null)
+            spatialGrid.thaw(itype, group.getSprites());
+    }
+
+    /**
+     * Brings the lastmove of a copy of a sprite of a shared group up to date, adding the steps the
+     * group was not updated (see tick()).
+     * @param spCopy copy of the sprite.
+     * @param itype type of the sprite.
+     * @return the copy.
+     */
+    VGDLSprite catchUp(VGDLSprite spCopy, int itype)
+    {
+        if(lastMoveLag[itype] > 0 && !(spCopy instanceof MovingAvatar) && !spCopy.is_disabled())
+            spCopy.lastmove += lastMoveLag[itype];
+        return spCopy;
+    }
+
+    @Override
+    VGDLSprite own(VGDLSprite sprite)
+    {
+        ownGroup(sprite.getType());
+        return current(sprite);
+    }
+
+    @Override
+    VGDLSprite current(VGDLSprite sprite)
+    {
+        if(copies.isEmpty())
+            return sprite;
+        VGDLSprite copy = copies.get(sprite);
+        return copy != null ? copy : sprite;
+    }
+
+    /**
+     * Gets the collection of sprites of a type. They are copied first if they are shared and they
+     * are asked for by a sprite update or an effect, which may modify them.
+     * @param spriteItype type of the sprite to retrieve.
+     * @return sprite collection of the specified type.
+     */
+    @Override
+    public ArrayList<VGDLSprite> getSprites(int spriteItype)
+    {
+        if(modifying > 0)
+            ownGroup(spriteItype);
+        return super.getSprites(spriteItype);
+    }
+
+    @Override
+    public Iterator<VGDLSprite> getSpriteGroup(int spriteItype)
+    {
+        if(modifying > 0)
+            ownGroup(spriteItype);
+        return super.getSpriteGroup(spriteItype);
+    }
+
+    @Override
+    public void killSprite(VGDLSprite sprite, boolean transformed)
+    {
+        super.killSprite(own(sprite), transformed);
+    }
+
+    /**
+     * Copies the observations and the observation grid of this model if they are shared with
+     * another model, so they can be modified. A copy puts the observations of its visible sprites
+     * in the order of the sprites, as update() does, so the cells of its grid are in the same order
+     * as in a new model: if it hasn't been advanced, it takes them from its sprites, as update()
+     * does; otherwise, it copies those it shares, so the sprites that moved since are moved to the
+     * end of their cells when the observations are updated. The model it was copied from keeps its order.
+     */
+    private void ownObservations()
+    {
+        checkCopied();
+        if(!observationsShared)
+            return;
+
+        HashMap<Integer, Observation> sharedObservations = observations;
+        ArrayList<Observation>[][] sharedGrid = observationGrid;
+        if(sortObservationGrid)
+        {
+            initObservations();
+            boolean advanced = gameTick != copyTick;
+            for(SpriteGroup group : spriteGroups)
+                for(VGDLSprite sp : group.getSprites())
+                {
+                    if(!isVisible(sp))
+                        continue;
+                    if(!advanced)
+                    {
+                        updateObservation(sp);
+                        continue;
+                    }
+
+                    //Sprites removed since the copy was taken are not in the groups, nor their observations in the
+                    //grid. They are removed from the list of observations next (see refreshObservations()).
+                    Observation sharedObs = sharedObservations.get(sp.spriteID);
+                    if(sharedObs != null)
+                    {
+                        Observation obs = sharedObs.copy();
+                        observations.put(sp.spriteID, obs);
+                        addObservationToGrid(obs, obs.position);
+                    }
+                }
+
+            //The observations of a copy that hasn't been advanced are up to date.
+            if(!advanced)
+            {
+                observationsDirty = false;
+                removedObservations.clear();
+            }
+            sortObservationGrid = false;
+            observationsShared = false;
+            return;
+        }
+
+        observations = new HashMap<>(sharedObservations.size() * 2);
+        for(Map.Entry<Integer, Observation> entry : sharedObservations.entrySet())
+            observations.put(entry.getKey(), entry.getValue().copy());
+
+        observationGrid = new ArrayList[sharedGrid.length][];
+        for(int i = 0; i < observationGrid.length; ++i)
+        {
+            observationGrid[i] = new ArrayList[sharedGrid[i].length];
+            for(int j = 0; j < observationGrid[i].length; ++j)
+            {
+                ArrayList<Observation> cell = new ArrayList<>(sharedGrid[i][j].size());
+                for(Observation obs : sharedGrid[i][j])
+                {
+                    //The same observation must be in the grid and in the list of observations.
+                    if(sharedObservations.get(obs.obsID) == obs)
+                        cell.add(observations.get(obs.obsID));
+                    else
+                        cell.add(obs.copy());
+                }
+                observationGrid[i][j] = cell;
+            }
+        }
+
+        observationsShared = false;
     }
 
 
@@ -538,12 +1100,23 @@ public class ForwardModel extends Game
         MovingAvatar a = avatars[playerID];
         if (!a.is_disabled()) {
             KeyHandler ki = a.getKeyHandler();
+            if(!(ki instanceof KeyInput) && ki != keyHandler)
+            {
+                //Avatars copy their KeyInput, but share other key handlers with all copies: models
+                //advanced by other threads than the game's use the one of the thread (see useThreadRules()).
+                ki = keyHandler;
+                a.setKeyHandler(ki);
+            }
             ki.reset(playerID);
             ki.setAction(action, a.getPlayerID());
 
             //apply action to correct avatar
-            a.preMovement();
+            long t = Profiler.start();
+            modifying++;
+            a.preMovement(!headless);
             a.updateAvatar(this, false, ki.getMask());
+            modifying--;
+            Profiler.spriteType(a.getType(), 1, t);
             setAvatarLastAction(action);
         }
     }
@@ -551,24 +1124,37 @@ public class ForwardModel extends Game
     /**
      * Performs one tick for the game, calling update(this) in all sprites.
      * It follows the same order of update calls as in the real game (inverse spriteOrder[]).
-     * Doesn't update disabled sprites.
+     * Doesn't update disabled sprites. Shared groups of idle sprites (see SpriteGroup.isIdle())
+     * are not updated (nor copied) in headless models, only their lastmove lags behind.
      */
     protected void tick() {
         for(int i = spriteOrder.length-1; i >= 0; --i)
         {
             int spriteTypeInt = spriteOrder[i];
+            if(headless && !playAudio && !ownedGroups[spriteTypeInt] && spriteGroups[spriteTypeInt].isIdle())
+            {
+                lastMoveLag[spriteTypeInt]++;
+                continue;
+            }
 
+            ownGroup(spriteTypeInt);
             Iterator<VGDLSprite> spriteIt = spriteGroups[spriteTypeInt].getSpriteIterator();
+            long t = Profiler.start();
+            int updated = 0;
+            modifying++;
             if(spriteIt != null) while(spriteIt.hasNext())
             {
                 VGDLSprite sp = spriteIt.next();
 
                 if(!(sp instanceof MovingAvatar) && ! sp.is_disabled())
                 {
-                    sp.preMovement();
+                    sp.preMovement(!headless);
                     sp.update(this);
+                    updated++;
                 }
             }
+            modifying--;
+            Profiler.spriteType(spriteTypeInt, updated, t);
         }
     }
 
@@ -579,10 +1165,16 @@ public class ForwardModel extends Game
      */
     final public void advance(Types.ACTIONS action) {
         if(!isEnded) {
+            checkCopied();
+            useThreadRules();
+            ownEffects();
+            clearAudio();
+            long t = Profiler.start();
             //apply player action
             updateAvatars(action, 0);
             //update all the other sprites
             tick();
+            Profiler.phase(Profiler.MODEL_TICK, t);
             //update game state
             advance_aux();
         }
@@ -595,6 +1187,11 @@ public class ForwardModel extends Game
     final public void advance(Types.ACTIONS[] actions) {
 
         if(!isEnded) {
+            checkCopied();
+            useThreadRules();
+            ownEffects();
+            clearAudio();
+            long t = Profiler.start();
             //apply actions of all players
             for (int i = 0; i < actions.length; i++) {
                 Types.ACTIONS a = actions[i]; // action
@@ -602,24 +1199,99 @@ public class ForwardModel extends Game
             }
             //update all other sprites in the game
             tick();
+            Profiler.phase(Profiler.MODEL_TICK, t);
             //update game state
             advance_aux();
         }
         //System.out.println(isMultiGameOver());
     }
 
+    /**
+     * Starts a new step of the audio emitted in this model: drops the audio observations and
+     * the sounds emitted in the previous step, so only the sounds of the step simulated next
+     * are heard. Shared emissions are not cleared, but left for the other models.
+     */
+    private void clearAudio()
+    {
+        audioObservations = null;
+        if(emissionsShared)
+            soundEmissions = SoundEmissions.NONE;
+        else
+            soundEmissions.clear();
+    }
+
+    /**
+     * Returns the sounds emitted in this step, so more can be recorded. They are replaced
+     * first if they are shared with another model.
+     * @return the sound emissions of this model.
+     */
+    @Override
+    SoundEmissions ownSoundEmissions()
+    {
+        if(emissionsShared)
+        {
+            soundEmissions = new SoundEmissions();
+            emissionsShared = false;
+        }
+        return soundEmissions;
+    }
+
+    /**
+     * Returns the sounds heard in the last step simulated by this model, sorted by
+     * intensity (see Game.getAudioObservations()).
+     * @return the audio observations of this model.
+     */
+    @Override
+    ArrayList<AudioObservation> getAudioObservations()
+    {
+        if(audioObservations == null)
+            audioObservations = buildAudioObservations(!cheapAudio);
+        return audioObservations;
+    }
+
+    @Override
+    Vector2d getListenerPosition()
+    {
+        return getAvatarPosition();
+    }
+
     /**
      * Auxiliary method for advance methods, to avoid code duplication.
      */
     private void advance_aux() {
+        long t = Profiler.start();
         eventHandling();
+        dropUndoneMoves();
+        copies.clear();
+        t = Profiler.phase(Profiler.MODEL_EVENTS, t);
         clearAll(this);
+        t = Profiler.phase(Profiler.MODEL_CLEAR, t);
         terminationHandling();
+        t = Profiler.phase(Profiler.MODEL_TERMINATION, t);
         checkTimeOut();
-        updateAllObservations();
+        Profiler.phase(Profiler.MODEL_TIMEOUT, t);
+        observationsDirty = true;
+        stateHashValid = false;
         gameTick++;
     }
 
+    /**
+     * Returns the hash of the state of this model, without the game tick. The hashes of the
+     * sprites of shared groups are kept in the groups (see SpriteGroup.stateHash()).
+     * @return the hash of the state.
+     */
+    @Override
+    long stateHash()
+    {
+        checkCopied();
+        if(!stateHashValid)
+        {
+            stateHash = stateHash(true);
+            stateHashValid = true;
+        }
+        return stateHash;
+    }
+
     /**
      * Updates all observations of this class.
      */
@@ -644,9 +1316,7 @@ public class ForwardModel extends Game
      * @return the copy of this forward model.
      */
     final public ForwardModel copy() {
-        ForwardModel copyObs = new ForwardModel(this, this.playerID);
-        copyObs.update(this);
-        return copyObs;
+        return new ForwardModel(this);
     }
 
     /**
@@ -928,6 +1598,9 @@ public class ForwardModel extends Game
      */
     private ArrayList<Observation>[] getPositionsFrom(boolean[] groupArray, Vector2d refPosition)
     {
+        ownObservations();
+        refreshObservations();
+
         //First, get how many types we have. Need to consider hidden sprites out.
         int numDiffTypes = 0;
         for(int i = 0; i < groupArray.length; ++i)
@@ -984,16 +1657,32 @@ public class ForwardModel extends Game
      */
     public ArrayList<Observation>[][] getObservationGrid()
     {
+        refreshObservations();
         return observationGrid;
     }
 
     /**
-     * Returns the list of historic events happened in this game so far.
+     * Returns the list of historic events happened in this game so far. The set is built from
+     * the event log of the game when requested, and only updated with the events added since
+     * the last call. Events are shared with other copies of this model, so they must not be modified.
      * @return list of historic events happened in this game so far.
      */
     TreeSet<Event> getEventsHistory()
     {
-        return historicEvents;
+        if(eventsHistory == null || eventsHistoryLog != historicEvents)
+        {
+            eventsHistory = new TreeSet<>();
+            eventsHistoryLog = historicEvents;
+        }
+
+        if(eventsHistory.size() < historicEvents.size())
+        {
+            //New events can only be at the game step of the last one seen, or later.
+            int first = eventsHistory.isEmpty() ? 0 : historicEvents.firstIndexFrom(eventsHistory.last().gameStep);
+            for(int i = first; i < historicEvents.size(); ++i)
+                eventsHistory.add(historicEvents.get(i));
+        }
+        return eventsHistory;
     }
 
     /**
@@ -24,6 +24,7 @@ import tools.pathfinder.PathFinder;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.util.*;
 
 /**
@@ -104,9 +105,23 @@ public abstract class Game {
 
 	/**
 	 * Historic of events related to the avatar happened during the game. The
-	 * entries are ordered asc. by game step.
+	 * entries are ordered asc. by game step. Shared with the forward models.
 	 */
-	TreeSet<Event> historicEvents;
+	EventLog historicEvents;
+
+	/**
+	 * Audio observations of the current game step, sorted by intensity. Built on
+	 * the first request of each step (see getAudioObservations()) and discarded
+	 * when the state of the game changes, so further requests in the same step
+	 * are free.
+	 */
+	ArrayList<AudioObservation> audioObservations;
+
+	/**
+	 * Sounds emitted by the sprites that the players haven't heard yet, recorded
+	 * as they are emitted (see emitSound()).
+	 */
+	SoundEmissions soundEmissions = new SoundEmissions();
 
 	/**
 	 * For each entry, int identifier of sprite type, a list with all the itypes
@@ -121,9 +136,17 @@ public abstract class Game {
 	ArrayList<Pair<Integer, Long>>[] shieldedEffects;
 
 	/**
-	 * Arraylist to hold collisions between objects in every frame
+	 * Uniform grid that indexes the sprites of the game by position, used for collision
+	 * detection. Built on demand and maintained incrementally as sprites are added, moved and removed.
 	 */
-	Bucket[] bucketList;
+	SpatialGrid spatialGrid;
+
+	/**
+	 * Number of sprite updates and effects being executed. The sprites they get from the game
+	 * may be modified, so forward models, which share their sprites with their copies, take a
+	 * copy of them first (see ForwardModel.ownGroup()).
+	 */
+	int modifying;
 
 	/**
 	 * Mapping between characters in the level and the entities they represent.
@@ -140,6 +163,18 @@ public abstract class Game {
 	 */
 	public ArrayList<VGDLSprite> kill_list;
 
+	/**
+	 * Sprites in kill_list, indexed by their spriteID minus killIdBase (the first
+	 * ID of the current level, so the set stays small).
+	 */
+	private BitSet killed = new BitSet();
+	int killIdBase;
+
+	/**
+	 * Sprite types with sprites removed in the current call to clearAll().
+	 */
+	private boolean[] removedTypes;
+
 	/**
 	 * Limit number of each resource type
 	 */
@@ -232,6 +267,13 @@ public abstract class Game {
 	 */
 	PathFinder pathf;
 
+	/**
+	 * Indicates if obstacles of the pathfinder have been created or destroyed since it was
+	 * updated (see getPath()), and the game tick of its last update.
+	 */
+	boolean pathfDirty;
+	int pathfTick = -1;
+
 	/**
 	 * Avatars last actions. Array for all avatars in the game. Index in array
 	 * corresponds to playerID.
@@ -239,6 +281,19 @@ public abstract class Game {
 	Types.ACTIONS[] avatarLastAction;
 
 	boolean playAudio;
+
+	/**
+	 * If true, the game is never drawn: the images of the sprites are not loaded
+	 * and their animations are not updated (see setHeadless()).
+	 */
+	boolean headless;
+
+	/**
+	 * Offscreen image of the game for IMAGE observations of learning players. It's
+	 * painted by the viewer every frame (see VGDLViewer), and shared with the
+	 * forward models of the game, so observations read the last frame painted.
+	 */
+	BufferedImage framebuffer;
 	public boolean audio_game;
 
 	/**
@@ -271,6 +326,20 @@ public abstract class Game {
 	// with one boolean per avatar, indicating the avatar's observability
 	public boolean[][][] fog_grid;
 
+	/**
+	 * Key handler of this game, which receives the keys pressed by human
+	 * players and is given to its avatars.
+	 */
+	protected KeyHandler keyHandler;
+
+	/**
+	 * Key handler of the last game created, as human controllers used to read it.
+	 * When a single game is played, it is the key handler of that game.
+	 * @deprecated use the key handler of the game instead (see getKeyHandler(), or
+	 * StateObservation.getGameKeyHandler() from a controller), which is also right
+	 * when several games are played at the same time.
+	 */
+	@Deprecated
 	public static KeyHandler ki;
 
 	/**
@@ -282,7 +351,7 @@ public abstract class Game {
 		definedEOSEffects = new ArrayList<>();
 		charMapping = new HashMap<>();
 		terminations = new ArrayList<>();
-		historicEvents = new TreeSet<>();
+		historicEvents = new EventLog();
 		timeEffects = new TreeSet<>();
 
 		// Game attributes:
@@ -401,7 +470,6 @@ public abstract class Game {
 		collisionEffects = new ArrayList[classConst.length][classConst.length];
 		eosEffects = new ArrayList[classConst.length];
 		iSubTypes = new ArrayList[classConst.length];
-		bucketList = new Bucket[classConst.length];
 		resources_limits = new int[classConst.length];
 		resources_colors = new Color[classConst.length];
 
@@ -412,7 +480,6 @@ public abstract class Game {
 			shieldedEffects[j] = new ArrayList<>();
 			eosEffects[j] = new ArrayList<>();
 			timeEffects = new TreeSet<>();
-			bucketList[j] = new Bucket();
 
 			// Declare the extended types list of this sprite type.
 			iSubTypes[j] = (ArrayList<Integer>) ((SpriteContent) classConst[j]).subtypes.clone();
@@ -751,15 +818,20 @@ public abstract class Game {
 		if (kill_list != null) {
 			kill_list.clear();
 		}
-		for (int j = 0; j < spriteGroups.length; ++j) {
-			bucketList[j].clear();
+		killed.clear();
+		killIdBase = nextSpriteID;
+		if (spatialGrid != null) {
+			spatialGrid.clear();
+			spatialGrid = null;
 		}
 
 		for (int i = 0; i < templateSprites.length; ++i) {
 			templateSprites[i] = null;
 		}
 
-		historicEvents.clear();
+		historicEvents = new EventLog();
+		audioObservations = null;
+		soundEmissions.clear();
 
 		resetShieldEffects();
 	}
@@ -791,11 +863,12 @@ public abstract class Game {
 
 		// taking care of the key handler parameter:
 
+		int keyHandlerType = CompetitionParameters.KEY_HANDLER;
 		if (key_handler != null && key_handler.equalsIgnoreCase("Pulse"))
-			CompetitionParameters.KEY_HANDLER = CompetitionParameters.KEY_PULSE;
+			keyHandlerType = CompetitionParameters.KEY_PULSE;
 
-		ki = CompetitionParameters.KEY_HANDLER == CompetitionParameters.KEY_INPUT ? new KeyInput()
-				: new KeyPulse(no_players);
+		keyHandler = keyHandlerType == CompetitionParameters.KEY_INPUT ? new KeyInput() : new KeyPulse(no_players);
+		ki = keyHandler;
 	}
 
 	/**
@@ -807,11 +880,17 @@ public abstract class Game {
 	 * @param itype main int type of this sprite (leaf of the hierarchy of types).
 	 */
 	protected void addSprite(VGDLSprite sprite, int itype) {
+		ownGroup(itype);
 		sprite.spriteID = nextSpriteID;
 		nextSpriteID++;
 		spriteGroups[itype].addSprite(sprite);
+		if (spatialGrid != null)
+			spatialGrid.add(sprite);
 		num_sprites++;
 
+		if (pathf != null && pathf.isObstacleType(itype))
+			pathfDirty = true;
+
 		if (sprite.is_stochastic)
 			this.is_stochastic = true;
 	}
@@ -907,7 +986,7 @@ public abstract class Game {
 	}
 
 	private double[] playGame(JEasyFrame frame, VGDLViewer view, Player[] players, boolean isHuman, int humanID) {
-		frame.addKeyListener(ki);
+		frame.addKeyListener(keyHandler);
 		frame.addWindowListener(wi);
 		wi.windowClosed = false;
 
@@ -1094,21 +1173,180 @@ public abstract class Game {
 	 * collisions and end game situations.
 	 */
 	private void gameCycle() {
+		beginCycle();
+		endCycle();
+
+		// if(gameTick == 0 || isEnded)
+		// fwdModel.printObservationGrid(); //uncomment this to show the observation grid.
+	}
+
+	/**
+	 * First part of a game cycle: advances the game tick and updates the
+	 * forward model, so the players can be asked for their actions.
+	 */
+	private void beginCycle() {
 		gameTick++; // next game tick.
 
 		// Update our state observation (forward model) with the information of the current game state.
+		long t = Profiler.start();
 		fwdModel.update(this);
+		Profiler.phase(Profiler.GAME_UPDATE, t);
 		// System.out.println(avatars[0].rect);
+	}
 
+	/**
+	 * Second part of a game cycle: rolls an action in all entities, handling
+	 * collisions and end game situations.
+	 */
+	private void endCycle() {
 		// Execute a game cycle:
+		long t = Profiler.start();
+		soundEmissions.dropBefore(gameTick - 1); // sounds are heard for one cycle at most.
 		this.tick(); // update for all entities.
+		t = Profiler.phase(Profiler.GAME_TICK, t);
+		audioObservations = null; // sprites moved since the players asked for them.
 		this.eventHandling(); // handle events such collisions.
+		this.dropUndoneMoves(); // moves undone by collisions are not heard.
+		t = Profiler.phase(Profiler.GAME_EVENTS, t);
 		this.clearAll(fwdModel); // clear all additional data, including dead sprites.
+		t = Profiler.phase(Profiler.GAME_CLEAR, t);
 		this.terminationHandling(); // check for game termination.
+		t = Profiler.phase(Profiler.GAME_TERMINATION, t);
 		this.checkTimeOut(); // Check for end of game by time steps.
+		Profiler.phase(Profiler.GAME_TIMEOUT, t);
+		audioObservations = null;
+	}
 
-		// if(gameTick == 0 || isEnded)
-		// fwdModel.printObservationGrid(); //uncomment this to show the observation grid.
+	/**
+	 * Starts a game that is played one cycle at a time with stepGame(), instead
+	 * of in a loop. The game is left at the point where the players are about to
+	 * be asked for their actions, so getObservation() returns what they will see.
+	 *
+	 * @param players Players that play this game.
+	 * @param randomSeed sampleRandom seed for the whole game.
+	 * @param view viewer that paints the game after each cycle, or null.
+	 */
+	public void startSteppedGame(Player[] players, int randomSeed, VGDLViewer view) {
+		prepareGame(players, randomSeed);
+		beginCycle();
+		if (view != null)
+			view.paint(this.spriteGroups);
+	}
+
+	/**
+	 * Plays the rest of the current cycle of a game started with
+	 * startSteppedGame(), asking the players for their actions, and starts the
+	 * next cycle if the game is not over. The same operations as in
+	 * playOnlineGame() are done, in the same order.
+	 *
+	 * @param view viewer that paints the game after each cycle, or null.
+	 * @return true if the game is over.
+	 */
+	public boolean stepGame(VGDLViewer view) {
+		endCycle();
+		if (isEnded)
+			fwdModel.update(this);
+		else
+			beginCycle();
+		if (view != null)
+			view.paint(this.spriteGroups);
+		return isEnded;
+	}
+
+	/**
+	 * Takes a snapshot of the state of a game started with startSteppedGame(),
+	 * between cycles (when the players are about to be asked for their
+	 * actions, or the game is over). The snapshot shares the sprites of the
+	 * forward model of the game, so it is cheap to take.
+	 *
+	 * @return the snapshot of the game.
+	 */
+	public GameSnapshot snapshot() {
+		return new GameSnapshot(fwdModel.copy(), counter, random, gameTick, getStateHash(true));
+	}
+
+	/**
+	 * Restores the state of a snapshot taken from this game (see snapshot()).
+	 * The game can then continue with stepGame(), exactly as it did after the
+	 * snapshot was taken if the players take the same actions. The snapshot
+	 * is not modified, so it can be restored again.
+	 *
+	 * @param snapshot snapshot to restore.
+	 * @param players players that play the game from the snapshot.
+	 */
+	public void restore(GameSnapshot snapshot, Player[] players) {
+		ForwardModel state = snapshot.state;
+
+		clearKillList();
+		killIdBase = state.killIdBase;
+		if (spatialGrid != null) {
+			spatialGrid.clear();
+			spatialGrid = null;
+		}
+
+		// Copies of the sprites, with the avatars among them. The sprites of the snapshot
+		// don't keep their images if its model is headless, so a game that is drawn takes
+		// them from a new sprite of each type.
+		spriteGroups = new SpriteGroup[state.spriteGroups.length];
+		avatars = new MovingAvatar[no_players];
+		num_sprites = 0;
+		for (int i = 0; i < spriteGroups.length; i++) {
+			spriteGroups[i] = new SpriteGroup(i);
+			VGDLSprite imageSprite = null;
+			for (VGDLSprite sp : state.spriteGroups[i].getSprites()) {
+				VGDLSprite spCopy = state.catchUp(sp.copy(this), i);
+				if (!headless && state.headless) {
+					if (imageSprite == null)
+						imageSprite = VGDLFactory.GetInstance().createSprite(this, (SpriteContent) classConst[i],
+								new Vector2d(), new Dimension(block_size, block_size));
+					if (imageSprite != null)
+						spCopy.setImages(imageSprite);
+				}
+				spriteGroups[i].addSprite(spCopy);
+				num_sprites++;
+				if (spCopy.is_avatar) {
+					MovingAvatar avatar = (MovingAvatar) spCopy;
+					if (avatar.getPlayerID() < no_players)
+						avatars[avatar.getPlayerID()] = avatar;
+				}
+			}
+		}
+		for (int i = 0; i < no_players; i++) {
+			if (avatars[i] != null && i < players.length) {
+				avatars[i].player = players[i];
+				avatars[i].setPlayerID(i);
+			}
+		}
+
+		shieldedEffects = new ArrayList[state.shieldedEffects.length];
+		for (int i = 0; i < shieldedEffects.length; i++) {
+			shieldedEffects[i] = new ArrayList<>();
+			for (Pair p : state.shieldedEffects[i])
+				shieldedEffects[i].add(p.copy());
+		}
+		// Added from the last, so effects at the same tick keep their order.
+		timeEffects = new TreeSet<>();
+		Iterator<TimeEffect> tefIt = state.timeEffects.descendingIterator();
+		while (tefIt.hasNext())
+			timeEffects.add(tefIt.next().copy());
+		historicEvents = state.historicEvents.copy();
+
+		gameTick = state.gameTick;
+		isEnded = state.isEnded;
+		avatarLastAction = state.avatarLastAction.clone();
+		nextSpriteID = state.nextSpriteID;
+		counter = snapshot.counter.clone();
+		random = snapshot.getRandom();
+		pathf = state.pathf;
+		pathfDirty = state.pathfDirty;
+		pathfTick = state.pathfTick;
+		audioObservations = null;
+		soundEmissions = state.soundEmissions.copy();
+
+		if (fwdModel == null)
+			initForwardModel();
+		else
+			fwdModel.update(this);
 	}
 
 	/**
@@ -1286,7 +1524,7 @@ public abstract class Game {
 			for (int i = 0; i < no_players; i++) {
 				if (numAvatarSprites > i) { // Check if there's enough avatars just in case
 					avatars[i] = avSprites.get(i);
-					avatars[i].setKeyHandler(ki);
+					avatars[i].setKeyHandler(keyHandler);
 					avatars[i].setPlayerID(i);
 				}
 			}
@@ -1340,8 +1578,10 @@ public abstract class Game {
 		// Now, do all of the avatars.
 		for (int i = 0; i < no_players; i++) {
 			if (avatars[i] != null && !avatars[i].is_disabled()) {
-				avatars[i].preMovement();
+				long t = Profiler.start();
+				avatars[i].preMovement(!headless);
 				avatars[i].updateAvatar(this, true, null);
+				Profiler.spriteType(avatars[i].getType(), 1, t);
 			} else if (avatars[i] == null) {
 				System.out.println(gameTick + ": Something went wrong, no avatar, ID = " + i);
 			}
@@ -1352,13 +1592,18 @@ public abstract class Game {
 		for (int i = spriteOrderCount - 1; i >= 0; --i) {
 			int spriteTypeInt = spriteOrder[i];
 			ArrayList<VGDLSprite> spritesList = spriteGroups[spriteTypeInt].getSprites();
-			if (spritesList != null)
+			if (spritesList != null) {
+				long t = Profiler.start();
+				int updated = 0;
 				for (VGDLSprite sp : spritesList) {
 					if (!(sp instanceof MovingAvatar) && !sp.is_disabled()) {
-						sp.preMovement();
+						sp.preMovement(!headless);
 						sp.update(this);
+						updated++;
 					}
 				}
+				Profiler.spriteType(spriteTypeInt, updated, t);
+			}
 
 		}
 	}
@@ -1380,7 +1625,11 @@ public abstract class Game {
 				// if intId==-1, we have no sprite
 				if (intId == -1) {
 					// With no sprite, the effect is independent from particular sprites.
+					long t = Profiler.start();
+					modifying++;
 					ef.execute(null, null, this);
+					modifying--;
+					Profiler.effect(ef, 1, t);
 					exec = true;
 
 					// Affect score for all players:
@@ -1395,10 +1644,11 @@ public abstract class Game {
 					ArrayList<Integer> allTypes = iSubTypes[intId];
 					for (Integer itype : allTypes) {
 						// Find all sprites of this subtype.
+						ownGroup(itype);
 						Collection<VGDLSprite> sprites = this.getSprites(itype);
 						for (VGDLSprite sp : sprites) {
 							// Check that they are not dead (could happen in this same cycle).
-							if (!kill_list.contains(sp) && !sp.is_disabled()) {
+							if (!isKilled(sp) && !sp.is_disabled()) {
 								executeEffect(ef, sp, null);
 								exec = true;
 							}
@@ -1426,12 +1676,13 @@ public abstract class Game {
 					for (Integer itype : allTypes) {
 						// Add all sprites of this subtype to the list of sprites.
 						// These are sprites that could potentially collide with EOS
+						ownGroup(itype);
 						Collection<VGDLSprite> sprites = this.getSprites(itype);
 						try{
 							for (VGDLSprite sp : sprites) {
 								// Check if they are at the edge to trigger the effect. Also check that they
 								// are not dead (could happen in this same cycle).
-								if (isAtEdge(sp.rect) && !kill_list.contains(sp) && !sp.is_disabled()) {
+								if (isAtEdge(sp.rect) && !isKilled(sp) && !sp.is_disabled()) {
 									executeEffect(ef, sp, null);
 								}
 							}
@@ -1446,6 +1697,10 @@ public abstract class Game {
 		}
 
 		// Now, we handle events between pairs of sprites, for each pair of sprites that have a paired effect defined:
+		boolean useGrid = CompetitionParameters.SPATIAL_COLLISIONS && screenSize != null;
+		if (useGrid && spatialGrid == null)
+			buildSpatialGrid();
+
 		for (Pair<Integer, Integer> p : definedEffects) {
 			// We iterate over the (potential) multiple effects that these
 			// two sprites could have defined between them.
@@ -1469,40 +1724,84 @@ public abstract class Game {
 						secondx.addAll(getSprites(j));
 					}
 
-					ArrayList<VGDLSprite> new_secondx;
-
-					for (VGDLSprite s1 : firstx) {
-						new_secondx = new ArrayList<>();
-
-						for (VGDLSprite s2 : secondx) {
-							if ((s1 != s2 && s1.intersects(s2))) {
-								new_secondx.add(s2);
+					if (firstx.isEmpty() || secondx.isEmpty())
+						continue;
+
+					if (useGrid)
+						spatialGrid.setCandidates(secondx);
+
+					ArrayList<VGDLSprite> new_secondx = new ArrayList<>();
+					long t = Profiler.start();
+					int hits = 0;
+
+					for (VGDLSprite first : firstx) {
+						// Sprites copied by a forward model since the lists were made are replaced by their copies.
+						VGDLSprite s1 = current(first);
+						if (useGrid) {
+							// Only sprites in the cells overlapped by s1, in the same order as in secondx.
+							spatialGrid.query(s1, allTypes2, new_secondx);
+						} else {
+							new_secondx = new ArrayList<>();
+							for (VGDLSprite second : secondx) {
+								VGDLSprite s2 = current(second);
+								if ((s1 != s2 && s1.intersects(s2))) {
+									new_secondx.add(s2);
+								}
 							}
 						}
 
+						hits += new_secondx.size();
 						if(new_secondx.size() > 0) {
 							if (ef.inBatch) {
 								executeEffectBatch(ef, s1, new_secondx);
 							} else {
 
 								for (VGDLSprite new_secondx1 : new_secondx) {
-									if (!kill_list.contains(s1) && s1 != new_secondx1 && s1.intersects(new_secondx1)) {
-										executeEffect(ef, s1, new_secondx1);
+									s1 = current(s1);
+									VGDLSprite s2 = current(new_secondx1);
+									if (!isKilled(s1) && s1 != s2 && s1.intersects(s2)) {
+										executeEffect(ef, s1, s2);
 									}
 								}
 							}
 						}
 					}
+					Profiler.collision(p.first, p.second, firstx.size(), hits, t);
 				}
 			}
 		}
 
 	}
 
+	/**
+	 * Creates the spatial grid used for collision detection, indexing all sprites currently in the game.
+	 */
+	private void buildSpatialGrid() {
+		spatialGrid = new SpatialGrid(screenSize, block_size, spriteGroups.length);
+		for (int i = 0; i < spriteGroups.length; i++) {
+			if (isShared(i)) {
+				spatialGrid.freeze(spriteGroups[i]);
+				continue;
+			}
+			for (VGDLSprite sp : spriteGroups[i].getSprites()) {
+				spatialGrid.add(sp);
+			}
+		}
+	}
+
 
 	private void executeEffectBatch(Effect ef, VGDLSprite s1, ArrayList<VGDLSprite> s2list) {
+		s1 = own(s1);
+		if (ef.modifiesSecond())
+			for (int i = 0; i < s2list.size(); i++)
+				s2list.set(i, own(s2list.get(i)));
+
 		// There is a collision. Apply the effect.
+		long t = Profiler.start();
+		modifying++;
 		int batchCount = ef.executeBatch(s1, s2list, this);
+		modifying--;
+		Profiler.effect(ef, Math.max(batchCount, 0), t);
 		if(batchCount == -1)
 		{
 			System.out.println("WARNING: Batch collision not or bad implemented (batchCount == -1)");
@@ -1539,8 +1838,16 @@ public abstract class Game {
 	}
 
 	private void executeEffect(Effect ef, VGDLSprite s1, VGDLSprite s2) {
+		s1 = own(s1);
+		if (s2 != null && ef.modifiesSecond())
+			s2 = own(s2);
+
 		// There is a collision. Apply the effect.
+		long t = Profiler.start();
+		modifying++;
 		ef.execute(s1, s2, this);
+		modifying--;
+		Profiler.effect(ef, 1, t);
 
 		// Affect score:
 		if (ef.applyScore) {
@@ -1633,9 +1940,21 @@ public abstract class Game {
 	 * @param fm Forward model where we are cleaning sprites.
 	 */
 	void clearAll(ForwardModel fm) {
+		if (kill_list.isEmpty()) {
+			resetShieldEffects();
+			return;
+		}
+
+		if (removedTypes == null || removedTypes.length != spriteGroups.length)
+			removedTypes = new boolean[spriteGroups.length];
+
 		for (VGDLSprite sprite : kill_list) {
-			int spriteType = sprite.getType();
-			this.spriteGroups[spriteType].removeSprite(sprite);
+			removedTypes[sprite.getType()] = true;
+			if (pathf != null && pathf.isObstacleType(sprite.getType()))
+				pathfDirty = true;
+			if (spatialGrid != null) {
+				spatialGrid.remove(sprite);
+			}
 			if (fm != null) {
 				fm.removeSpriteObservation(sprite);
 			}
@@ -1649,11 +1968,16 @@ public abstract class Game {
 			num_sprites--;
 
 		}
-		kill_list.clear();
 
-		for (int j = 0; j < spriteGroups.length; ++j) {
-			bucketList[j].clear();
+		// Remove the killed sprites from their groups, in one pass per group.
+		for (int i = 0; i < removedTypes.length; i++) {
+			if (removedTypes[i]) {
+				spriteGroups[i].removeSprites(this::isKilled);
+				removedTypes[i] = false;
+			}
 		}
+		kill_list.clear();
+		killed.clear();
 
 		resetShieldEffects();
 	}
@@ -1741,11 +2065,13 @@ public abstract class Game {
 				// Assign its types and add it to the collection of sprites.
 				newSprite.itypes = (ArrayList<Integer>) content.itypes.clone();
 
-				// save a copy as template object
-				templateSprites[itype] = newSprite.copy();
+				// save a copy as template object. Forward models share the templates of
+				// their game, and don't add theirs, which may lack the images.
+				if (!(this instanceof ForwardModel))
+					templateSprites[itype] = newSprite.copy();
 			} else // we already have a template, so simply copy that one
 			{
-				newSprite = templateSprites[itype].copy();
+				newSprite = templateSprites[itype].copy(this);
 
 				// make sure the copy is moved to the correct position
 				newSprite.setRect(position, spriteDim);
@@ -1800,9 +2126,35 @@ public abstract class Game {
 			sprite.setDisabled(true);
 		} else {
 			kill_list.add(sprite);
+			setKilled(sprite);
 		}
 	}
 
+	/**
+	 * Indicates if a sprite has been killed in this step (it's in kill_list).
+	 *
+	 * @param sprite the sprite to check.
+	 * @return true if the sprite will be removed at the end of this step.
+	 */
+	public boolean isKilled(VGDLSprite sprite) {
+		int idx = sprite.spriteID - killIdBase;
+		return idx >= 0 ? killed.get(idx) : kill_list.contains(sprite);
+	}
+
+	private void setKilled(VGDLSprite sprite) {
+		int idx = sprite.spriteID - killIdBase;
+		if (idx >= 0)
+			killed.set(idx);
+	}
+
+	/**
+	 * Empties the list of sprites killed in this step.
+	 */
+	void clearKillList() {
+		kill_list = new ArrayList<>();
+		killed.clear();
+	}
+
 	/**
 	 * Gets an iterator for the collection of sprites for a particular sprite type.
 	 *
@@ -1845,6 +2197,66 @@ public abstract class Game {
 		return spriteGroups[spriteItype].getSprites();
 	}
 
+	/**
+	 * Indicates if the sprites of a type are shared with other games, so they can't be modified
+	 * (see ForwardModel.ownGroup()). Games don't share their sprites.
+	 *
+	 * @param itype type of the sprites.
+	 * @return true if the sprite group of this type is shared.
+	 */
+	boolean isShared(int itype) {
+		return false;
+	}
+
+	/**
+	 * Makes sure the sprites of a type can be modified (see isShared()).
+	 *
+	 * @param itype type of the sprites.
+	 */
+	void ownGroup(int itype) {
+	}
+
+	/**
+	 * Returns a sprite of the game that can be modified: the one given or, if it was shared,
+	 * the copy that replaces it (see isShared()).
+	 *
+	 * @param sprite sprite to modify.
+	 * @return the sprite to modify instead.
+	 */
+	VGDLSprite own(VGDLSprite sprite) {
+		return sprite;
+	}
+
+	/**
+	 * Returns the sprite given or, if it was shared and has been replaced by a copy since it
+	 * was taken from the game, the copy (see isShared()).
+	 *
+	 * @param sprite sprite of the game.
+	 * @return the sprite that is in the game now.
+	 */
+	VGDLSprite current(VGDLSprite sprite) {
+		return sprite;
+	}
+
+	/**
+	 * Returns the sprite of the game a sprite taken from it in an earlier step refers to, such
+	 * as the target a sprite keeps between steps. Forward models replace their shared sprites
+	 * by copies when they modify them (see isShared()), their sprites are copies of those of
+	 * the game they are created from, and so are those of a game restored from a snapshot, so
+	 * these references must be looked up again before they are used.
+	 *
+	 * @param sprite sprite taken from the game.
+	 * @return the sprite with the same ID that is in the game now or, if there is none, the
+	 *         sprite given.
+	 */
+	public VGDLSprite getCurrentSprite(VGDLSprite sprite) {
+		// Groups are not copied by this look-up, even if shared.
+		for (VGDLSprite sp : spriteGroups[sprite.getType()].getSprites())
+			if (sp.spriteID == sprite.spriteID)
+				return sp;
+		return sprite;
+	}
+
 	/**
 	 * Gets the array of collisions defined for two types of sprites.
 	 *
@@ -2074,46 +2486,126 @@ public abstract class Game {
 		return new AudioStateObservation(this, fwdModel.copy(), 0);
 	}
 
+	/**
+	 * Records a sound emitted by a sprite (when it uses something), to be heard
+	 * by the players.
+	 *
+	 * @param sp sprite that emits the sound.
+	 * @param sound sound emitted. Nothing is recorded if it's null or empty.
+	 */
+	public void emitSound(VGDLSprite sp, String sound) {
+		if (sound == null || sound.isEmpty())
+			return;
+		ownSoundEmissions().add(gameTick, sp.spriteID, sound, sp.rect.x, sp.rect.y);
+	}
+
+	/**
+	 * Records the sound emitted by a sprite when it moves, to be heard by the
+	 * players. It is dropped at the end of the game step if the sprite is back
+	 * where it began it (see dropUndoneMoves()).
+	 *
+	 * @param sp sprite that moves.
+	 */
+	public void emitMoveSound(VGDLSprite sp) {
+		if (sp.audioMove == null || sp.audioMove.isEmpty())
+			return;
+		ownSoundEmissions().add(gameTick, sp.spriteID, sp.audioMove, sp.rect.x, sp.rect.y, sp);
+	}
+
+	/**
+	 * Drops the sounds of the moves undone in this game step: sprites that end
+	 * it where they began it have not moved. Called once the collisions of the
+	 * step have been handled.
+	 */
+	void dropUndoneMoves() {
+		soundEmissions.dropUndoneMoves();
+	}
+
+	/**
+	 * Returns the sounds emitted and not heard yet, so more can be recorded.
+	 *
+	 * @return the sound emissions of this game.
+	 */
+	SoundEmissions ownSoundEmissions() {
+		return soundEmissions;
+	}
+
+	/**
+	 * Returns the sounds heard in this game step, sorted by intensity: sounds
+	 * emitted by sprites that moved or used something since they were last heard
+	 * (in the last cycle at most), sprites with a beacon, and events of the last
+	 * two steps. The list is shared by all requests in the same game step and
+	 * must not be modified.
+	 *
+	 * @return the audio observations of the current game step.
+	 */
 	ArrayList<AudioObservation> getAudioObservations() {
+		if (audioObservations == null) {
+			audioObservations = buildAudioObservations(true);
+			soundEmissions.clear(); // they have been heard.
+		}
+		return audioObservations;
+	}
+
+	/**
+	 * Creates the list of sounds heard in this game step, sorted by intensity.
+	 * Intensities are computed from the position of the listener now.
+	 *
+	 * @param loadAssets true to look up the sound of each observation, false to
+	 *                   only record source ids and intensities.
+	 * @return the audio observations of the current game step.
+	 */
+	ArrayList<AudioObservation> buildAudioObservations(boolean loadAssets) {
 		ArrayList<AudioObservation> obs = new ArrayList<>();
+		Vector2d avatarPosition = getListenerPosition();
 
-		// Sprites:
+		// Sounds emitted:
+		for (int i = 0; i < soundEmissions.size(); i++) {
+			double dist = avatarPosition.dist(soundEmissions.x(i), soundEmissions.y(i)) / block_size;
+			double intensity = 1/(dist + 1);
+			obs.add(new AudioObservation(soundEmissions.id(i), intensity, soundEmissions.sound(i), loadAssets));
+		}
+
+		// Beacons (only types that have one; all sprites of a type share their audio):
 		for (SpriteGroup spriteGroup : spriteGroups) {
+			VGDLSprite first = spriteGroup.getFirstSprite();
+			if (first == null || first.beacon == null || first.beacon.isEmpty())
+				continue;
+
 			for (VGDLSprite sp : spriteGroup.getSprites()) {
-				if (sp.audioMove != null && !sp.audioMove.equals("") && !sp.rect.equals(sp.lastrect)) {
-					obs.add(createAudioObservation(sp, sp.audioMove));
-				}
-				if (sp.audioUse != null && !sp.audioUse.equals("") && sp.used) {
-					obs.add(createAudioObservation(sp, sp.audioUse));
-					sp.used = false;
-				}
-				if (sp.beacon != null && !sp.beacon.equals("")) {
-					obs.add(createAudioObservation(sp, sp.beacon));
-				}
+				obs.add(createAudioObservation(sp, sp.beacon, avatarPosition, loadAssets));
 			}
 		}
 
-		// Events:
-		for (Event historicEvent : historicEvents) {
-			if (historicEvent.gameStep >= getGameTick() - 1) {
-				obs.add(createAudioObservation(historicEvent));
-			}
+		// Events (only those of the last two game steps):
+		for (int i = historicEvents.firstIndexFrom(getGameTick() - 1); i < historicEvents.size(); i++) {
+			obs.add(createAudioObservation(historicEvents.get(i), avatarPosition, loadAssets));
 		}
 
 		Collections.sort(obs);
 		return obs;
 	}
 
-	private AudioObservation createAudioObservation(VGDLSprite sp, String audioSrc) {
-		double dist = sp.getPosition().dist(fwdModel.getAvatarPosition()) / block_size;
+	/**
+	 * Returns the position sounds are heard from (the avatar's).
+	 *
+	 * @return the position of the listener.
+	 */
+	Vector2d getListenerPosition() {
+		return fwdModel.getAvatarPosition();
+	}
+
+	private AudioObservation createAudioObservation(VGDLSprite sp, String audioSrc, Vector2d avatarPosition,
+			boolean loadAsset) {
+		double dist = sp.getPosition().dist(avatarPosition) / block_size;
 		double intensity = 1/(dist + 1);
-		return new AudioObservation(sp.spriteID, intensity, audioSrc);
+		return new AudioObservation(sp.spriteID, intensity, audioSrc, loadAsset);
 	}
 
-	private AudioObservation createAudioObservation(Event e) {
-		double dist = e.position.dist(fwdModel.getAvatarPosition()) / block_size;
+	private AudioObservation createAudioObservation(Event e, Vector2d avatarPosition, boolean loadAsset) {
+		double dist = e.position.dist(avatarPosition) / block_size;
 		double intensity = 1/(dist + 1);
-		return new AudioObservation(e.activeTypeId, intensity, e.audioSrc);
+		return new AudioObservation(e.activeTypeId, intensity, e.audioSrc, loadAsset);
 	}
 
 	/**
@@ -2143,6 +2635,61 @@ public abstract class Game {
 		return gameTick;
 	}
 
+	/**
+	 * Returns a 64-bit hash of the state of the game, so equal states can be
+	 * found without comparing them. It combines the state of each sprite (see
+	 * VGDLSprite.stateHash(), which is only computed again for the sprites
+	 * that changed), the scores and win states of the players, the counters
+	 * and if the game is over. States that differ only in the IDs of their
+	 * sprites have the same hash, and different states may, rarely, too.
+	 *
+	 * @param includeTick if true, states at different game ticks have different hashes.
+	 * @return the hash of the state of the game.
+	 */
+	public long getStateHash(boolean includeTick) {
+		long h = stateHash();
+		return includeTick ? Utils.hash64(h, gameTick) : h;
+	}
+
+	/**
+	 * Returns the hash of the state of the game, without the game tick.
+	 *
+	 * @return the hash of the state.
+	 */
+	long stateHash() {
+		return stateHash(true);
+	}
+
+	/**
+	 * Computes the hash of the state of the game, without the game tick.
+	 * Sprite hashes are added up (not XOR-ed), so equal sprites don't cancel
+	 * each other.
+	 *
+	 * @param keepInSprites if true, sprites keep their hashes (see VGDLSprite.stateHash()).
+	 * @return the hash of the state.
+	 */
+	final long stateHash(boolean keepInSprites) {
+		long h = 0;
+		for (int i = 0; i < spriteGroups.length; i++) {
+			if (isShared(i)) {
+				h += spriteGroups[i].stateHash();
+				continue;
+			}
+			for (VGDLSprite sp : spriteGroups[i].getSprites())
+				h += sp.stateHash(keepInSprites);
+		}
+
+		long g = Utils.hash64(0, isEnded ? 1 : 0);
+		for (int i = 0; i < no_players; i++) {
+			MovingAvatar avatar = avatars[i];
+			g = Utils.hash64(g, avatar == null ? -1 : Double.doubleToLongBits(avatar.getScore() + 0.0));
+			g = Utils.hash64(g, avatar == null ? -1 : avatar.getWinState().ordinal());
+		}
+		for (int i = 0; i < no_counters; i++)
+			g = Utils.hash64(g, counter[i]);
+		return h + g;
+	}
+
 	/**
 	 * Returns the winner of this game. A value from Types.WINNER.
 	 *
@@ -2180,6 +2727,15 @@ public abstract class Game {
 		return MAX_SPRITES;
 	}
 
+	/**
+	 * Returns the key handler of this game, which receives the keys pressed by
+	 * human players.
+	 * @return the key handler of this game.
+	 */
+	public KeyHandler getKeyHandler() {
+		return keyHandler;
+	}
+
 	/**
 	 * Indicates how many pixels form a block in the game.
 	 *
@@ -2199,7 +2755,26 @@ public abstract class Game {
 	public void buildLevel(String gamelvl, int randomSeed) {
 	}
 
+	/**
+	 * Returns the shortest path between two positions that avoids the obstacles of the game
+	 * (see PathFinder.getPath()). The pathfinder is updated first if obstacles have been
+	 * created or destroyed, or every tick if they can move.
+	 *
+	 * @param start start position, in pixels.
+	 * @param end end position, in pixels.
+	 * @return the path, or null if there is none.
+	 */
 	public ArrayList<Node> getPath(Vector2d start, Vector2d end) {
+		if (pathfDirty || (pathf.hasMovingObstacles() && pathfTick != gameTick)) {
+			// The pathfinder only reads the obstacles, even when asked for a path by a sprite update.
+			int modifying = this.modifying;
+			this.modifying = 0;
+			pathf = pathf.update(this);
+			this.modifying = modifying;
+			pathfDirty = false;
+			pathfTick = gameTick;
+		}
+
 		Vector2d pathStart = new Vector2d(start);
 		Vector2d pathEnd = new Vector2d(end);
 
@@ -2225,53 +2800,37 @@ public abstract class Game {
 		playAudio = b;
 	}
 
-    /**
-	 * Class for helping collision detection.
+	/**
+	 * Returns the offscreen image the game is painted on for IMAGE observations,
+	 * creating it the first time. The same image is reused every frame.
+	 *
+	 * @return the offscreen image of the game.
 	 */
-	protected class Bucket {
-		ArrayList<VGDLSprite> allSprites;
-		HashMap<Integer, ArrayList<VGDLSprite>> spriteLists;
-		int totalNumSprites;
-
-		public Bucket() {
-			allSprites = new ArrayList<>();
-			spriteLists = new HashMap<>();
-			totalNumSprites = 0;
-		}
-
-		public void clear() {
-			allSprites.clear();
-			spriteLists.clear();
-			totalNumSprites = 0;
-		}
-
-		public void add(VGDLSprite sp) {
-			int bucket = sp.bucket;
-			ArrayList<VGDLSprite> sprites = spriteLists.computeIfAbsent(bucket, k -> new ArrayList<>());
-			sprites.add(sp);
-			allSprites.add(sp);
-			totalNumSprites++;
-		}
-
-		public int size() {
-			return totalNumSprites;
-		}
-
-		public int size(int bucket) {
-			ArrayList<VGDLSprite> sprites = spriteLists.get(bucket);
-			if (sprites == null)
-				return 0;
-			return sprites.size();
-		}
-
-		public ArrayList<VGDLSprite> getAllSprites() {
-			return allSprites;
-		}
+	public BufferedImage getFramebuffer() {
+		if (framebuffer == null)
+			framebuffer = new BufferedImage(screenSize.width, screenSize.height, BufferedImage.TYPE_INT_ARGB);
+		return framebuffer;
+	}
 
-		public HashMap<Integer, ArrayList<VGDLSprite>> getSpriteList() {
-			return spriteLists;
-		}
+	/**
+	 * Indicates if this game is played without being drawn.
+	 *
+	 * @return true if the game is headless.
+	 */
+	public boolean isHeadless() {
+		return headless;
+	}
 
+	/**
+	 * Sets the game to be played without being drawn. Sprites created afterwards
+	 * don't load their images, and sprite animations are not updated. It must be
+	 * set before building the level, and the game must not be drawn (playGame(),
+	 * screenshots) while headless.
+	 *
+	 * @param headless true to play the game without drawing it.
+	 */
+	public void setHeadless(boolean headless) {
+		this.headless = headless;
 	}
 
 }
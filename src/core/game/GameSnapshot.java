@@ -0,0 +1,80 @@
+package core.game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+/**
+ * State of a game at the start of a cycle, before the players act (see Game.snapshot()), that
+ * can be restored in the same game later (see Game.restore()). It keeps a copy of the forward
+ * model of the game, which holds the sprites, effects and events, and what the model doesn't
+ * have: the counters and the random generator of the game, serialized.
+ */
+public class GameSnapshot
+{
+    final ForwardModel state;
+    final int[] counter;
+    private final byte[] random;
+
+    private final int gameTick;
+    private final long stateHash;
+
+    GameSnapshot(ForwardModel state, int[] counter, Random random, int gameTick, long stateHash)
+    {
+        this.state = state;
+        this.counter = counter.clone();
+        this.random = serialize(random);
+        this.gameTick = gameTick;
+        this.stateHash = stateHash;
+    }
+
+    /**
+     * Returns the game tick of the snapshot.
+     * @return the game tick.
+     */
+    public int getGameTick()
+    {
+        return gameTick;
+    }
+
+    /**
+     * Returns the hash of the state of the game when the snapshot was taken, with the game
+     * tick (see Game.getStateHash()).
+     * @return the hash of the state.
+     */
+    public long getStateHash()
+    {
+        return stateHash;
+    }
+
+    /**
+     * Returns a random generator in the state the one of the game was when the snapshot was taken.
+     * @return a new random generator.
+     */
+    Random getRandom()
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(random)))
+        {
+            return (Random) in.readObject();
+        } catch (IOException | ClassNotFoundException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] serialize(Random random)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(random);
+        } catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
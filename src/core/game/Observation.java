@@ -67,6 +67,22 @@ public class Observation implements Comparable<Observation>
         this.category = category;
     }
 
+    /**
+     * Creates a copy of this observation.
+     * @return a new observation with the same values as this one.
+     */
+    public Observation copy()
+    {
+        Observation obs = new Observation();
+        obs.category = category;
+        obs.itype = itype;
+        obs.obsID = obsID;
+        obs.position = position;
+        obs.reference = reference;
+        obs.sqDist = sqDist;
+        return obs;
+    }
+
     /**
      * Updates this observation
      * @param itype type of the sprite of this observation
@@ -0,0 +1,386 @@
+package core.game;
+
+import core.competition.CompetitionParameters;
+import core.vgdl.VGDLRegistry;
+import ontology.effects.Effect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures where the time of a game goes: the phases of Game cycles and ForwardModel.advance(),
+ * the update of each sprite type, the execution of each effect class and the collision checks
+ * of each pair of sprite types. It's only active if CompetitionParameters.PROFILE is true; when
+ * it's not, each measuring point costs a static field read.
+ *
+ * The time players take to choose their actions in the real game is measured apart (game.act),
+ * and doesn't count in any other measurement: they are taken with a clock that stops while
+ * players act, so the time of game.tick and of the avatars is only the time of the engine.
+ *
+ * Each thread writes its own counters, so games played in several threads don't contend (only
+ * adding a new sprite type, effect class or collision pair locks the profiler of the thread).
+ * report() adds up the counters of all threads. It can be called while games are being played
+ * (see CompetitionParameters.PROFILE_SAMPLE_SECONDS), with approximate results.
+ *
+ * A measuring point looks like this:
+ *
+ *   long t = Profiler.start();
+ *   doSomething();
+ *   t = Profiler.phase(Profiler.GAME_TICK, t);
+ */
+public class Profiler
+{
+    /**
+     * Phases of Game cycles (endCycle()) and ForwardModel.advance().
+     */
+    public static final int GAME_UPDATE = 0;
+    public static final int GAME_TICK = 1;
+    public static final int GAME_EVENTS = 2;
+    public static final int GAME_CLEAR = 3;
+    public static final int GAME_TERMINATION = 4;
+    public static final int GAME_TIMEOUT = 5;
+    public static final int MODEL_TICK = 6;
+    public static final int MODEL_EVENTS = 7;
+    public static final int MODEL_CLEAR = 8;
+    public static final int MODEL_TERMINATION = 9;
+    public static final int MODEL_TIMEOUT = 10;
+    public static final int MODEL_OBSERVATIONS = 11;
+    public static final int GAME_ACT = 12;
+
+    private static final String[] PHASE_NAMES = {"game.update", "game.tick", "game.eventHandling",
+        "game.clearAll", "game.terminationHandling", "game.checkTimeOut", "model.tick", "model.eventHandling",
+        "model.clearAll", "model.terminationHandling", "model.checkTimeOut", "model.updateAllObservations",
+        "game.act"};
+
+    /**
+     * Profilers of all threads that measured something.
+     */
+    private static final List<Profiler> profilers = new ArrayList<>();
+
+    private static final ThreadLocal<Profiler> threadProfiler = ThreadLocal.withInitial(Profiler::register);
+
+    private static Thread sampler;
+
+    /**
+     * Time spent (ns) and number of calls of each phase.
+     */
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private final long[] phaseCalls = new long[PHASE_NAMES.length];
+
+    /**
+     * Time spent (ns) by players choosing their actions, which the clock of this profiler doesn't count.
+     */
+    private long actNanos;
+
+    /**
+     * Time spent (ns) updating the sprites of each type, and number of sprites updated. Names of
+     * the types are taken from the registry of the thread when first seen.
+     */
+    private long[] typeNanos = new long[0];
+    private long[] typeSprites = new long[0];
+    private String[] typeNames = new String[0];
+
+    /**
+     * Executions and time spent (ns) of each effect class.
+     */
+    private final HashMap<Class<?>, long[]> effects = new HashMap<>();
+
+    /**
+     * Per pair of sprite types (first * 65536 + second): sprites of the first type checked, sprites
+     * of the second type they collided with, and time spent (ns), including the effects executed.
+     */
+    private final HashMap<Integer, long[]> collisions = new HashMap<>();
+    private final HashMap<Integer, String> collisionNames = new HashMap<>();
+
+    private static Profiler register()
+    {
+        Profiler profiler = new Profiler();
+        synchronized (profilers)
+        {
+            profilers.add(profiler);
+            if (sampler == null && CompetitionParameters.PROFILE_SAMPLE_SECONDS > 0)
+                startSampler();
+        }
+        return profiler;
+    }
+
+    /**
+     * Returns the time to measure from.
+     * @return the time of the clock of this thread, or 0 if profiling is off.
+     */
+    public static long start()
+    {
+        return CompetitionParameters.PROFILE ? threadProfiler.get().now() : 0;
+    }
+
+    /**
+     * Clock of this profiler: System.nanoTime() without the time players took to act.
+     */
+    private long now()
+    {
+        return System.nanoTime() - actNanos;
+    }
+
+    /**
+     * Returns the time to measure the action of a player from (see act()).
+     * @return System.nanoTime(), or 0 if profiling is off.
+     */
+    public static long startAct()
+    {
+        return CompetitionParameters.PROFILE ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since start to game.act, and stops the clock of this thread for that time.
+     * @param start value of startAct().
+     */
+    public static void act(long start)
+    {
+        if (!CompetitionParameters.PROFILE || start == 0)
+            return;
+        long elapsed = System.nanoTime() - start;
+        Profiler profiler = threadProfiler.get();
+        profiler.actNanos += elapsed;
+        profiler.phaseNanos[GAME_ACT] += elapsed;
+        profiler.phaseCalls[GAME_ACT]++;
+    }
+
+    /**
+     * Adds the time since start to a phase.
+     * @param phase phase measured.
+     * @param start value of start(), or of the previous call to this method.
+     * @return the current time, to measure the next phase from.
+     */
+    public static long phase(int phase, long start)
+    {
+        if (!CompetitionParameters.PROFILE || start == 0)
+            return start();
+        Profiler profiler = threadProfiler.get();
+        long now = profiler.now();
+        profiler.phaseNanos[phase] += now - start;
+        profiler.phaseCalls[phase]++;
+        return now;
+    }
+
+    /**
+     * Adds the time since start to the update of the sprites of a type.
+     * @param itype sprite type.
+     * @param sprites number of sprites updated.
+     * @param start value of start().
+     */
+    public static void spriteType(int itype, int sprites, long start)
+    {
+        if (!CompetitionParameters.PROFILE || start == 0)
+            return;
+        Profiler profiler = threadProfiler.get();
+        long elapsed = profiler.now() - start;
+        if (itype >= profiler.typeNames.length || profiler.typeNames[itype] == null)
+            profiler.addType(itype);
+        profiler.typeNanos[itype] += elapsed;
+        profiler.typeSprites[itype] += sprites;
+    }
+
+    /**
+     * Adds the time since start to the executions of an effect.
+     * @param ef effect executed.
+     * @param executions number of times it was executed (more than one in batch executions).
+     * @param start value of start().
+     */
+    public static void effect(Effect ef, int executions, long start)
+    {
+        if (!CompetitionParameters.PROFILE || start == 0)
+            return;
+        Profiler profiler = threadProfiler.get();
+        long elapsed = profiler.now() - start;
+        long[] counters = profiler.effects.get(ef.getClass());
+        if (counters == null)
+        {
+            counters = new long[2];
+            synchronized (profiler)
+            {
+                profiler.effects.put(ef.getClass(), counters);
+            }
+        }
+        counters[0] += executions;
+        counters[1] += elapsed;
+    }
+
+    /**
+     * Adds the time since start to the collisions between two sprite types.
+     * @param first first sprite type of the pair.
+     * @param second second sprite type of the pair.
+     * @param checks sprites of the first type checked.
+     * @param hits sprites of the second type they collided with.
+     * @param start value of start().
+     */
+    public static void collision(int first, int second, int checks, int hits, long start)
+    {
+        if (!CompetitionParameters.PROFILE || start == 0)
+            return;
+        Profiler profiler = threadProfiler.get();
+        long elapsed = profiler.now() - start;
+        int key = first * 65536 + second;
+        long[] counters = profiler.collisions.get(key);
+        if (counters == null)
+        {
+            counters = new long[3];
+            String name = typeName(first) + " - " + typeName(second);
+            synchronized (profiler)
+            {
+                profiler.collisions.put(key, counters);
+                profiler.collisionNames.put(key, name);
+            }
+        }
+        counters[0] += checks;
+        counters[1] += hits;
+        counters[2] += elapsed;
+    }
+
+    private synchronized void addType(int itype)
+    {
+        if (itype >= typeNames.length)
+        {
+            int length = Math.max(itype + 1, typeNames.length * 2);
+            typeNanos = Arrays.copyOf(typeNanos, length);
+            typeSprites = Arrays.copyOf(typeSprites, length);
+            typeNames = Arrays.copyOf(typeNames, length);
+        }
+        typeNames[itype] = typeName(itype);
+    }
+
+    private static String typeName(int itype)
+    {
+        String name = VGDLRegistry.GetInstance().getRegisteredSpriteKey(itype);
+        return name != null ? name : "type " + itype;
+    }
+
+    /**
+     * Discards all measurements.
+     */
+    public static void reset()
+    {
+        synchronized (profilers)
+        {
+            for (Profiler profiler : profilers)
+                profiler.clear();
+        }
+    }
+
+    private synchronized void clear()
+    {
+        Arrays.fill(phaseNanos, 0);
+        Arrays.fill(phaseCalls, 0);
+        Arrays.fill(typeNanos, 0);
+        Arrays.fill(typeSprites, 0);
+        Arrays.fill(typeNames, null);
+        effects.clear();
+        collisions.clear();
+        collisionNames.clear();
+    }
+
+    /**
+     * Prints the report of all threads and resets the measurements, if profiling is on.
+     * @param title title of the report (e.g. the game played).
+     */
+    public static void dump(String title)
+    {
+        if (!CompetitionParameters.PROFILE)
+            return;
+        System.out.print(report(title));
+        reset();
+    }
+
+    /**
+     * Builds a report of the measurements of all threads: the time and calls of each phase, and
+     * the sprite types, effect classes and collision pairs sorted by time spent.
+     * @param title title of the report.
+     * @return the report.
+     */
+    public static String report(String title)
+    {
+        long[] phaseNanos = new long[PHASE_NAMES.length], phaseCalls = new long[PHASE_NAMES.length];
+        HashMap<String, long[]> types = new HashMap<>(), effects = new HashMap<>(), collisions = new HashMap<>();
+        synchronized (profilers)
+        {
+            for (Profiler p : profilers) synchronized (p)
+            {
+                for (int i = 0; i < phaseNanos.length; i++)
+                {
+                    phaseNanos[i] += p.phaseNanos[i];
+                    phaseCalls[i] += p.phaseCalls[i];
+                }
+                for (int i = 0; i < p.typeNames.length; i++)
+                    if (p.typeNames[i] != null)
+                        add(types, p.typeNames[i], p.typeSprites[i], p.typeNanos[i]);
+                for (Map.Entry<Class<?>, long[]> e : p.effects.entrySet())
+                    add(effects, e.getKey().getSimpleName(), e.getValue()[0], e.getValue()[1]);
+                for (Map.Entry<Integer, long[]> e : p.collisions.entrySet())
+                    add(collisions, p.collisionNames.get(e.getKey()), e.getValue());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("---- Profile: ").append(title).append(" ----\n");
+        sb.append(String.format(Locale.ROOT, "%-30s %12s %12s %10s%n", "phase", "calls", "ms", "us/call"));
+        for (int i = 0; i < PHASE_NAMES.length; i++)
+            if (phaseCalls[i] > 0)
+                sb.append(String.format(Locale.ROOT, "%-30s %12d %12.1f %10.2f%n", PHASE_NAMES[i], phaseCalls[i],
+                    phaseNanos[i] / 1e6, phaseNanos[i] / 1e3 / phaseCalls[i]));
+
+        sb.append(String.format(Locale.ROOT, "%-30s %12s %12s%n", "sprite type", "updates", "ms"));
+        for (Map.Entry<String, long[]> e : sorted(types, 1))
+            sb.append(String.format(Locale.ROOT, "%-30s %12d %12.1f%n", e.getKey(), e.getValue()[0],
+                e.getValue()[1] / 1e6));
+
+        sb.append(String.format(Locale.ROOT, "%-30s %12s %12s%n", "effect", "executions", "ms"));
+        for (Map.Entry<String, long[]> e : sorted(effects, 1))
+            sb.append(String.format(Locale.ROOT, "%-30s %12d %12.1f%n", e.getKey(), e.getValue()[0],
+                e.getValue()[1] / 1e6));
+
+        sb.append(String.format(Locale.ROOT, "%-30s %12s %12s %12s%n", "collision pair", "checks", "hits", "ms"));
+        for (Map.Entry<String, long[]> e : sorted(collisions, 2))
+            sb.append(String.format(Locale.ROOT, "%-30s %12d %12d %12.1f%n", e.getKey(), e.getValue()[0],
+                e.getValue()[1], e.getValue()[2] / 1e6));
+        return sb.toString();
+    }
+
+    private static void add(HashMap<String, long[]> to, String key, long... values)
+    {
+        long[] counters = to.computeIfAbsent(key, k -> new long[values.length]);
+        for (int i = 0; i < values.length; i++)
+            counters[i] += values[i];
+    }
+
+    private static List<Map.Entry<String, long[]>> sorted(HashMap<String, long[]> counters, int timeIdx)
+    {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(counters.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[timeIdx], a.getValue()[timeIdx]));
+        return entries;
+    }
+
+    /**
+     * Starts a daemon thread that prints the report every CompetitionParameters.PROFILE_SAMPLE_SECONDS.
+     */
+    private static void startSampler()
+    {
+        sampler = new Thread(() -> {
+            try
+            {
+                while (true)
+                {
+                    Thread.sleep(CompetitionParameters.PROFILE_SAMPLE_SECONDS * 1000L);
+                    System.out.print(report("sample"));
+                }
+            } catch (InterruptedException e)
+            {
+                //Finished.
+            }
+        }, "profiler-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+}
@@ -5,8 +5,8 @@ import tools.com.google.gson.Gson;
 import ontology.Types;
 
 import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -27,6 +27,8 @@ public class SerializableStateObservation {
 
     // State Observation variables
     public byte[] imageArray;
+    public int imageWidth;
+    public int imageHeight;
     public boolean isValidation;
     public float gameScore;
     public int gameTick;
@@ -78,14 +80,14 @@ public class SerializableStateObservation {
                 buildGameData(s);
                 if(phase != Phase.START) {
                     // Create the image bytearray
-                    imageArray = imageToByteArray();
+                    imageArray = imageToByteArray(s);
                 }
             } else {
                 // Fill in the persistent variables (Score, tick)
                 buildGameData(s);
                 if(phase != Phase.START) {
                     // Create the image bytearray
-                    imageArray = imageToByteArray();
+                    imageArray = imageToByteArray(s);
                 }
                 // Fill in the simple data variables
                 buildDataVariables(s);
@@ -283,10 +285,35 @@ public class SerializableStateObservation {
 
 
 
-    public byte[] imageToByteArray() throws IOException {
+    /**
+     * Builds the image of the observation from the last frame painted of the game: a PNG file
+     * or, if CompetitionParameters.LEARNING_RAW_IMAGE is set, its RGB pixels (3 bytes per pixel,
+     * row by row), which saves encoding and decoding the PNG.
+     * @param s observation of the game.
+     * @return the bytes of the image.
+     */
+    public byte[] imageToByteArray(StateObservation s) throws IOException {
+        BufferedImage frame = s.model.framebuffer;
+        if (frame == null) {
+            System.out.println("SerializableStateObservation: imageToByteArray(): the game has not been painted");
+            return null;
+        }
+
+        imageWidth = frame.getWidth();
+        imageHeight = frame.getHeight();
+        if (CompetitionParameters.LEARNING_RAW_IMAGE) {
+            int[] pixels = frame.getRGB(0, 0, imageWidth, imageHeight, null, 0, imageWidth);
+            imageArray = new byte[pixels.length * 3];
+            for (int i = 0, j = 0; i < pixels.length; i++) {
+                imageArray[j++] = (byte) (pixels[i] >> 16);
+                imageArray[j++] = (byte) (pixels[i] >> 8);
+                imageArray[j++] = (byte) pixels[i];
+            }
+            return imageArray;
+        }
+
         ByteArrayOutputStream output = new ByteArrayOutputStream();
-        File pngfile = new File(CompetitionParameters.SCREENSHOT_FILENAME);
-        ImageIO.write(ImageIO.read(pngfile), "png", output);
+        ImageIO.write(frame, "png", output);
         imageArray = output.toByteArray();
         if (imageArray == null) {
             System.out.println("SerializableStateObservation: imageToByteArray(): imageArray is null");
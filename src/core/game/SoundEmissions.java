@@ -0,0 +1,270 @@
+package core.game;
+
+import java.util.Arrays;
+
+import core.vgdl.VGDLSprite;
+
+/**
+ * Sounds emitted by the sprites of a game that have not been heard yet, recorded as they are
+ * emitted (see Game.emitSound()): the game step, the id of the sprite, the sound and the
+ * position of the sprite when it emitted it. The intensity each sound is heard with is
+ * computed when the audio observations are built, from the position of the listener then.
+ * Sounds of moves that are undone in the same step are dropped at the end of it (see
+ * dropUndoneMoves()), as a sprite that ends the step where it began has not moved.
+ *
+ * Sounds are kept in a ring buffer, in the order they were emitted, that grows when it's full.
+ * Dropping the oldest sounds only moves its start, so a game that emits a similar number of
+ * sounds each step doesn't allocate. A buffer may be read by several forward models, but only
+ * the one that owns it modifies it (see ForwardModel.ownSoundEmissions()).
+ */
+class SoundEmissions
+{
+    /**
+     * Buffer without sounds, shared by the forward models that haven't emitted any sound
+     * in the last step they simulated. Never modified.
+     */
+    static final SoundEmissions NONE = new SoundEmissions();
+
+    /**
+     * Initial capacity of the buffer (a power of 2).
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Game step, id of the sprite, sound and position of the sprite of each emission. Created
+     * with the first sound emitted; the capacity is always a power of 2.
+     */
+    private int[] ticks;
+    private int[] ids;
+    private String[] sounds;
+    private double[] xs;
+    private double[] ys;
+
+    /**
+     * Sprite that emitted each move sound of the step being simulated (null for other sounds),
+     * and how many there are. They are forgotten at the end of the step, and not copied.
+     */
+    private VGDLSprite[] movers;
+    private int numMovers;
+
+    /**
+     * Position of the oldest sound in the buffer.
+     */
+    private int start;
+
+    /**
+     * Number of sounds in the buffer.
+     */
+    private int size;
+
+    /**
+     * Records a sound emitted by a sprite.
+     * @param tick game step the sound is emitted in.
+     * @param id id of the sprite that emits the sound.
+     * @param sound sound emitted.
+     * @param x horizontal position of the sprite.
+     * @param y vertical position of the sprite.
+     */
+    void add(int tick, int id, String sound, double x, double y)
+    {
+        add(tick, id, sound, x, y, null);
+    }
+
+    /**
+     * Records a sound emitted by a sprite.
+     * @param tick game step the sound is emitted in.
+     * @param id id of the sprite that emits the sound.
+     * @param sound sound emitted.
+     * @param x horizontal position of the sprite.
+     * @param y vertical position of the sprite.
+     * @param mover the sprite, if the sound is emitted because it moved; null otherwise.
+     */
+    void add(int tick, int id, String sound, double x, double y, VGDLSprite mover)
+    {
+        if(ids == null)
+            allocate(INITIAL_CAPACITY);
+        else if(size == ids.length)
+            allocate(ids.length * 2);
+
+        int index = (start + size) & (ids.length - 1);
+        ticks[index] = tick;
+        ids[index] = id;
+        sounds[index] = sound;
+        xs[index] = x;
+        ys[index] = y;
+        movers[index] = mover;
+        if(mover != null)
+            numMovers++;
+        size++;
+    }
+
+    /**
+     * Number of sounds in the buffer.
+     * @return the number of sounds.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Game step a sound was emitted in.
+     * @param i index of the sound, from 0 (the oldest) to size() - 1.
+     * @return the game step.
+     */
+    int tick(int i)
+    {
+        return ticks[(start + i) & (ids.length - 1)];
+    }
+
+    /**
+     * Id of the sprite that emitted a sound.
+     * @param i index of the sound, from 0 (the oldest) to size() - 1.
+     * @return the id of the sprite.
+     */
+    int id(int i)
+    {
+        return ids[(start + i) & (ids.length - 1)];
+    }
+
+    /**
+     * Sound emitted.
+     * @param i index of the sound, from 0 (the oldest) to size() - 1.
+     * @return the sound.
+     */
+    String sound(int i)
+    {
+        return sounds[(start + i) & (ids.length - 1)];
+    }
+
+    /**
+     * Horizontal position of the sprite when it emitted a sound.
+     * @param i index of the sound, from 0 (the oldest) to size() - 1.
+     * @return the horizontal position.
+     */
+    double x(int i)
+    {
+        return xs[(start + i) & (ids.length - 1)];
+    }
+
+    /**
+     * Vertical position of the sprite when it emitted a sound.
+     * @param i index of the sound, from 0 (the oldest) to size() - 1.
+     * @return the vertical position.
+     */
+    double y(int i)
+    {
+        return ys[(start + i) & (ids.length - 1)];
+    }
+
+    /**
+     * Drops all the sounds.
+     */
+    void clear()
+    {
+        if(size == 0)
+            return;
+
+        forgetMovers();
+        start = (start + size) & (ids.length - 1);
+        size = 0;
+    }
+
+    /**
+     * Drops the move sounds of the step being simulated whose sprites are back where they were
+     * when it began, as their moves were undone (by a collision, for instance). The rest are
+     * kept in the same order. Buffers without move sounds, like shared ones, are not modified.
+     */
+    void dropUndoneMoves()
+    {
+        if(numMovers == 0)
+            return;
+
+        int kept = 0;
+        for(int i = 0; i < size; ++i)
+        {
+            int from = (start + i) & (ids.length - 1);
+            VGDLSprite mover = movers[from];
+            movers[from] = null;
+            if(mover != null && mover.rect.equals(mover.lastrect))
+                continue;
+
+            int to = (start + kept) & (ids.length - 1);
+            ticks[to] = ticks[from];
+            ids[to] = ids[from];
+            sounds[to] = sounds[from];
+            xs[to] = xs[from];
+            ys[to] = ys[from];
+            kept++;
+        }
+        size = kept;
+        numMovers = 0;
+    }
+
+    /**
+     * Forgets the sprites of the move sounds, keeping the sounds.
+     */
+    private void forgetMovers()
+    {
+        if(numMovers == 0)
+            return;
+
+        Arrays.fill(movers, null);
+        numMovers = 0;
+    }
+
+    /**
+     * Drops the sounds emitted before a game step.
+     * @param tick first game step whose sounds are kept.
+     */
+    void dropBefore(int tick)
+    {
+        while(size > 0 && ticks[start] < tick)
+        {
+            start = (start + 1) & (ids.length - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Creates a copy of this buffer.
+     * @return the copy of this buffer.
+     */
+    SoundEmissions copy()
+    {
+        SoundEmissions copy = new SoundEmissions();
+        for(int i = 0; i < size; ++i)
+            copy.add(tick(i), id(i), sound(i), x(i), y(i));
+        return copy;
+    }
+
+    /**
+     * Moves the sounds to new arrays, from their start.
+     * @param capacity capacity of the new arrays.
+     */
+    private void allocate(int capacity)
+    {
+        int[] newTicks = new int[capacity];
+        int[] newIds = new int[capacity];
+        String[] newSounds = new String[capacity];
+        double[] newXs = new double[capacity];
+        double[] newYs = new double[capacity];
+        VGDLSprite[] newMovers = new VGDLSprite[capacity];
+        for(int i = 0; i < size; ++i)
+        {
+            newTicks[i] = tick(i);
+            newIds[i] = id(i);
+            newSounds[i] = sound(i);
+            newXs[i] = x(i);
+            newYs[i] = y(i);
+            newMovers[i] = movers[(start + i) & (ids.length - 1)];
+        }
+        ticks = newTicks;
+        ids = newIds;
+        sounds = newSounds;
+        xs = newXs;
+        ys = newYs;
+        movers = newMovers;
+        start = 0;
+    }
+}
@@ -134,6 +134,29 @@ public class StateObservation {
         return model.getGameTick();
     }
 
+    /**
+     * Returns a 64-bit hash of this state, which doesn't depend on the game tick: states where the
+     * sprites, scores and win states, counters and game over flag are the same have the same hash.
+     * Different states have different hashes with very high probability, so this can identify
+     * states (e.g. in transposition tables) without comparing them. The hash is computed the first
+     * time it's asked for after the state changes, and copies of the state inherit it.
+     * @return the hash of this state.
+     */
+    public long getStateHash()
+    {
+        return model.getStateHash(false);
+    }
+
+    /**
+     * Returns a 64-bit hash of this state (see getStateHash()).
+     * @param includeTick if true, states at different game ticks have different hashes.
+     * @return the hash of this state.
+     */
+    public long getStateHash(boolean includeTick)
+    {
+        return model.getStateHash(includeTick);
+    }
+
     /**
      * Indicates if there is a game winner in the current observation.
      * Possible values are Types.WINNER.PLAYER_WINS, Types.WINNER.PLAYER_LOSES and
@@ -471,6 +494,12 @@ public class StateObservation {
      */
     public KeyHandler getKeyHandler(int playerID) { return model.avatars[playerID].getKeyHandler(); }
 
+    /**
+     * Returns the key handler of the game, which receives the keys pressed by human players.
+     * @return KeyHandler object.
+     */
+    public KeyHandler getGameKeyHandler() { return model.getKeyHandler(); }
+
 
     /**
      * Compares if this and the received StateObservation state are equivalent.
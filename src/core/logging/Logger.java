@@ -5,6 +5,11 @@ import java.util.ArrayList;
 public class Logger {
 
     private static final Logger instance = new Logger();
+
+    /**
+     * Logger of the current thread, if it has its own (see useThreadInstance()).
+     */
+    private static final ThreadLocal<Logger> threadInstance = new ThreadLocal<>();
     private ArrayList<Message> messages;
 
     /**
@@ -26,7 +31,24 @@ public class Logger {
      * @return the instance
      */
     public static Logger getInstance() {
-        return instance;
+        Logger local = threadInstance.get();
+        return local != null ? local : instance;
+    }
+
+    /**
+     * Gives the current thread its own logger, so messages of games played in
+     * different threads are kept apart. getInstance() returns it in this thread
+     * until releaseThreadInstance() is called.
+     */
+    public static void useThreadInstance() {
+        threadInstance.set(new Logger());
+    }
+
+    /**
+     * Discards the logger of the current thread, if it had one.
+     */
+    public static void releaseThreadInstance() {
+        threadInstance.remove();
     }
 
     /**
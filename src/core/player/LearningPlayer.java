@@ -64,7 +64,7 @@ public class LearningPlayer extends Player {
                 case JSON:
                     so.currentGameState = Types.GAMESTATES.ACT_STATE;
                     sso = new SerializableStateObservation(so);
-                    comm.commSend(sso.serialize(null));
+                    comm.commSend(sso);
                     break;
                 case IMAGE:
                     // Set the game state to the appropriate state and the millisecond counter, then send the serialized
@@ -74,14 +74,14 @@ public class LearningPlayer extends Player {
 
                     // Used for debugging
 //                    System.out.println(sso.toString());
-                    comm.commSend(sso.serialize(null));
+                    comm.commSend(sso);
                     break;
                 case BOTH:
                     // Set the game state to the appropriate state and the millisecond counter, then send the serialized
                     // observation.
                     so.currentGameState = Types.GAMESTATES.ACT_STATE;
                     sso = new SerializableStateObservation(so, true);
-                    comm.commSend(sso.serialize(null));
+                    comm.commSend(sso);
                     break;
                 default:
                     System.err.println("LearningPlayer: act(): This should never happen.");
@@ -115,6 +115,51 @@ public class LearningPlayer extends Player {
 
     }
 
+    /**
+     * Sends the observations of all the games of a vectorized environment and receives the
+     * actions for them, in one message each way. The client replies with the actions separated
+     * by commas, in the same order as the observations (ACTION_NIL for missing or unknown ones),
+     * or with END_TRAINING or ABORT to stop playing.
+     *
+     * @param batch observations of the games, one per game.
+     * @return the actions for the games, or null if the client stopped playing.
+     */
+    public Types.ACTIONS[] act(SerializableStateObservation[] batch) {
+        try {
+            comm.commSend(batch);
+            String response = comm.commRecv();
+            if (response == null || response.equals("END_TRAINING") || response.equals("ABORT")
+                    || response.equals("END_OVERSPENT"))
+                return null;
+
+            Types.ACTIONS[] actions = new Types.ACTIONS[batch.length];
+            String[] parts = response.split(",");
+            for (int i = 0; i < actions.length; i++)
+                actions[i] = i < parts.length ? Types.ACTIONS.fromString(parts[i].trim()) : Types.ACTIONS.ACTION_NIL;
+            return actions;
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates the observation to send to the client, with the data it asked for (see getLearningSsoType()).
+     *
+     * @param so state observation of the game.
+     * @return the observation to send.
+     */
+    public SerializableStateObservation serialize(StateObservation so) {
+        switch (comm.getLastSsoType()) {
+            case IMAGE:
+                return new SerializableStateObservation(so, false);
+            case BOTH:
+                return new SerializableStateObservation(so, true);
+            default:
+                return new SerializableStateObservation(so);
+        }
+    }
+
     /***
      * @param so           State observation of the current game in its initial state
      * @param isValidation true if the level to play is a validation one.
@@ -128,7 +173,7 @@ public class LearningPlayer extends Player {
             SerializableStateObservation sso = new SerializableStateObservation(so);
             sso.isValidation = isValidation;
 
-            comm.commSend(sso.serialize(null));
+            comm.commSend(sso);
             String initResponse = comm.commRecv();
 
             return !initResponse.equals("INIT_FAILED");
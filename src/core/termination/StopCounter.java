@@ -67,10 +67,10 @@ public class StopCounter extends Termination
         if(itype3 != -1) countAcum += game.getNumSprites(itype3) - game.getNumDisabledSprites(itype3);
 
         if (min) {
-            canEnd = countAcum <= limit;
+            setCanEnd(countAcum <= limit);
         }
         else {
-            canEnd = countAcum != limit;
+            setCanEnd(countAcum != limit);
         }
 
         return false;
@@ -14,12 +14,17 @@ import core.game.Game;
  * This is a Java port from Tom Schaul's VGDL - https://github.com/schaul/py-vgdl
  */
 @SuppressWarnings("WeakerAccess")
-public abstract class Termination {
+public abstract class Termination implements Cloneable {
 
     public String win;
     public int limit;
     public boolean count_score = false;
-    public static boolean canEnd = true;
+
+    /**
+     * Whether counter terminations can end the game (see StopCounter). Each thread has its
+     * own flag, so games played in parallel don't interfere with each other.
+     */
+    private static final ThreadLocal<Boolean> canEndFlag = ThreadLocal.withInitial(() -> true);
 
     public void parseParameters(TerminationContent content)
     {
@@ -28,6 +33,24 @@ public abstract class Termination {
 
     public abstract boolean isDone(Game game);
 
+    /**
+     * Returns whether counter terminations can end the game.
+     * @return false if a StopCounter is currently preventing it.
+     */
+    public static boolean canEnd()
+    {
+        return canEndFlag.get();
+    }
+
+    /**
+     * Sets whether counter terminations can end the game.
+     * @param canEnd true to allow them.
+     */
+    public static void setCanEnd(boolean canEnd)
+    {
+        canEndFlag.set(canEnd);
+    }
+
     public boolean isFinished(Game game)
     {
         //It's finished if the player pressed ESCAPE or the game is over..
@@ -82,6 +105,21 @@ public abstract class Termination {
         }
     }
 
+    /**
+     * Returns a copy of this termination for another thread, as terminations keep state while
+     * they are checked (see Effect.clone()).
+     * @return the copy of this termination.
+     */
+    @Override
+    public Termination clone()
+    {
+        try {
+            return (Termination) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Get all sprites that are used to check the termination condition
      * @return all termination condition sprites
@@ -0,0 +1,443 @@
+package core.vgdl;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Uniform grid that indexes the sprites of a game by type and by the block cells they overlap.
+ * It is kept up to date incrementally: sprites are inserted when they are added to the
+ * game, removed when they are cleared and re-indexed every time their rectangle changes
+ * (see VGDLSprite.updateBucket()). It is used to find the sprites that may collide with
+ * a given one without checking every pair of sprites in the game.
+ *
+ * Sprite groups shared with other games can't be modified, not even the grid bookkeeping of
+ * their sprites. They are frozen in the grid: their sprites are found through a layer kept
+ * in the group (see freeze()).
+ */
+@SuppressWarnings("unchecked")
+public class SpatialGrid
+{
+    /**
+     * Extra pixels around a sprite that are also checked in a query. Some sprites check
+     * collisions with a slightly enlarged rectangle (see VGDLSprite.groundIntersects()).
+     */
+    private static final int QUERY_MARGIN = 3;
+
+    /**
+     * Size of each cell, in pixels.
+     */
+    private int cellSize;
+
+    /**
+     * Number of cells in each dimension.
+     */
+    private int width, height;
+
+    /**
+     * Sprites of each type in each cell, indexed by [itype][x + y * width]. Created on demand.
+     */
+    private ArrayList<VGDLSprite>[][] cells;
+
+    /**
+     * Frozen sprite groups (see freeze()), indexed by type. Null for the types that are not frozen.
+     */
+    private SpriteGroup[] frozen;
+
+    /**
+     * Stamp of the current candidate set (see setCandidates()).
+     */
+    private int stamp;
+
+    /**
+     * Position in the candidate list of the first sprite of each type, -1 if there are none.
+     */
+    private int[] candidateOffset;
+
+    /**
+     * Positions in the candidate list of the sprites found in the last query.
+     */
+    private int[] resultOrder = new int[16];
+
+    /**
+     * Stamp of the current query, to avoid returning the same sprite twice.
+     */
+    private int visit;
+
+    /**
+     * Creates a new grid that covers the screen given, with cells of the given size.
+     * @param screenSize dimensions of the screen, in pixels.
+     * @param cellSize size of each cell, in pixels.
+     * @param numTypes number of sprite types in the game.
+     */
+    public SpatialGrid(Dimension screenSize, int cellSize, int numTypes)
+    {
+        this.cellSize = Math.max(1, cellSize);
+        this.width = Math.max(1, (screenSize.width + this.cellSize - 1) / this.cellSize);
+        this.height = Math.max(1, (screenSize.height + this.cellSize - 1) / this.cellSize);
+        this.cells = new ArrayList[numTypes][];
+        this.frozen = new SpriteGroup[numTypes];
+        this.candidateOffset = new int[numTypes];
+    }
+
+    /**
+     * Cells of the sprites of a frozen group: for each cell, the indices in the group of the
+     * sprites that overlap it. It doesn't change, so it is kept in the group for all the grids
+     * (of the same size) it is frozen in.
+     */
+    static final class Layer
+    {
+        final int cellSize, width, height;
+        final int[][] cells;
+
+        /**
+         * First cell (column and row) of the range of each sprite.
+         */
+        final int[] x0, y0;
+
+        Layer(SpatialGrid grid, ArrayList<VGDLSprite> sprites)
+        {
+            cellSize = grid.cellSize;
+            width = grid.width;
+            height = grid.height;
+            int n = sprites.size();
+            x0 = new int[n];
+            y0 = new int[n];
+            int[] x1 = new int[n], y1 = new int[n];
+            int[] counts = new int[width * height];
+            for(int i = 0; i < n; ++i)
+            {
+                Rectangle r = sprites.get(i).rect;
+                x0[i] = grid.cellX(r.x);
+                y0[i] = grid.cellY(r.y);
+                x1[i] = grid.cellX(r.x + Math.max(r.width, 1) - 1);
+                y1[i] = grid.cellY(r.y + Math.max(r.height, 1) - 1);
+                for(int y = y0[i]; y <= y1[i]; ++y)
+                    for(int x = x0[i]; x <= x1[i]; ++x)
+                        counts[x + y * width]++;
+            }
+
+            cells = new int[width * height][];
+            for(int i = 0; i < n; ++i)
+            {
+                for(int y = y0[i]; y <= y1[i]; ++y)
+                {
+                    for(int x = x0[i]; x <= x1[i]; ++x)
+                    {
+                        int idx = x + y * width;
+                        if(cells[idx] == null)
+                            cells[idx] = new int[counts[idx]];
+                        cells[idx][cells[idx].length - counts[idx]--] = i;
+                    }
+                }
+            }
+        }
+
+        boolean fits(SpatialGrid grid)
+        {
+            return cellSize == grid.cellSize && width == grid.width && height == grid.height;
+        }
+    }
+
+    /**
+     * Adds all sprites of a group that is shared with other games, and can't be modified, to the grid.
+     * @param group group to add.
+     */
+    public void freeze(SpriteGroup group)
+    {
+        Layer layer = group.layer;
+        if(layer == null || !layer.fits(this))
+            group.layer = new Layer(this, group.getSprites());
+        frozen[group.getItype()] = group;
+    }
+
+    /**
+     * Replaces a frozen group by the copies of its sprites, when it's going to be modified. The
+     * copies are candidates (see setCandidates()) if the sprites of the group were.
+     * @param itype type of the frozen group.
+     * @param copies copies of the sprites of the group, in the same order.
+     */
+    public void thaw(int itype, ArrayList<VGDLSprite> copies)
+    {
+        if(frozen[itype] == null)
+            return;
+
+        frozen[itype] = null;
+        int n = copies.size();
+        for(int i = 0; i < n; ++i)
+        {
+            VGDLSprite sp = copies.get(i);
+            add(sp);
+            if(candidateOffset[itype] >= 0)
+            {
+                sp.gridStamp = stamp;
+                sp.gridOrder = candidateOffset[itype] + i;
+            }
+        }
+    }
+
+    /**
+     * Adds a sprite to the grid.
+     * @param sprite sprite to add.
+     */
+    public void add(VGDLSprite sprite)
+    {
+        if(sprite.grid != null)
+            sprite.grid.remove(sprite);
+
+        sprite.grid = this;
+        sprite.gridType = sprite.getType();
+        setRange(sprite);
+        insert(sprite);
+    }
+
+    /**
+     * Removes a sprite from the grid.
+     * @param sprite sprite to remove.
+     */
+    public void remove(VGDLSprite sprite)
+    {
+        if(sprite.grid != this)
+            return;
+
+        extract(sprite);
+        sprite.grid = null;
+    }
+
+    /**
+     * Re-indexes a sprite whose rectangle has changed.
+     * @param sprite sprite to update.
+     */
+    void update(VGDLSprite sprite)
+    {
+        Rectangle r = sprite.rect;
+        if(cellX(r.x) == sprite.gridX0 && cellY(r.y) == sprite.gridY0 &&
+           cellX(r.x + Math.max(r.width, 1) - 1) == sprite.gridX1 &&
+           cellY(r.y + Math.max(r.height, 1) - 1) == sprite.gridY1)
+            return;
+
+        extract(sprite);
+        setRange(sprite);
+        insert(sprite);
+    }
+
+    /**
+     * Removes all sprites from the grid.
+     */
+    public void clear()
+    {
+        for(ArrayList<VGDLSprite>[] typeCells : cells)
+        {
+            if(typeCells == null) continue;
+            for(ArrayList<VGDLSprite> cell : typeCells)
+            {
+                if(cell != null)
+                {
+                    for(VGDLSprite sp : cell)
+                        sp.grid = null;
+                    cell.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the sprites that subsequent calls to query() can return. The order of this
+     * list is the order in which query() returns its results. The sprites of each type
+     * must be together, and all sprites of the frozen types must be there, in their order.
+     * @param candidates sprites that can be returned by query().
+     */
+    public void setCandidates(ArrayList<VGDLSprite> candidates)
+    {
+        stamp++;
+        Arrays.fill(candidateOffset, -1);
+        int n = candidates.size();
+        int lastType = -1;
+        for(int i = 0; i < n; ++i)
+        {
+            VGDLSprite sp = candidates.get(i);
+            int itype = sp.getType();
+            if(itype != lastType)
+            {
+                candidateOffset[itype] = i;
+                lastType = itype;
+            }
+            if(frozen[itype] == null)
+            {
+                sp.gridStamp = stamp;
+                sp.gridOrder = i;
+            }
+        }
+    }
+
+    /**
+     * Finds all candidate sprites (see setCandidates()) of the given types that intersect the
+     * given one, in the same order they have in the candidate list. The sprite itself is never included.
+     * @param sprite sprite to check collisions with.
+     * @param types types of the sprites to look for.
+     * @param result list where the sprites found are added (cleared first).
+     */
+    public void query(VGDLSprite sprite, ArrayList<Integer> types, ArrayList<VGDLSprite> result)
+    {
+        result.clear();
+        visit++;
+
+        Rectangle r = sprite.rect;
+        int x0 = cellX(r.x - QUERY_MARGIN), x1 = cellX(r.x + Math.max(r.width, 1) - 1 + QUERY_MARGIN);
+        int y0 = cellY(r.y - QUERY_MARGIN), y1 = cellY(r.y + Math.max(r.height, 1) - 1 + QUERY_MARGIN);
+
+        boolean sorted = true;
+        int lastOrder = -1;
+        for(int itype : types)
+        {
+            SpriteGroup group = frozen[itype];
+            if(group != null)
+            {
+                //Each sprite of a frozen group is checked in the first cell of its range in the query.
+                Layer layer = group.layer;
+                int offset = candidateOffset[itype];
+                for(int y = y0; y <= y1; ++y)
+                {
+                    for(int x = x0; x <= x1; ++x)
+                    {
+                        int[] cell = layer.cells[x + y * width];
+                        if(cell == null) continue;
+
+                        for(int i : cell)
+                        {
+                            if(Math.max(layer.x0[i], x0) != x || Math.max(layer.y0[i], y0) != y)
+                                continue;
+
+                            VGDLSprite sp = group.getSpriteByIdx(i);
+                            if(sp != sprite && sprite.intersects(sp))
+                            {
+                                int order = offset + i;
+                                sorted &= order > lastOrder;
+                                lastOrder = order;
+                                addResult(result, sp, order);
+                            }
+                        }
+                    }
+                }
+                continue;
+            }
+
+            ArrayList<VGDLSprite>[] typeCells = cells[itype];
+            if(typeCells == null) continue;
+
+            for(int y = y0; y <= y1; ++y)
+            {
+                for(int x = x0; x <= x1; ++x)
+                {
+                    ArrayList<VGDLSprite> cell = typeCells[x + y * width];
+                    if(cell == null) continue;
+
+                    int n = cell.size();
+                    for(int i = 0; i < n; ++i)
+                    {
+                        VGDLSprite sp = cell.get(i);
+                        if(sp.gridStamp == stamp && sp.gridVisit != visit)
+                        {
+                            sp.gridVisit = visit;
+                            if(sp != sprite && sprite.intersects(sp))
+                            {
+                                sorted &= sp.gridOrder > lastOrder;
+                                lastOrder = sp.gridOrder;
+                                addResult(result, sp, sp.gridOrder);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if(!sorted)
+            sortResult(result);
+    }
+
+    private void addResult(ArrayList<VGDLSprite> result, VGDLSprite sprite, int order)
+    {
+        int n = result.size();
+        if(n == resultOrder.length)
+            resultOrder = Arrays.copyOf(resultOrder, n * 2);
+        resultOrder[n] = order;
+        result.add(sprite);
+    }
+
+    /**
+     * Sorts the sprites found by their position in the candidate list (insertion sort, as
+     * queries find few sprites).
+     */
+    private void sortResult(ArrayList<VGDLSprite> result)
+    {
+        int n = result.size();
+        for(int i = 1; i < n; ++i)
+        {
+            int order = resultOrder[i];
+            VGDLSprite sp = result.get(i);
+            int j = i - 1;
+            while(j >= 0 && resultOrder[j] > order)
+            {
+                resultOrder[j + 1] = resultOrder[j];
+                result.set(j + 1, result.get(j));
+                j--;
+            }
+            resultOrder[j + 1] = order;
+            result.set(j + 1, sp);
+        }
+    }
+
+    /**
+     * Calculates the range of cells the rectangle of the sprite overlaps.
+     * @param sprite sprite to calculate the range of cells for.
+     */
+    private void setRange(VGDLSprite sprite)
+    {
+        Rectangle r = sprite.rect;
+        sprite.gridX0 = cellX(r.x);
+        sprite.gridY0 = cellY(r.y);
+        sprite.gridX1 = cellX(r.x + Math.max(r.width, 1) - 1);
+        sprite.gridY1 = cellY(r.y + Math.max(r.height, 1) - 1);
+    }
+
+    private void insert(VGDLSprite sprite)
+    {
+        ArrayList<VGDLSprite>[] typeCells = cells[sprite.gridType];
+        if(typeCells == null)
+            typeCells = cells[sprite.gridType] = new ArrayList[width * height];
+
+        for(int y = sprite.gridY0; y <= sprite.gridY1; ++y)
+        {
+            for(int x = sprite.gridX0; x <= sprite.gridX1; ++x)
+            {
+                int idx = x + y * width;
+                if(typeCells[idx] == null)
+                    typeCells[idx] = new ArrayList<>(4);
+                typeCells[idx].add(sprite);
+            }
+        }
+    }
+
+    private void extract(VGDLSprite sprite)
+    {
+        ArrayList<VGDLSprite>[] typeCells = cells[sprite.gridType];
+        for(int y = sprite.gridY0; y <= sprite.gridY1; ++y)
+            for(int x = sprite.gridX0; x <= sprite.gridX1; ++x)
+                typeCells[x + y * width].remove(sprite);
+    }
+
+    /**
+     * Cell coordinates of a pixel position. Positions outside the screen are clamped
+     * to the border cells, so off-screen sprites are still found.
+     */
+    private int cellX(int px)
+    {
+        return Math.max(0, Math.min(width - 1, Math.floorDiv(px, cellSize)));
+    }
+
+    private int cellY(int py)
+    {
+        return Math.max(0, Math.min(height - 1, Math.floorDiv(py, cellSize)));
+    }
+}
@@ -3,6 +3,9 @@ package core.vgdl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.function.Predicate;
+
+import ontology.avatar.MovingAvatar;
 
 /**
  * Created by Diego on 18/03/14.
@@ -23,6 +26,16 @@ public class SpriteGroup
      */
     private ArrayList<VGDLSprite> sprites;
 
+    /**
+     * Values computed from the sprites of this group once it is shared by several forward models,
+     * which don't modify it anymore (see ForwardModel.ownGroup()): if its sprites are idle, the sum of
+     * their hashes and the layer of a spatial grid with them. Null until computed. They may be
+     * computed by different threads at the same time, with the same result.
+     */
+    private volatile Boolean idle;
+    private volatile Long stateHash;
+    volatile SpatialGrid.Layer layer;
+
     /**
      * Creates a new SpriteGroup, specifying the type of sprites this will hold.
      * @param itype type of sprite for the SpriteGroup.
@@ -94,6 +107,16 @@ public class SpriteGroup
         sprites.remove(sprite);
     }
 
+    /**
+     * Removes all sprites that satisfy a condition, keeping the rest in the same order.
+     * It takes a single pass over the collection, however many sprites are removed.
+     * @param condition condition of the sprites to remove.
+     */
+    public void removeSprites(Predicate<VGDLSprite> condition)
+    {
+        sprites.removeIf(condition);
+    }
+
     /**
      * Gets the type of this SpriteGroup.
      * @return the type of this sprite group
@@ -156,6 +179,43 @@ public class SpriteGroup
         return acum;
     }
 
+    /**
+     * Indicates if updating the sprites of this group would only count one more step in their
+     * lastmove (see VGDLSprite.isIdle()). Only for groups that are not modified anymore.
+     * @return true if all sprites of this group are idle, disabled or avatars.
+     */
+    public boolean isIdle()
+    {
+        Boolean idle = this.idle;
+        if(idle == null)
+        {
+            idle = true;
+            for(VGDLSprite sp : sprites)
+                if(!(sp instanceof MovingAvatar) && !sp.is_disabled() && !sp.isIdle())
+                    idle = false;
+            this.idle = idle;
+        }
+        return idle;
+    }
+
+    /**
+     * Returns the sum of the hashes of the sprites of this group (see VGDLSprite.stateHash()),
+     * without keeping them in the sprites. Only for groups that are not modified anymore.
+     * @return the hash of the sprites of this group.
+     */
+    public long stateHash()
+    {
+        Long stateHash = this.stateHash;
+        if(stateHash == null)
+        {
+            long h = 0;
+            for(VGDLSprite sp : sprites)
+                h += sp.stateHash(false);
+            this.stateHash = stateHash = h;
+        }
+        return stateHash;
+    }
+
     /**
      * Gets the first sprite of this collection, or null if it is empty
      * @return the first sprite in this collection.
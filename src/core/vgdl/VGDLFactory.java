@@ -4,6 +4,7 @@ import java.awt.Dimension;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import core.content.*;
 import core.game.BasicGame;
@@ -149,6 +150,29 @@ public class VGDLFactory
      */
     public static HashMap<String, Class> registeredTerminations;
 
+    /**
+     * Constructors of the classes created by this factory, cached by class.
+     */
+    private ConcurrentHashMap<Class, Constructor> constructors = new ConcurrentHashMap<>();
+
+    /**
+     * Public fields of the classes whose parameters are parsed by this factory, cached by class.
+     */
+    private ConcurrentHashMap<Class, Field[]> classFields = new ConcurrentHashMap<>();
+
+    /**
+     * Public fields of the classes whose parameters are parsed by this factory, cached by class
+     * and indexed by name.
+     */
+    private ConcurrentHashMap<Class, HashMap<String, Field>> classFieldMaps = new ConcurrentHashMap<>();
+
+    /**
+     * Values of the parameters already parsed, indexed by their string in the game description.
+     * There is one map for each way values are parsed (see parseValue()).
+     */
+    private ConcurrentHashMap<String, Object>[] parsedValues = new ConcurrentHashMap[]
+            {new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>()};
+
     /**
      * Default private constructor of this singleton.
      */
@@ -186,7 +210,7 @@ public class VGDLFactory
      * Returns the unique instance of this class.
      * @return the factory that creates the game and the sprite objects.
      */
-    public static VGDLFactory GetInstance()
+    public static synchronized VGDLFactory GetInstance()
     {
         if(factory == null)
             factory = new VGDLFactory();
@@ -202,7 +226,7 @@ public class VGDLFactory
     {
         try{
             Class gameClass = registeredGames.get(content.referenceClass);
-            Constructor gameConstructor = gameClass.getConstructor(GameContent.class);
+            Constructor gameConstructor = getConstructor(gameClass, GameContent.class);
             return (Game) gameConstructor.newInstance(new Object[]{content});
 
         } catch (Exception e)
@@ -229,9 +253,12 @@ public class VGDLFactory
 
         try{
             Class spriteClass = registeredSprites.get(content.referenceClass);
-            Constructor spriteConstructor = spriteClass.getConstructor
-                    (Vector2d.class, Dimension.class, SpriteContent.class);
-            return (VGDLSprite) spriteConstructor.newInstance(new Object[]{position, dim, content});
+            Constructor spriteConstructor = getConstructor
+                    (spriteClass, Vector2d.class, Dimension.class, SpriteContent.class);
+            VGDLSprite sprite = (VGDLSprite) spriteConstructor.newInstance(new Object[]{position, dim, content});
+            if(!game.isHeadless())
+                sprite.loadImage();
+            return sprite;
 
         } catch (NullPointerException ignored){
         } catch (Exception e)
@@ -243,6 +270,25 @@ public class VGDLFactory
         return null;
     }
 
+    /**
+     * Returns the public constructor of a class with the given parameters. Constructors are
+     * looked up only once per class, as each class is always created with the same parameters.
+     * @param objClass class of the object to create.
+     * @param parameterTypes types of the parameters of the constructor.
+     * @return the constructor.
+     * @throws NoSuchMethodException if the class has no such constructor.
+     */
+    private Constructor getConstructor(Class objClass, Class... parameterTypes) throws NoSuchMethodException
+    {
+        Constructor constructor = constructors.get(objClass);
+        if(constructor == null)
+        {
+            constructor = objClass.getConstructor(parameterTypes);
+            constructors.put(objClass, constructor);
+        }
+        return constructor;
+    }
+
     private void decorateContent(Game game, Content content)
     {
         try{
@@ -272,8 +318,8 @@ public class VGDLFactory
 
         try{
             Class effectClass = registeredEffects.get(content.function);
-            Constructor effectConstructor = effectClass.getConstructor
-                    (InteractionContent.class);
+            Constructor effectConstructor = getConstructor
+                    (effectClass, InteractionContent.class);
             Effect ef = (Effect) effectConstructor.newInstance(new Object[]{content});
 
             if( content.object1.equalsIgnoreCase("TIME") ||
@@ -307,8 +353,8 @@ public class VGDLFactory
 
         try{
             Class terminationClass = registeredTerminations.get(content.identifier);
-            Constructor terminationConstructor = terminationClass.getConstructor
-                    (TerminationContent.class);
+            Constructor terminationConstructor = getConstructor
+                    (terminationClass, TerminationContent.class);
             return (Termination) terminationConstructor.newInstance(new Object[]{content});
 
         } catch (Exception e)
@@ -324,54 +370,15 @@ public class VGDLFactory
      */
     public void parseParameters(Content content, Object obj)
     {
-        //Get all fields from the class and store it as key->field
-        Field[] fields = obj.getClass().getFields();
-        HashMap<String, Field> fieldMap = new HashMap<>();
-        for (Field field : fields)
-        {
-            String strField = field.toString();
-            int lastDot = strField.lastIndexOf(".");
-            String fieldName = strField.substring(lastDot + 1).trim();
-
-            fieldMap.put(fieldName, field);
-        }
-        Object objVal;
-        Field cfield;
+        //Get all fields from the class as key->field
+        HashMap<String, Field> fieldMap = getFieldMap(obj.getClass());
         //Check all parameters from content
         for (String parameter : content.parameters.keySet())
         {
             String value = content.parameters.get(parameter);
             if (fieldMap.containsKey(parameter))
             {
-
-                try {
-                    cfield = Types.processField(value);
-                    objVal = cfield.get(null);
-                } catch (Exception e) {
-                    try {
-                        if (!parameter.equalsIgnoreCase("scoreChange") &&
-                                !parameter.equalsIgnoreCase("scoreChangeIfKilled"))
-                            objVal = Integer.parseInt(value);
-                        else objVal = value;
-                    } catch (NumberFormatException e1) {
-                        try {
-                            objVal = Double.parseDouble(value);
-                        } catch (NumberFormatException e2) {
-                            try {
-                                if((value.equalsIgnoreCase("true") ||
-                                   value.equalsIgnoreCase("false") ) &&
-                                        !parameter.equalsIgnoreCase("win")
-                                        && !parameter.equalsIgnoreCase("hidden") &&
-                                        !parameter.equalsIgnoreCase("invisible"))
-                                    objVal = Boolean.parseBoolean(value);
-                                else
-                                    objVal = value;
-                            } catch (NumberFormatException e3) {
-                                objVal = value;
-                            }
-                        }
-                    }
-                }
+                Object objVal = parseValue(parameter, value);
                 try {
                     fieldMap.get(parameter).set(obj, objVal);
                 } catch (IllegalAccessException e) {
@@ -402,6 +409,87 @@ public class VGDLFactory
         }
     }
 
+    /**
+     * Converts the value of a parameter to the object to assign to its field: a constant from Types,
+     * an int, a double, a boolean or the string itself, in this order. The score changes are never
+     * parsed as numbers and the win, hidden and invisible parameters never as booleans.
+     * Each value is parsed once, and then taken from parsedValues.
+     * @param parameter name of the parameter.
+     * @param value value of the parameter, as in the game description.
+     * @return the value to assign to the field.
+     */
+    private Object parseValue(String parameter, String value)
+    {
+        boolean isScore = parameter.equalsIgnoreCase("scoreChange") ||
+                parameter.equalsIgnoreCase("scoreChangeIfKilled");
+        boolean isBoolean = !parameter.equalsIgnoreCase("win")
+                && !parameter.equalsIgnoreCase("hidden") &&
+                !parameter.equalsIgnoreCase("invisible");
+        ConcurrentHashMap<String, Object> cache = parsedValues[isScore ? 0 : (isBoolean ? 1 : 2)];
+
+        Object objVal = cache.get(value);
+        if(objVal != null)
+            return objVal;
+
+        try {
+            Field cfield = Types.processField(value);
+            objVal = cfield.get(null);
+        } catch (Exception e) {
+            try {
+                if (!isScore)
+                    objVal = Integer.parseInt(value);
+                else objVal = value;
+            } catch (NumberFormatException e1) {
+                try {
+                    objVal = Double.parseDouble(value);
+                } catch (NumberFormatException e2) {
+                    if((value.equalsIgnoreCase("true") ||
+                       value.equalsIgnoreCase("false") ) && isBoolean)
+                        objVal = Boolean.parseBoolean(value);
+                    else
+                        objVal = value;
+                }
+            }
+        }
+
+        cache.put(value, objVal);
+        return objVal;
+    }
+
+    /**
+     * Returns the public fields of a class.
+     * @param objClass class to get the fields from.
+     * @return the public fields of the class, as returned by Class.getFields().
+     */
+    private Field[] getFields(Class objClass)
+    {
+        Field[] fields = classFields.get(objClass);
+        if(fields == null)
+        {
+            fields = objClass.getFields();
+            classFields.put(objClass, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the public fields of a class, indexed by name.
+     * @param objClass class to get the fields from.
+     * @return the public fields of the class, indexed by name.
+     */
+    private HashMap<String, Field> getFieldMap(Class objClass)
+    {
+        HashMap<String, Field> fieldMap = classFieldMaps.get(objClass);
+        if(fieldMap == null)
+        {
+            fieldMap = new HashMap<>();
+            for (Field field : getFields(objClass))
+                fieldMap.put(field.getName(), field);
+            classFieldMaps.put(objClass, fieldMap);
+        }
+        return fieldMap;
+    }
+
     /**
      * Returns the value of an int field in the object specified
      * @param obj object that holds the field.
@@ -410,8 +498,7 @@ public class VGDLFactory
      */
     public int requestFieldValueInt(Object obj, String fieldName)
     {
-        //Get all fields from the class and store it as key->field
-        Field[] fields = obj.getClass().getFields();
+        Field[] fields = getFields(obj.getClass());
         for (Field field : fields)
         {
             String strField = field.getName();
@@ -77,7 +77,17 @@ public class VGDLParser {
 	 * @return the game created
 	 */
 	public Game parseGame(String gamedesc_file) {
-		String[] desc_lines = new IO().readFile(gamedesc_file);
+		return parseGame(new IO().readFile(gamedesc_file));
+	}
+
+	/**
+	 * Parses a game from the lines of its description. Allows reading the
+	 * description once and creating as many games from it as needed.
+	 *
+	 * @param desc_lines lines of the game description.
+	 * @return the game created
+	 */
+	public Game parseGame(String[] desc_lines) {
 		if (desc_lines != null) {
 			Node rootNode = indentTreeParser(desc_lines);
 
@@ -18,6 +18,11 @@ public class VGDLRegistry
      */
     private static VGDLRegistry registry;
 
+    /**
+     * Registry of the current thread, if it has its own (see useThreadInstance()).
+     */
+    private static final ThreadLocal<VGDLRegistry> threadRegistry = new ThreadLocal<>();
+
     /**
      * Maps strings to int. Strings are VGDL identifiers for SPRITE TYPES,
      * while integers are their unique int identifier counterparts.
@@ -37,12 +42,25 @@ public class VGDLRegistry
         sprite_mapping = new TreeMap<>();
     }
 
+    /**
+     * Initializes this registry with the sprite types of another one.
+     * @param other registry to take the sprite types from.
+     */
+    public void init(VGDLRegistry other)
+    {
+        sprite_mapping = new TreeMap<>(other.sprite_mapping);
+    }
+
     /**
      * Returns the unique instance of this class.
      * @return the unique instance of this class.
      */
     public static VGDLRegistry GetInstance()
     {
+        VGDLRegistry local = threadRegistry.get();
+        if(local != null)
+            return local;
+
         if(registry == null)
         {
             registry = new VGDLRegistry();
@@ -51,6 +69,36 @@ public class VGDLRegistry
         return registry;
     }
 
+    /**
+     * Gives the current thread its own registry, so it can parse and play games
+     * independently of other threads. GetInstance() returns it in this thread
+     * until releaseThreadInstance() is called.
+     */
+    public static void useThreadInstance()
+    {
+        VGDLRegistry local = new VGDLRegistry();
+        local.init();
+        threadRegistry.set(local);
+    }
+
+    /**
+     * Makes the current thread use the given registry, e.g. the one of the thread that created
+     * the game, for helper threads that simulate it. The registry is only read by them.
+     * @param registry registry to use in this thread.
+     */
+    public static void useThreadInstance(VGDLRegistry registry)
+    {
+        threadRegistry.set(registry);
+    }
+
+    /**
+     * Discards the registry of the current thread, if it had one.
+     */
+    public static void releaseThreadInstance()
+    {
+        threadRegistry.remove();
+    }
+
     /**
      * Register a new sprite string.
      * @param key key in the hashmap.
@@ -263,6 +263,18 @@ public abstract class VGDLSprite {
      */
     public boolean bucketSharp;
 
+    /**
+     * Spatial grid this sprite is indexed in (null if it is not), type it is indexed as and
+     * range of cells it occupies.
+     */
+    SpatialGrid grid;
+    int gridType, gridX0, gridY0, gridX1, gridY1;
+
+    /**
+     * Bookkeeping for spatial grid queries: candidate set stamp, order in the candidate set and last query.
+     */
+    int gridStamp, gridOrder, gridVisit;
+
     /**
      * Indicates if the sprite is able to rotate in place.
      */
@@ -281,6 +293,14 @@ public abstract class VGDLSprite {
      */
     public int healthPoints;
 
+    /**
+     * Hash of the state of this sprite (see stateHash()), and the values it was computed from.
+     */
+    private long stateHash;
+    private int hashX = Integer.MIN_VALUE, hashY, hashHealthPoints;
+    private double hashOrientationX, hashOrientationY;
+    private long hashResources;
+
 
     /**
      * Maximum health points of this sprite.
@@ -341,7 +361,6 @@ public abstract class VGDLSprite {
     public String audioMove;
     public String audioUse;
     public String beacon;
-    public boolean used;
 
     /**
      * Initializes the sprite, giving its position and dimensions.
@@ -407,8 +426,7 @@ public abstract class VGDLSprite {
     public void setRect(Rectangle rectangle)
     {
         rect = new Rectangle(rectangle);
-        bucket = rect.y / rect.height;
-        bucketSharp = (rect.y % rect.height) == 0;
+        updateBucket();
     }
 
     /**
@@ -498,9 +516,21 @@ public abstract class VGDLSprite {
      */
     public void preMovement()
     {
-        lastrect = new Rectangle(rect);
+        preMovement(true);
+    }
+
+    /**
+     * Prepares the sprite for movement.
+     * @param animate if false, the animation of the sprite is not updated (headless games).
+     */
+    public void preMovement(boolean animate)
+    {
+        lastrect.setBounds(rect);
         lastmove += 1;
 
+        if(!animate)
+            return;
+
         frameRemaining -= 1;
 
         if(images.size() > 0) {
@@ -542,6 +572,35 @@ public abstract class VGDLSprite {
     }
 
 
+    /**
+     * Indicates if update() and preMovement(false) would only count one more step in the lastmove of
+     * this sprite, in a game that doesn't play audio: it has the default update, doesn't move by
+     * itself, doesn't expire and didn't move in the last step.
+     * @return true if this sprite is idle.
+     */
+    public boolean isIdle()
+    {
+        return DEFAULT_UPDATE.get(getClass()) && (is_static || only_active) && timeToLive == -1
+                && lastrect.equals(rect);
+    }
+
+    /**
+     * Indicates, for each class of sprites, if it doesn't override update() nor updatePassive().
+     */
+    private static final ClassValue<Boolean> DEFAULT_UPDATE = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            try {
+                return type.getMethod("update", Game.class).getDeclaringClass() == VGDLSprite.class
+                        && type.getMethod("updatePassive", Game.class).getDeclaringClass() == VGDLSprite.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
     /**
      * Updates the orientation of the avatar to match the orientation parameter.
      * @param orientation final orientation the avatar must have.
@@ -578,6 +637,7 @@ public abstract class VGDLSprite {
             if (game.playAudio()) {
                 SoundManager.getInstance().restart(audioMove);
             }
+            game.emitMoveSound(this);
 
             return true;
         }
@@ -593,10 +653,16 @@ public abstract class VGDLSprite {
         rotation = rot;
     }
 
-    private void updateBucket()
+    /**
+     * Updates the bucket of this sprite, and its cells in the spatial grid if it is indexed in one.
+     * Must be called every time the rectangle of the sprite is modified in place.
+     */
+    public void updateBucket()
     {
         bucket = rect.y / rect.height;
         bucketSharp = (rect.y % rect.height) == 0;
+        if(grid != null)
+            grid.update(this);
     }
 
     /**
@@ -956,6 +1022,47 @@ public abstract class VGDLSprite {
         gphx.fillRect(rest.x, rest.y, rest.width, rest.height);
     }
 
+    /**
+     * Returns a hash of the state of this sprite: its type, position, orientation, health points
+     * and resources (not its ID, so the same sprite in the same state, created at a different
+     * time, has the same hash). The hash is kept, and only computed again when one of those
+     * changes, whatever changed it.
+     * @param keep if false, the hash is not kept in this sprite (e.g. if the sprite is shared by
+     *             several forward models, which may be used from different threads).
+     * @return the hash of the state of this sprite.
+     */
+    public long stateHash(boolean keep)
+    {
+        long resourcesHash = 0;
+        if(!resources.isEmpty())
+            for(Map.Entry<Integer, Integer> entry : resources.entrySet())
+                if(entry.getValue() != 0)
+                    resourcesHash += Utils.hash64(entry.getKey(), entry.getValue());
+
+        double ox = orientation.x(), oy = orientation.y();
+        if(rect.x == hashX && rect.y == hashY && healthPoints == hashHealthPoints && ox == hashOrientationX
+                && oy == hashOrientationY && resourcesHash == hashResources)
+            return stateHash;
+
+        long h = Utils.hash64(0, getType());
+        h = Utils.hash64(h, ((long) rect.x << 32) | (rect.y & 0xFFFFFFFFL));
+        h = Utils.hash64(h, healthPoints);
+        h = Utils.hash64(h, Double.doubleToLongBits(ox + 0.0));
+        h = Utils.hash64(h, Double.doubleToLongBits(oy + 0.0));
+        h = Utils.hash64(h, resourcesHash);
+        if(keep)
+        {
+            stateHash = h;
+            hashX = rect.x;
+            hashY = rect.y;
+            hashHealthPoints = healthPoints;
+            hashOrientationX = ox;
+            hashOrientationY = oy;
+            hashResources = resourcesHash;
+        }
+        return h;
+    }
+
     /**
      * Gets the unique and precise type of this sprite
      * @return the type
@@ -970,8 +1077,6 @@ public abstract class VGDLSprite {
      */
     public void postProcess()
     {
-    	loadImage();
-
         if(!(this.orientation.equals(Types.DNONE)))
         {
             //Any sprite that receives an orientation, is oriented.
@@ -1152,6 +1257,38 @@ public abstract class VGDLSprite {
      */
     public abstract VGDLSprite copy();
 
+    /**
+     * Creates a copy of this sprite for a game. Copies for a headless game (see Game.isHeadless())
+     * don't keep the images of this sprite, as they are never drawn.
+     * @param game the game the copy is for.
+     * @return  a copy of this sprite.
+     */
+    public VGDLSprite copy(Game game)
+    {
+        VGDLSprite toSprite = copy();
+        if(game.isHeadless())
+        {
+            toSprite.image = null;
+            toSprite.images = null;
+            toSprite.img = null;
+            toSprite.orientedImg = null;
+        }
+        return toSprite;
+    }
+
+    /**
+     * Sets the images of this sprite to the ones of another sprite of its type, for sprites
+     * copied without their images (see copy(Game)).
+     * @param fromSprite sprite to take the images from.
+     */
+    public void setImages(VGDLSprite fromSprite)
+    {
+        this.image = fromSprite.image;
+        this.images = fromSprite.images;
+        this.img = fromSprite.img;
+        this.orientedImg = fromSprite.orientedImg;
+    }
+
     /**
      * Copies the attributes of this object to the one passed as parameter.
      * @param toSprite the sprite to copy to.
@@ -1202,6 +1339,13 @@ public abstract class VGDLSprite {
         toSprite.isFirstTick = this.isFirstTick;
         toSprite.hidden = this.hidden;
         toSprite.healthPoints = this.healthPoints;
+        toSprite.stateHash = this.stateHash;
+        toSprite.hashX = this.hashX;
+        toSprite.hashY = this.hashY;
+        toSprite.hashHealthPoints = this.hashHealthPoints;
+        toSprite.hashOrientationX = this.hashOrientationX;
+        toSprite.hashOrientationY = this.hashOrientationY;
+        toSprite.hashResources = this.hashResources;
         toSprite.maxHealthPoints = this.maxHealthPoints;
         toSprite.limitHealthPoints = this.limitHealthPoints;
         toSprite.timeToLive = this.timeToLive;
@@ -1217,7 +1361,6 @@ public abstract class VGDLSprite {
         toSprite.audioMove = this.audioMove;
         toSprite.audioUse = this.audioUse;
         toSprite.beacon = this.beacon;
-        toSprite.used = this.used;
 
         toSprite.itypes = new ArrayList<>();
         toSprite.itypes.addAll(this.itypes);
@@ -1,17 +1,13 @@
 package core.vgdl;
 
-import core.competition.CompetitionParameters;
 import core.game.Game;
 import core.player.LearningPlayer;
 import core.player.Player;
 import ontology.Types;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -45,6 +41,12 @@ public class VGDLViewer extends JComponent
 
     public boolean justImage = false;
 
+    /**
+     * If true, the game is also painted in its framebuffer (see Game.getFramebuffer()).
+     * Set by default for learning players that receive images.
+     */
+    public boolean paintsFramebuffer = false;
+
     /**
      * Creates the viewer for the game.
      * @param game game to be displayed
@@ -57,11 +59,11 @@ public class VGDLViewer extends JComponent
         if (player instanceof LearningPlayer) {
             LearningPlayer learningPlayer = (LearningPlayer) player;
             Types.LEARNING_SSO_TYPE ssoType = learningPlayer.getLearningSsoType();
-            if (ssoType == Types.LEARNING_SSO_TYPE.IMAGE ||
-                ssoType == Types.LEARNING_SSO_TYPE.BOTH) {
-                saveImage(CompetitionParameters.SCREENSHOT_FILENAME);
-            }
+            paintsFramebuffer = ssoType == Types.LEARNING_SSO_TYPE.IMAGE ||
+                ssoType == Types.LEARNING_SSO_TYPE.BOTH;
         }
+        if (paintsFramebuffer)
+            paintFramebuffer();
     }
 
     /**
@@ -114,15 +116,8 @@ public class VGDLViewer extends JComponent
             this.spriteGroups[i].copyAllSprites(spriteGroupsGame[i].getSprites());
         }
         this.repaint();
-        if (player instanceof LearningPlayer) {
-            LearningPlayer learningPlayer = (LearningPlayer) player;
-            Types.LEARNING_SSO_TYPE ssoType = learningPlayer.getLearningSsoType();
-
-            if (ssoType == Types.LEARNING_SSO_TYPE.IMAGE ||
-                ssoType == Types.LEARNING_SSO_TYPE.BOTH) {
-                saveImage(CompetitionParameters.SCREENSHOT_FILENAME);
-            }
-        }
+        if (paintsFramebuffer)
+            paintFramebuffer();
     }
 
     /**
@@ -133,19 +128,20 @@ public class VGDLViewer extends JComponent
         return size;
     }
 
-    private void saveImage(String fileName)  {
-        try {
-            BufferedImage bi = new BufferedImage( (int) size.getWidth(), (int) size.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            Graphics2D graphics = bi.createGraphics();
-            paintWithGraphics(graphics);
-            File file = new File(fileName);
-            if (justImage) {
-                graphics.dispose();
-            }
-            ImageIO.write(bi, "png", file);
-        } catch (IOException ie) {
-            ie.printStackTrace();
-        }
+    /**
+     * Paints the game on its offscreen image (see Game.getFramebuffer()), which IMAGE
+     * observations are built from.
+     */
+    private void paintFramebuffer()  {
+        BufferedImage bi = game.getFramebuffer();
+        Graphics2D graphics = bi.createGraphics();
+
+        //Start from a transparent image, as a new one would be.
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+        graphics.setComposite(AlphaComposite.SrcOver);
 
+        paintWithGraphics(graphics);
+        graphics.dispose();
     }
 }
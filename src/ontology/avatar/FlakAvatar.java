@@ -96,7 +96,7 @@ public class FlakAvatar extends HorizontalAvatar
                 if (game.playAudio()) {
                     SoundManager.getInstance().restart(audioUse);
                 }
-                used = true;
+                game.emitSound(this, audioUse);
             }
         }
     }
@@ -7,6 +7,7 @@ import core.vgdl.VGDLSprite;
 import core.competition.CompetitionParameters;
 import core.content.SpriteContent;
 import core.game.Game;
+import core.game.Profiler;
 import core.player.Player;
 import ontology.Types;
 import ontology.Types.ACTIONS;
@@ -129,6 +130,7 @@ public class MovingAvatar extends VGDLSprite {
         ect.setMaxTimeMillis(CompetitionParameters.ACTION_TIME);
 
         Types.ACTIONS action;
+        long t = Profiler.startAct();
         if (game.audio_game) {
             action = this.player.act(game.getObservationAudio(), ect.copy());
         } else {
@@ -138,6 +140,7 @@ public class MovingAvatar extends VGDLSprite {
                 action = this.player.act(game.getObservation(), ect.copy());
             }
         }
+        Profiler.act(t);
         
         if(action == null){
             action = ACTIONS.ACTION_NIL;
@@ -102,7 +102,7 @@ public class ShootAvatar extends OrientedAvatar
             if (game.playAudio()) {
                 SoundManager.getInstance().restart(audioUse);
             }
-            used = true;
+            game.emitSound(this, audioUse);
         }
     }
 
@@ -23,7 +23,7 @@ import tools.Vector2d;
  * Time: 15:20
  * This is a Java port from Tom Schaul's VGDL - https://github.com/schaul/py-vgdl
  */
-public abstract class Effect{
+public abstract class Effect implements Cloneable{
 
     //Indicates if this effect kills any sprite
     public boolean is_kill_effect = false;
@@ -74,11 +74,6 @@ public abstract class Effect{
      */
     public boolean inBatch = false;
 
-    /**
-     * Collision for batches
-     */
-    protected Rectangle collision;
-
     /**
      * Executes the effect
      *
@@ -94,6 +89,16 @@ public abstract class Effect{
     }
 
 
+    /**
+     * Indicates if this effect modifies the second sprite of the collision, other than through
+     * the game (e.g. killing it). Forward models only copy the sprites that are modified, and
+     * share the rest with their copies.
+     * @return true if the second sprite may be modified.
+     */
+    public boolean modifiesSecond() {
+        return false;
+    }
+
     /**
      * Executes the effect to all second sprites at once.
      *
@@ -106,25 +111,25 @@ public abstract class Effect{
 
     /**
      * Takes a batch of sprites to collide against at once, and builds the collision boundary with them.
+     * The boundary is the rectangle of the first sprite of the list if there is only one sprite to
+     * collide with, or a new rectangle that covers the first two otherwise.
      * @param sprite1 Sprite that collides with the batch
      * @param sprite2list Sprites to collide against.
      * @param game our game.
-     * @return number of sprites in the list to collide with. List comes back sorted by proximity.
+     * @return the collision boundary. List comes back sorted by proximity.
      */
-    public int sortBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Game game) {
+    public Rectangle sortBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Game game) {
 
         if(sprite2list.size() == 1) {
             //execute(sprite1, sprite2list.get(0), game);
-            collision = sprite2list.get(0).rect;
-            return 1;
+            return sprite2list.get(0).rect;
 
         }else if(sprite2list.size() > 2)
         {
             //More than 2, sort by proximity and return the first.
             sortByProximity(sprite1, sprite2list);
             //execute(sprite1, sprite2list.get(0), game);
-            collision = sprite2list.get(0).rect;
-            return 1;
+            return sprite2list.get(0).rect;
         }
 
         //Else, do a cleverer collision with a wall of 2
@@ -139,7 +144,7 @@ public abstract class Effect{
             double y = b1Above ? b1.rect.getY() : b2.rect.getY();
             double w = b1.rect.getWidth();
             double h = b1.rect.getHeight() * 2;
-            collision = new Rectangle((int)x,(int)y,(int)w,(int)h);
+            return new Rectangle((int)x,(int)y,(int)w,(int)h);
 
         }else if (b1.rect.getCenterY() == b2.rect.getCenterY())
         {
@@ -149,19 +154,26 @@ public abstract class Effect{
             double y = b1.rect.getY();
             double w = b1.rect.getWidth() * 2;
             double h = b1.rect.getHeight();
-            collision = new Rectangle((int)x,(int)y,(int)w,(int)h);
+            return new Rectangle((int)x,(int)y,(int)w,(int)h);
         }else {
             //Not aligned, better to use the closest one.
             sortByProximity(sprite1, sprite2list);
             //execute(sprite1, sprite2list.get(0), game);
-            collision = sprite2list.get(0).rect;
-            return 1;
+            return sprite2list.get(0).rect;
         }
+    }
 
-        return 2;
-
+    /**
+     * Returns the number of sprites of a batch that make up its collision boundary.
+     * @param collision collision boundary, as returned by sortBatch().
+     * @param sprite2list Sprites collided against, as sorted by sortBatch().
+     * @return 1 if the boundary is the first sprite of the list, 2 otherwise.
+     */
+    protected int batchSize(Rectangle collision, ArrayList<VGDLSprite> sprite2list) {
+        return collision == sprite2list.get(0).rect ? 1 : 2;
     }
 
+
     private void sortByProximity(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list)
     {
         final Vector2d spCompareCenter = new Vector2d(sprite1.lastrect.getCenterX(), sprite1.lastrect.getCenterY());
@@ -219,6 +231,22 @@ public abstract class Effect{
     }
 
 
+    /**
+     * Returns a copy of this effect for another thread. Effects keep state while they are executed
+     * (e.g. applyScore), so threads that play forward models at the same time execute their own
+     * copies (see ForwardModel.useThreadRules()). Effects that keep state in objects override this
+     * to copy them too.
+     * @return the copy of this effect.
+     */
+    @Override
+    public Effect clone() {
+        try {
+            return (Effect) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void setStochastic() {
         if (prob > 0 && prob < 1)
             is_stochastic = true;
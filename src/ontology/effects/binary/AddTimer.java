@@ -66,4 +66,13 @@ public class AddTimer extends TimeEffect
 
         super.copyTo(timer);
     }
+
+    @Override
+    public Effect clone()
+    {
+        AddTimer newTimer = (AddTimer) super.clone();
+        if(timerDelegate != null)
+            newTimer.timerDelegate = timerDelegate.clone();
+        return newTimer;
+    }
 }
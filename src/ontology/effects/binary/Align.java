@@ -37,7 +37,7 @@ public class Align extends Effect
         if (orient) {
             sprite1.orientation = sprite2.orientation.copy();
         }
-        sprite1.rect = new Rectangle(sprite2.rect.x, sprite2.rect.y,
-                sprite1.rect.width, sprite1.rect.height);
+        sprite1.setRect(new Rectangle(sprite2.rect.x, sprite2.rect.y,
+                sprite1.rect.width, sprite1.rect.height));
     }
 }
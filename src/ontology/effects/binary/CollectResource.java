@@ -54,4 +54,9 @@ public class CollectResource extends Effect
 
         }
     }
+
+    @Override
+    public boolean modifiesSecond() {
+        return true;
+    }
 }
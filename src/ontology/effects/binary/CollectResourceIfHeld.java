@@ -63,4 +63,9 @@ public class CollectResourceIfHeld extends Effect
                 game.killSprite(sprite1, false);
         }
     }
+
+    @Override
+    public boolean modifiesSecond() {
+        return true;
+    }
 }
@@ -52,4 +52,9 @@ public class KillIfOtherHasMore extends Effect
 
         }
     }
+
+    @Override
+    public boolean modifiesSecond() {
+        return true;
+    }
 }
@@ -81,6 +81,7 @@ public class PullWithIt extends Effect
         if(sprite1.physicstype != Types.GRID)
         {
             sprite1.rect.y = sprite2.rect.y-sprite2.rect.height;
+            sprite1.updateBucket();
             sprite1.orientation = new Direction(sprite1.orientation.x(),0.0);
         }
 
@@ -91,4 +92,12 @@ public class PullWithIt extends Effect
             sprite1.setRect(sprite2.rect);
         }
     }
+
+    @Override
+    public Effect clone()
+    {
+        PullWithIt copy = (PullWithIt) super.clone();
+        copy.spritesThisCycle = new ArrayList<VGDLSprite>(spritesThisCycle);
+        return copy;
+    }
 }
@@ -17,6 +17,7 @@ import ontology.Types;
 import ontology.avatar.MovingAvatar;
 import ontology.effects.Effect;
 import tools.Direction;
+import tools.KeyHandler;
 
 /**
  * Created with IntelliJ IDEA.
@@ -122,9 +123,10 @@ public class TransformToSingleton extends Effect {
                 Player p = game.getAvatar(id).player;
                 double score = game.getAvatar(id).getScore();
                 Types.WINNER win = game.getAvatar(id).getWinState();
+                KeyHandler ki = game.getAvatar(id).getKeyHandler();
                 game.setAvatar((MovingAvatar) newSprite, id);
                 game.getAvatar(id).player = p;
-                game.getAvatar(id).setKeyHandler(Game.ki);
+                game.getAvatar(id).setKeyHandler(ki != null ? ki : game.getKeyHandler());
                 game.getAvatar(id).setScore(score);
                 game.getAvatar(id).setWinState(win);
                 game.getAvatar(id).setPlayerID(id);
@@ -52,14 +52,10 @@ public class WallBounce extends Effect
     public int executeBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Game game) {
 
 
-        int nColls = super.sortBatch(sprite1, sprite2list, game);
+        Rectangle collision = super.sortBatch(sprite1, sprite2list, game);
+        int nColls = super.batchSize(collision, sprite2list);
 
-        if(nColls == 1)
-        {
-            doBounce(sprite1, sprite2list.get(0).rect, game);
-        }else{
-            doBounce(sprite1, collision, game);
-        }
+        doBounce(sprite1, collision, game);
 
         sprite1.setRect(sprite1.lastrect);
         for(VGDLSprite sprite2 : sprite2list)
@@ -92,5 +88,8 @@ public class WallBounce extends Effect
 
     }
 
-
-}
\ No newline at end of file
+    @Override
+    public boolean modifiesSecond() {
+        return true;
+    }
+}
@@ -52,14 +52,10 @@ public class WallReverse extends Effect
 
     public int executeBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Game game) {
 
-        int nColls = super.sortBatch(sprite1, sprite2list, game);
+        Rectangle collision = super.sortBatch(sprite1, sprite2list, game);
+        int nColls = super.batchSize(collision, sprite2list);
 
-        if(nColls == 1)
-        {
-            doReverse(sprite1, sprite2list.get(0).rect, game);
-        }else{
-            doReverse(sprite1, collision, game);
-        }
+        doReverse(sprite1, collision, game);
 
         sprite1.setRect(sprite1.lastrect);
         for (VGDLSprite sprite2 : sprite2list)
@@ -98,7 +94,16 @@ public class WallReverse extends Effect
 
     }
 
+    @Override
+    public boolean modifiesSecond() {
+        return true;
+    }
 
-
-
+    @Override
+    public Effect clone()
+    {
+        WallReverse copy = (WallReverse) super.clone();
+        copy.spritesThisCycle = new ArrayList<VGDLSprite>(spritesThisCycle);
+        return copy;
+    }
 }
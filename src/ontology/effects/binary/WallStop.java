@@ -79,4 +79,12 @@ public class WallStop extends Effect
             sprite1.speed = sprite1.gravity;
         }
     }
+
+    @Override
+    public Effect clone()
+    {
+        WallStop copy = (WallStop) super.clone();
+        copy.spritesThisCycle = new ArrayList<VGDLSprite>(spritesThisCycle);
+        return copy;
+    }
 }
@@ -66,6 +66,10 @@ public class PathAltChaser extends AlternateChaser
         //passive moment.
         super.updatePassive(game);
 
+        //The target may have been replaced by a copy since the last step (see Game.getCurrentSprite()).
+        if(lastTarget != null)
+            lastTarget = game.getCurrentSprite(lastTarget);
+
         //Get the closest targets
         if( (lastTarget == null) || (lastTarget != null && this.rect.contains(lastTarget.rect)))
         {
@@ -89,7 +89,7 @@ public class SpawnPoint extends SpriteProducer
                 if (game.playAudio()) {
                     SoundManager.getInstance().restart(audioUse);
                 }
-                used = true;
+                game.emitSound(this, audioUse);
             }
         }
 
@@ -0,0 +1,449 @@
+package testing;
+
+import core.competition.CompetitionParameters;
+import core.game.Event;
+import core.game.EventLog;
+import core.game.Game;
+import core.game.Observation;
+import core.game.StateObservation;
+import core.logging.Logger;
+import core.player.Player;
+import core.vgdl.VGDLFactory;
+import core.vgdl.VGDLParser;
+import core.vgdl.VGDLRegistry;
+import ontology.Types;
+import tools.IO;
+import tools.Utils;
+import tools.Vector2d;
+import tools.pathfinder.Node;
+import tools.pathfinder.PathFinder;
+import tracks.ArcadeMachine;
+import tracks.ReplayEngine;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Checks that the optimized parts of the engine behave exactly as the code they replace, or as
+ * they promise to. Each check prints its failures and a summary line; the exit status is 1 if any
+ * check fails. Checks, with the request whose change each one verifies:
+ *
+ *   spatial   [user-001] the state hashes and event logs of random rollouts are the same with
+ *             CompetitionParameters.SPATIAL_COLLISIONS on and off.
+ *   eventlog  [user-003] copies of an EventLog and the log they come from don't see each other's
+ *             new events.
+ *   copy      [user-002] copying a StateObservation doesn't change how it goes on, a copy advanced
+ *             doesn't change the original, nor the other way around, and playing a game doesn't
+ *             change the states taken from it.
+ *   pathfind  [user-022, user-023] the routes of the PathFinder returned by update() after the
+ *             obstacles change are the same as those of a new PathFinder for the new obstacles.
+ *   replay    [user-025] ReplayEngine.verify() passes on a game just recorded, and on its saved copy.
+ *
+ * Arguments (all optional):
+ *   -checks a,b,...   checks to run (all).
+ *   -gameIdx 0,11,... indices of the games of examples/all_games_sp.csv used by spatial and copy (all).
+ *   -rollouts N       random rollouts per game (4).
+ *   -depth N          depth of the rollouts (50).
+ *   -seed N           seed of levels and random actions (1234).
+ */
+public class ConsistencyTesting {
+
+    private static final List<String> ALL = Arrays.asList("spatial", "eventlog", "copy", "pathfind", "replay");
+
+    /**
+     * Requests whose changes each check verifies.
+     */
+    private static final Map<String, String> REQUESTS = new HashMap<>();
+    static {
+        REQUESTS.put("spatial", "user-001");
+        REQUESTS.put("eventlog", "user-003");
+        REQUESTS.put("copy", "user-002");
+        REQUESTS.put("pathfind", "user-022, user-023");
+        REQUESTS.put("replay", "user-025");
+    }
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].charAt(0) != '-') {
+                System.err.println("Illegal parameter usage: " + args[i]);
+                return;
+            }
+            params.put(args[i].substring(1), args[i + 1]);
+        }
+
+        List<String> checks = params.containsKey("checks") ?
+            Arrays.asList(params.get("checks").split(",")) : ALL;
+        int rollouts = Integer.parseInt(params.getOrDefault("rollouts", "4"));
+        int depth = Integer.parseInt(params.getOrDefault("depth", "50"));
+        int seed = Integer.parseInt(params.getOrDefault("seed", "1234"));
+
+        List<String[]> games = new ArrayList<>(Arrays.asList(Utils.readGames("examples/all_games_sp.csv")));
+        if (params.containsKey("gameIdx")) {
+            List<String[]> selected = new ArrayList<>();
+            for (String idx : params.get("gameIdx").split(","))
+                selected.add(games.get(Integer.parseInt(idx)));
+            games = selected;
+        }
+
+        for (String check : checks) {
+            int before = failures;
+            switch (check) {
+                case "spatial":
+                    for (String[] g : games)
+                        checkSpatialCollisions(g[0], g[1], seed, rollouts, depth);
+                    break;
+                case "eventlog":
+                    checkEventLog(seed);
+                    break;
+                case "copy":
+                    for (String[] g : games)
+                        checkCopy(g[0], g[1], seed, depth);
+                    break;
+                case "pathfind":
+                    checkPathFinder(seed);
+                    break;
+                case "replay":
+                    checkReplay(seed);
+                    break;
+                default:
+                    System.err.println("Unknown check: " + check);
+                    return;
+            }
+            System.out.println(check + " [" + REQUESTS.get(check) + "]: "
+                + (failures == before ? "OK" : (failures - before) + " failures"));
+        }
+
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void fail(String message) {
+        System.out.println("  FAILED " + message);
+        failures++;
+    }
+
+    /**
+     * Creates a game and builds its level 0, with a new registry. Returns null, and says so, if
+     * the level can't be built: there is nothing to check then.
+     */
+    private static Game build(String gameFile, String gameName, int seed) {
+        VGDLFactory.GetInstance().init();
+        VGDLRegistry.GetInstance().init();
+        try {
+            Game game = new VGDLParser().parseGame(gameFile);
+            game.setHeadless(true);
+            game.buildLevel(gameFile.replace(gameName, gameName + "_lvl0"), seed);
+            // Warnings of the level would end the rollouts when there are too many (see Game.terminationHandling()).
+            Logger.getInstance().flushMessages();
+            return game;
+        } catch (Exception e) {
+            System.out.println("  skipped " + gameName + ", the level can't be built: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Plays a random rollout from a state, on a copy of it, and returns the state hash after each
+     * step and the events of the copy at the end (as text, as Event.equals() needs an audio
+     * source). Exceptions are part of the result, so they must happen the same way too.
+     */
+    private static List<Object> rollout(StateObservation state, int seed, int depth) {
+        return rollout(state, seed, depth, false);
+    }
+
+    /**
+     * Plays a random rollout as rollout(state, seed, depth) and, if copying, takes a copy of the
+     * state played, which is thrown away, before each step.
+     */
+    private static List<Object> rollout(StateObservation state, int seed, int depth, boolean copying) {
+        List<Object> trace = new ArrayList<>();
+        StateObservation copy = state.copy();
+        copy.setNewSeed(seed);
+        Random random = new Random(seed);
+        try {
+            for (int i = 0; i < depth && !copy.isGameOver(); i++) {
+                if (copying)
+                    copy.copy();
+                ArrayList<Types.ACTIONS> actions = copy.getAvailableActions();
+                copy.advance(actions.isEmpty() ? Types.ACTIONS.ACTION_NIL : actions.get(random.nextInt(actions.size())));
+                trace.add(copy.getStateHash(true));
+                trace.add(copy.getGameScore());
+            }
+            for (Event e : copy.getEventsHistory())
+                trace.add(e.gameStep + " " + e.fromAvatar + " " + e.activeTypeId + " " + e.passiveTypeId + " "
+                    + e.activeSpriteId + " " + e.passiveSpriteId + " " + e.position);
+        } catch (Exception e) {
+            trace.add(e.toString());
+        }
+        return trace;
+    }
+
+    /**
+     * [user-001] Checks the spatial grid used to find collisions.
+     */
+    private static void checkSpatialCollisions(String gameFile, String gameName, int seed, int rollouts, int depth) {
+        boolean spatial = CompetitionParameters.SPATIAL_COLLISIONS;
+        try {
+            List<List<Object>> traces = new ArrayList<>();
+            for (boolean useGrid : new boolean[]{true, false}) {
+                CompetitionParameters.SPATIAL_COLLISIONS = useGrid;
+                Game game = build(gameFile, gameName, seed);
+                if (game == null)
+                    return;
+                StateObservation initial = game.getObservation();
+                for (int r = 0; r < rollouts; r++)
+                    traces.add(rollout(initial, seed + r, depth));
+            }
+            for (int r = 0; r < rollouts; r++)
+                if (!traces.get(r).equals(traces.get(rollouts + r)))
+                    fail(gameName + ": rollout " + r + " differs with and without the spatial grid");
+        } catch (Exception e) {
+            fail(gameName + ": " + e);
+        } finally {
+            CompetitionParameters.SPATIAL_COLLISIONS = spatial;
+        }
+    }
+
+    private static Event event(int gameStep, int type) {
+        return new Event(gameStep, false, 0, type, 0, type, new Vector2d(gameStep, type), "");
+    }
+
+    private static List<Event> events(EventLog log) {
+        List<Event> events = new ArrayList<>();
+        for (Event e : log)
+            events.add(e);
+        return events;
+    }
+
+    /**
+     * [user-003] Checks the event logs shared by copies.
+     */
+    private static void checkEventLog(int seed) {
+        // Logs of several lengths, so copies are made in the middle and at the end of chunks.
+        Random random = new Random(seed);
+        for (int length = 0; length < 200; length += 1 + random.nextInt(20)) {
+            EventLog log = new EventLog();
+            for (int i = 0; i < length; i++)
+                log.add(event(i, 0));
+            List<Event> original = events(log);
+
+            EventLog copy = log.copy();
+            EventLog copyOfCopy = copy.copy();
+            for (int i = 0; i < 100; i++)
+                copy.add(event(length + i, 1));
+            if (!events(log).equals(original) || !events(copyOfCopy).equals(original))
+                fail("eventlog: events added to a copy are seen by the log it comes from (length " + length + ")");
+
+            for (int i = 0; i < 70; i++)
+                log.add(event(length + i, 2));
+            for (int i = 0; i < 30; i++)
+                copyOfCopy.add(event(length + i, 3));
+            for (int i = 0; i < 100; i++) {
+                if (copy.get(length + i).passiveTypeId != 1)
+                    fail("eventlog: events added to a log are seen by its copy (length " + length + ")");
+                if (i < 70 && log.get(length + i).passiveTypeId != 2)
+                    fail("eventlog: events added to a copy are seen by the log (length " + length + ")");
+                if (i < 30 && copyOfCopy.get(length + i).passiveTypeId != 3)
+                    fail("eventlog: events added to a copy are seen by another (length " + length + ")");
+            }
+            if (log.size() != length + 70 || copy.size() != length + 100 || copyOfCopy.size() != length + 30)
+                fail("eventlog: wrong sizes after adding events to the copies (length " + length + ")");
+            if (!events(log).subList(0, length).equals(original) || !events(copy).subList(0, length).equals(original))
+                fail("eventlog: shared events changed (length " + length + ")");
+            if (length > 0 && log.firstIndexFrom(length - 1) != length - 1)
+                fail("eventlog: firstIndexFrom() is wrong after copying (length " + length + ")");
+        }
+    }
+
+    /**
+     * Returns the observations in the observation grid of a state, as text.
+     */
+    private static String observationGrid(StateObservation state) {
+        StringBuilder sb = new StringBuilder();
+        for (ArrayList<Observation>[] column : state.getObservationGrid())
+            for (ArrayList<Observation> cell : column) {
+                for (Observation obs : cell)
+                    sb.append(obs.obsID).append(' ').append(obs.itype).append(' ').append(obs.position).append(',');
+                sb.append('|');
+            }
+        return sb.toString();
+    }
+
+    /**
+     * Plays some cycles of a game started with Game.startSteppedGame(). Returns false if the game
+     * is over, or if it threw an exception: some games do when played (e.g. pacman's AddTimer
+     * effects have no delegate).
+     */
+    private static boolean play(Game game, int cycles) {
+        try {
+            for (int i = 0; i < cycles; i++)
+                if (game.stepGame(null))
+                    return false;
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * [user-002] Checks the state shared by copies of a forward model.
+     */
+    private static void checkCopy(String gameFile, String gameName, int seed, int depth) {
+        try {
+            Game game = build(gameFile, gameName, seed);
+            if (game == null)
+                return;
+            StateObservation state = game.getObservation();
+            List<Object> expected = rollout(state, seed, depth);
+            long hash = state.getStateHash(true);
+
+            // Copying a state must not change what it does next...
+            if (!rollout(state, seed, depth, true).equals(expected))
+                fail(gameName + ": copying a state changes how it goes on");
+
+            // ... nor advancing a copy change the original...
+            StateObservation copy = state.copy();
+            List<Object> expectedCopy = rollout(copy, seed + 1, depth);
+            Random random = new Random(seed);
+            for (int i = 0; i < depth && !copy.isGameOver(); i++) {
+                ArrayList<Types.ACTIONS> actions = copy.getAvailableActions();
+                copy.advance(actions.isEmpty() ? Types.ACTIONS.ACTION_NIL : actions.get(random.nextInt(actions.size())));
+            }
+            if (state.getStateHash(true) != hash || !rollout(state, seed, depth).equals(expected))
+                fail(gameName + ": advancing a copy changes the original");
+
+            // ... nor advancing the original a copy made before.
+            StateObservation before = state.copy();
+            for (int i = 0; i < depth && !state.isGameOver(); i++) {
+                ArrayList<Types.ACTIONS> actions = state.getAvailableActions();
+                state.advance(actions.isEmpty() ? Types.ACTIONS.ACTION_NIL : actions.get(random.nextInt(actions.size())));
+            }
+            if (before.getStateHash(true) != hash || !rollout(before, seed, depth).equals(expected))
+                fail(gameName + ": advancing the original changes a copy");
+            if (!rollout(before.copy(), seed + 1, depth).equals(expectedCopy))
+                fail(gameName + ": copies of the same state differ");
+
+            // ... nor the game a state taken from it, while it's played.
+            game = build(gameFile, gameName, seed);
+            Player[] players = new Player[]{ArcadeMachine.createPlayer("tracks.singlePlayer.simple.sampleRandom.Agent",
+                null, game.getObservation(), seed, false)};
+            game.startSteppedGame(players, seed, null);
+            if (!play(game, 3))
+                return;
+            state = game.getObservation();
+            String grid = observationGrid(state);
+            hash = state.getStateHash(true);
+            play(game, depth);
+            if (state.getStateHash(true) != hash || !observationGrid(state).equals(grid))
+                fail(gameName + ": playing the game changes a state taken from it");
+        } catch (Exception e) {
+            fail(gameName + ": " + e);
+        }
+    }
+
+    /**
+     * Builds a level of labyrinth, whose walls are the obstacles of the path finder.
+     */
+    private static Game buildLabyrinth(String[] level, int seed) {
+        Game game = new VGDLParser().parseGame("examples/gridphysics/labyrinth.txt");
+        game.setHeadless(true);
+        game.buildStringLevel(level, seed);
+        return game;
+    }
+
+    /**
+     * Compares the paths of two path finders between all pairs of cells.
+     */
+    private static boolean samePaths(PathFinder pf, PathFinder expected, int width, int height) {
+        for (int sx = 0; sx < width; sx++) for (int sy = 0; sy < height; sy++) {
+            for (int ex = 0; ex < width; ex++) for (int ey = 0; ey < height; ey++) {
+                Vector2d start = new Vector2d(sx, sy), end = new Vector2d(ex, ey);
+                ArrayList<Node> path = pf.getPath(start, end), expectedPath = expected.getPath(start, end);
+                if (path == null || expectedPath == null) {
+                    if (path != expectedPath)
+                        return false;
+                    continue;
+                }
+                if (path.size() != expectedPath.size())
+                    return false;
+                for (int i = 0; i < path.size(); i++)
+                    if (!path.get(i).position.equals(expectedPath.get(i).position))
+                        return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * [user-022, user-023] Checks the routing trees of the path finder, and their update.
+     */
+    private static void checkPathFinder(int seed) {
+        VGDLFactory.GetInstance().init();
+        VGDLRegistry.GetInstance().init();
+        Random random = new Random(seed);
+        for (int lvl = 0; lvl < 5; lvl++) {
+            String[] level = new IO().readFile("examples/gridphysics/labyrinth_lvl" + lvl + ".txt");
+            Game game = buildLabyrinth(level, seed);
+            ArrayList<Integer> obstacles = new ArrayList<>();
+            obstacles.add(VGDLRegistry.GetInstance().getRegisteredSpriteValue("wall"));
+            PathFinder pf = new PathFinder(obstacles);
+            pf.run(game.getObservation());
+            int width = level[0].length(), height = level.length;
+
+            // Walls are added and removed inside the border a few times, updating the same path finder.
+            for (int round = 0; round < 5; round++) {
+                level = level.clone();
+                for (int n = 0; n < 6; n++) {
+                    int x = 1 + random.nextInt(width - 2), y = 1 + random.nextInt(height - 2);
+                    char[] row = level[y].toCharArray();
+                    if (row[x] == 'w' || row[x] == '.') {
+                        row[x] = row[x] == 'w' ? '.' : 'w';
+                        level[y] = new String(row);
+                    }
+                }
+                game = buildLabyrinth(level, seed);
+                PathFinder expected = new PathFinder(obstacles);
+                expected.run(game.getObservation());
+
+                // Routes from every cell are computed before the update, so none is missing from it.
+                samePaths(pf, pf, width, height);
+                pf = pf.update(game);
+                if (!samePaths(pf, expected, width, height))
+                    fail("pathfind: routes of labyrinth level " + lvl + " differ after update " + round);
+            }
+        }
+    }
+
+    /**
+     * [user-025] Checks the keyframed replays.
+     */
+    private static void checkReplay(int seed) {
+        String gameFile = "examples/gridphysics/aliens.txt";
+        String levelFile = "examples/gridphysics/aliens_lvl0.txt";
+        try {
+            VGDLFactory.GetInstance().init();
+            VGDLRegistry.GetInstance().init();
+            ReplayEngine replay = ReplayEngine.record(gameFile, levelFile,
+                "tracks.singlePlayer.simple.sampleRandom.Agent", seed);
+            int tick = replay.verify();
+            if (tick != -1)
+                fail("replay: recorded game differs at tick " + tick);
+
+            File actionFile = File.createTempFile("replay", ".txt");
+            try {
+                replay.save(actionFile.getPath());
+                VGDLRegistry.GetInstance().init();
+                tick = ReplayEngine.load(gameFile, levelFile, actionFile.getPath()).verify();
+                if (tick != -1)
+                    fail("replay: saved game differs at tick " + tick);
+            } finally {
+                new File(actionFile.getPath() + ".keyframes").delete();
+                actionFile.delete();
+            }
+        } catch (Exception e) {
+            fail("replay: " + e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package testing.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Measures the throughput and allocation rate of an operation, in the way of JMH's throughput mode
+ * with the gc profiler: the operation is run for a warm-up time, and then for several timed
+ * iterations. Each iteration gives a number of operations per second; the result is their mean and
+ * standard deviation. Bytes allocated per operation are measured in the current thread with
+ * com.sun.management.ThreadMXBean, when the JVM supports it.
+ */
+public class Benchmark {
+
+    /**
+     * An operation to measure. It returns something computed from its work, so the JIT can't
+     * remove it (see consume()).
+     */
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    /**
+     * Result of measuring an operation.
+     */
+    public static class Result {
+        public String benchmark, game, param;
+        public int level, iterations;
+        public double opsPerSec, opsPerSecError, bytesPerOp;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-10s %-18s lvl%d %-8s %12.1f ops/s +- %9.1f  %12.1f B/op",
+                benchmark, game, level, param, opsPerSec, opsPerSecError, bytesPerOp);
+        }
+    }
+
+    /**
+     * Header of the CSV files written by write().
+     */
+    public static final String CSV_HEADER = "date,benchmark,game,level,param,iterations,ops_per_sec,ops_per_sec_error,bytes_per_op";
+
+    private final long warmupMillis, iterationMillis;
+    private final int iterations;
+
+    /**
+     * Things returned by the operations, so their work can't be optimized away.
+     */
+    private static volatile int sink;
+
+    private static final com.sun.management.ThreadMXBean threads = threadBean();
+
+    /**
+     * Creates a benchmark harness.
+     * @param warmupMillis time to run the operation before measuring.
+     * @param iterations number of timed iterations.
+     * @param iterationMillis duration of each iteration.
+     */
+    public Benchmark(long warmupMillis, int iterations, long iterationMillis) {
+        this.warmupMillis = warmupMillis;
+        this.iterations = iterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+     * Measures an operation.
+     * @param benchmark name of the benchmark.
+     * @param game name of the game.
+     * @param level level index.
+     * @param param parameter of the benchmark (e.g. rollout depth), or "".
+     * @param op operation to measure.
+     * @return the result.
+     */
+    public Result measure(String benchmark, String game, int level, String param, Operation op) throws Exception {
+        run(op, warmupMillis);
+
+        double[] opsPerSec = new double[iterations];
+        long ops = 0, bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            long n = run(op, iterationMillis);
+            long elapsed = System.nanoTime() - start;
+            bytes += allocatedBytes() - allocated;
+            ops += n;
+            opsPerSec[i] = n * 1e9 / elapsed;
+        }
+
+        Result r = new Result();
+        r.benchmark = benchmark;
+        r.game = game;
+        r.level = level;
+        r.param = param;
+        r.iterations = iterations;
+        double mean = 0;
+        for (double v : opsPerSec)
+            mean += v / iterations;
+        double var = 0;
+        for (double v : opsPerSec)
+            var += (v - mean) * (v - mean);
+        r.opsPerSec = mean;
+        r.opsPerSecError = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0;
+        r.bytesPerOp = threads == null ? Double.NaN : (double) bytes / ops;
+        return r;
+    }
+
+    /**
+     * Runs an operation for some time.
+     * @return number of times it was run.
+     */
+    private static long run(Operation op, long millis) throws Exception {
+        long end = System.nanoTime() + millis * 1000000L;
+        long n = 0;
+        do {
+            consume(op.run());
+            n++;
+        } while (System.nanoTime() < end);
+        return n;
+    }
+
+    /**
+     * Keeps a value alive, so the work done to compute it is not removed.
+     * @param o value to consume.
+     */
+    public static void consume(Object o) {
+        sink += System.identityHashCode(o);
+    }
+
+    private static long allocatedBytes() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (Throwable ignored) {
+            //Not a HotSpot-like JVM: no allocation measurements.
+        }
+        return null;
+    }
+
+    /**
+     * Appends a result to a CSV file, writing the header first if the file is new.
+     * @param filename file to write to.
+     * @param r result to write.
+     */
+    public static void write(String filename, Result r) throws IOException {
+        File file = new File(filename);
+        boolean header = !file.exists() || file.length() == 0;
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            if (header)
+                out.println(CSV_HEADER);
+            out.println(String.format(Locale.ROOT, "%s,%s,%s,%d,%s,%d,%.3f,%.3f,%.1f",
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()), r.benchmark, r.game,
+                r.level, r.param, r.iterations, r.opsPerSec, r.opsPerSecError, r.bytesPerOp));
+        }
+    }
+}
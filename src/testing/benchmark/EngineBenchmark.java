@@ -0,0 +1,214 @@
+package testing.benchmark;
+
+import core.game.AudioStateObservation;
+import core.game.Game;
+import core.game.StateObservation;
+import core.game.StateObservationMulti;
+import core.player.Player;
+import core.vgdl.VGDLFactory;
+import core.vgdl.VGDLParser;
+import core.vgdl.VGDLRegistry;
+import ontology.Types;
+import tools.ElapsedCpuTimer;
+import tools.IO;
+import tools.Utils;
+
+import java.util.*;
+
+/**
+ * Benchmarks of the hot paths of the engine, over the games of examples/all_games_sp.csv and
+ * examples/all_games_audio.csv. Results are printed and appended to a CSV file (see Benchmark.write()),
+ * to track them over time. Benchmarks:
+ *
+ *   parse    VGDLParser.parseGame() of the game description.
+ *   build    Game.reset() and Game.buildLevel().
+ *   copy     StateObservation.copy() of the initial state.
+ *   advance  StateObservation.advance() with a random action (a new copy of the initial state is
+ *            made when the game ends).
+ *   rollout  a copy of the initial state advanced with random actions, up to -depth steps.
+ *   tick     one cycle of the real game (Game.stepGame()), with a random player; this includes
+ *            event handling. The level is built again when the game ends.
+ *   audio    (audio games only) a copy of the initial AudioStateObservation advanced with a random
+ *            action, and its audio observations extracted. Compare with advance.
+ *
+ * Arguments (all optional):
+ *   -games sp|audio|all   collections of games (sp).
+ *   -gameIdx 0,11,...     indices of the games in the collections (all).
+ *   -levels 0,1,...       levels to play (0).
+ *   -benchmarks a,b,...   benchmarks to run (all).
+ *   -depth N              depth of the rollouts (10).
+ *   -warmup MS -iterations N -time MS   warm-up time, number and duration of the iterations (1000, 5, 1000).
+ *   -seed N               seed of levels and random actions (1234).
+ *   -out FILE             CSV file the results are appended to (benchmark.csv).
+ */
+public class EngineBenchmark {
+
+    private static final List<String> ALL = Arrays.asList("parse", "build", "copy", "advance", "rollout", "tick", "audio");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].charAt(0) != '-') {
+                System.err.println("Illegal parameter usage: " + args[i]);
+                return;
+            }
+            params.put(args[i].substring(1), args[i + 1]);
+        }
+
+        String collections = params.getOrDefault("games", "sp");
+        List<String> benchmarks = params.containsKey("benchmarks") ?
+            Arrays.asList(params.get("benchmarks").split(",")) : ALL;
+        int depth = Integer.parseInt(params.getOrDefault("depth", "10"));
+        int seed = Integer.parseInt(params.getOrDefault("seed", "1234"));
+        String out = params.getOrDefault("out", "benchmark.csv");
+        Benchmark bench = new Benchmark(Long.parseLong(params.getOrDefault("warmup", "1000")),
+            Integer.parseInt(params.getOrDefault("iterations", "5")),
+            Long.parseLong(params.getOrDefault("time", "1000")));
+
+        List<String[]> games = new ArrayList<>();
+        if (collections.equals("sp") || collections.equals("all"))
+            games.addAll(Arrays.asList(Utils.readGames("examples/all_games_sp.csv")));
+        if (collections.equals("audio") || collections.equals("all"))
+            games.addAll(Arrays.asList(Utils.readGames("examples/all_games_audio.csv")));
+        if (params.containsKey("gameIdx")) {
+            List<String[]> selected = new ArrayList<>();
+            for (String idx : params.get("gameIdx").split(","))
+                selected.add(games.get(Integer.parseInt(idx)));
+            games = selected;
+        }
+
+        String[] levels = params.getOrDefault("levels", "0").split(",");
+
+        for (String[] g : games) {
+            String gameFile = g[0], gameName = g[1];
+            boolean audio = gameFile.contains("audiogames");
+            for (String l : levels) {
+                int level = Integer.parseInt(l);
+                String levelFile = gameFile.replace(gameName, gameName + "_lvl" + level);
+                try {
+                    for (String b : benchmarks) {
+                        if (b.equals("audio") && !audio)
+                            continue;
+                        Benchmark.Result r = run(bench, b, gameFile, gameName, levelFile, level, depth, seed);
+                        System.out.println(r);
+                        Benchmark.write(out, r);
+                    }
+                } catch (Exception e) {
+                    System.out.println("Benchmark failed in " + gameName + ", level " + level + ": " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one benchmark in a game and level.
+     */
+    private static Benchmark.Result run(Benchmark bench, String benchmark, String gameFile, String gameName,
+                                        String levelFile, int level, int depth, int seed) throws Exception {
+        VGDLFactory.GetInstance().init();
+        VGDLRegistry.GetInstance().init();
+        String[] desc_lines = new IO().readFile(gameFile);
+
+        Game game = new VGDLParser().parseGame(desc_lines);
+        game.setHeadless(true);
+        RandomPlayer player = new RandomPlayer(seed);
+        start(game, levelFile, seed, player);
+
+        StateObservation initial = game.getObservation();
+        ArrayList<Types.ACTIONS> actions = initial.getAvailableActions();
+        Random random = new Random(seed);
+
+        switch (benchmark) {
+            case "parse":
+                return bench.measure(benchmark, gameName, level, "", () -> new VGDLParser().parseGame(desc_lines));
+
+            case "build":
+                return bench.measure(benchmark, gameName, level, "", () -> {
+                    game.reset();
+                    game.buildLevel(levelFile, seed);
+                    return game;
+                });
+
+            case "copy":
+                return bench.measure(benchmark, gameName, level, "", initial::copy);
+
+            case "advance": {
+                StateObservation[] state = {initial.copy()};
+                return bench.measure(benchmark, gameName, level, "", () -> {
+                    if (state[0].isGameOver())
+                        state[0] = initial.copy();
+                    state[0].advance(actions.get(random.nextInt(actions.size())));
+                    return state[0];
+                });
+            }
+
+            case "rollout":
+                return bench.measure(benchmark, gameName, level, "depth=" + depth, () -> {
+                    StateObservation state = initial.copy();
+                    for (int d = 0; d < depth && !state.isGameOver(); d++)
+                        state.advance(actions.get(random.nextInt(actions.size())));
+                    return state;
+                });
+
+            case "tick":
+                return bench.measure(benchmark, gameName, level, "", () -> {
+                    if (game.stepGame(null)) {
+                        game.reset();
+                        start(game, levelFile, seed, player);
+                    }
+                    return game;
+                });
+
+            case "audio": {
+                AudioStateObservation audioInitial = game.getObservationAudio();
+                return bench.measure(benchmark, gameName, level, "", () -> {
+                    AudioStateObservation state = audioInitial.copy();
+                    state.advance(actions.get(random.nextInt(actions.size())));
+                    return state.getAudioObservations();
+                });
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + benchmark);
+        }
+    }
+
+    /**
+     * Builds the level and starts a stepped game (see Game.startSteppedGame()).
+     */
+    private static void start(Game game, String levelFile, int seed, Player player) {
+        game.buildLevel(levelFile, seed);
+        game.startSteppedGame(new Player[]{player}, seed, null);
+    }
+
+    /**
+     * Player of the tick benchmark, which plays random actions.
+     */
+    private static class RandomPlayer extends Player {
+        private final Random random;
+
+        RandomPlayer(int seed) {
+            random = new Random(seed);
+        }
+
+        @Override
+        public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer) {
+            ArrayList<Types.ACTIONS> actions = stateObs.getAvailableActions();
+            return actions.get(random.nextInt(actions.size()));
+        }
+
+        @Override
+        public Types.ACTIONS act(StateObservationMulti stateObs, ElapsedCpuTimer elapsedTimer) {
+            return null;
+        }
+
+        @Override
+        public Types.ACTIONS act(AudioStateObservation aso, ElapsedCpuTimer elapsedCpuTimer) {
+            ArrayList<Types.ACTIONS> actions = aso.getAvailableActions();
+            return actions.get(random.nextInt(actions.size()));
+        }
+
+        @Override
+        public void reset() {}
+    }
+}
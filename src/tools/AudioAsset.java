@@ -0,0 +1,145 @@
+package tools;
+
+import com.musicg.wave.Wave;
+import com.musicg.wave.extension.Spectrogram;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * A sound of the game, decoded once and shared by all games and observations. Its data must
+ * not be modified. Fingerprint, normalized amplitudes, spectrogram and per-channel samples
+ * are only computed the first time they are requested, and cached.
+ */
+public class AudioAsset {
+
+    /**
+     * Name of the sound (file name without extension, relative to the audio folder).
+     */
+    public final String name;
+
+    /**
+     * Contents of the WAV file.
+     */
+    private final byte[] fileBytes;
+
+    /**
+     * Decoded sound.
+     */
+    private final Wave wave;
+
+    private volatile byte[] fingerprint;
+    private volatile double[] normalizedAmplitudes;
+    private volatile Spectrogram spectrogram;
+    private volatile int[][] samples;
+
+    AudioAsset(String name, byte[] fileBytes) {
+        this.name = name;
+        this.fileBytes = fileBytes;
+        this.wave = new Wave(new ByteArrayInputStream(fileBytes));
+    }
+
+    /**
+     * Returns the decoded sound.
+     * @return the wave of this sound.
+     */
+    public Wave getWave() {
+        return wave;
+    }
+
+    /**
+     * Returns the contents of the WAV file, e.g. to create an audio stream.
+     * @return the bytes of the file.
+     */
+    byte[] getFileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * Returns the PCM data of the sound.
+     * @return the data bytes of the wave.
+     */
+    public byte[] getBytes() {
+        return wave.getBytes();
+    }
+
+    public byte[] getFingerprint() {
+        byte[] f = fingerprint;
+        if (f == null) {
+            synchronized (this) {
+                if (fingerprint == null)
+                    fingerprint = wave.getFingerprint();
+                f = fingerprint;
+            }
+        }
+        return f;
+    }
+
+    public double[] getNormalizedAmplitudes() {
+        double[] a = normalizedAmplitudes;
+        if (a == null) {
+            synchronized (this) {
+                if (normalizedAmplitudes == null)
+                    normalizedAmplitudes = wave.getNormalizedAmplitudes();
+                a = normalizedAmplitudes;
+            }
+        }
+        return a;
+    }
+
+    public Spectrogram getSpectrogram() {
+        Spectrogram s = spectrogram;
+        if (s == null) {
+            synchronized (this) {
+                if (spectrogram == null)
+                    spectrogram = wave.getSpectrogram();
+                s = spectrogram;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns the 16-bit samples of the sound, one array per channel.
+     * @return the samples of each channel, or null if they can't be decoded.
+     */
+    public int[][] getSamples() {
+        int[][] s = samples;
+        if (s == null) {
+            synchronized (this) {
+                if (samples == null)
+                    samples = decodeSamples();
+                s = samples;
+            }
+        }
+        return s;
+    }
+
+    private int[][] decodeSamples() {
+        try {
+            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(new ByteArrayInputStream(fileBytes));
+            int frameLength = (int) audioInputStream.getFrameLength();
+            int frameSize = audioInputStream.getFormat().getFrameSize();
+            byte[] data = new byte[frameLength * frameSize];
+            audioInputStream.read(data);
+
+            int channels = audioInputStream.getFormat().getChannels();
+            int[][] s = new int[channels][frameLength];
+            int t = 0;
+            for (int sampleIndex = 0; sampleIndex < frameLength; sampleIndex++) {
+                for (int channel = 0; channel < channels; channel++) {
+                    int low = (int) data[t++];
+                    int high = (int) data[t++];
+                    s[channel][sampleIndex] = (high << 8) + (low & 0x00ff);
+                }
+            }
+            return s;
+        } catch (IOException | UnsupportedAudioFileException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
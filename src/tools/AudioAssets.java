@@ -0,0 +1,73 @@
+package tools;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Store of all the sounds in the audio folder. The folder is scanned once, when the store is
+ * first used, and every WAV file in it is read and decoded.
+ * The store is not modified afterwards, so it can be shared by games playing in parallel,
+ * and looking up a sound doesn't touch the file system.
+ */
+public class AudioAssets {
+
+    private static final String path = "audio/";
+    private static final String extension = ".wav";
+
+    private static final AudioAssets instance = new AudioAssets();
+
+    /**
+     * Sounds by name (path relative to the audio folder, without extension).
+     */
+    private final Map<String, AudioAsset> assets;
+
+    public static AudioAssets getInstance() {
+        return instance;
+    }
+
+    private AudioAssets() {
+        HashMap<String, AudioAsset> loaded = new HashMap<>();
+        scan(new File(path), "", loaded);
+        assets = Collections.unmodifiableMap(loaded);
+    }
+
+    /**
+     * Returns a sound.
+     * @param name name of the sound (file name without extension, relative to the audio folder).
+     * @return the sound, or null if there is no such sound.
+     */
+    public AudioAsset get(String name) {
+        return name == null ? null : assets.get(name);
+    }
+
+    /**
+     * Returns the number of sounds in the store.
+     * @return the number of sounds.
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    private static void scan(File dir, String prefix, HashMap<String, AudioAsset> loaded) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        for (File f : files) {
+            String fileName = f.getName();
+            if (f.isDirectory()) {
+                scan(f, prefix + fileName + "/", loaded);
+            } else if (fileName.endsWith(extension)) {
+                String name = prefix + fileName.substring(0, fileName.length() - extension.length());
+                try {
+                    loaded.put(name, new AudioAsset(name, Files.readAllBytes(f.toPath())));
+                } catch (Exception e) {
+                    System.out.println("Error loading the sound " + f.getPath() + ": " + e.toString());
+                }
+            }
+        }
+    }
+}
@@ -16,10 +16,25 @@ public class ElapsedCpuTimer {
     long oldTime;
     long maxTime;
 
+    /**
+     * If true, this timer measures wall-clock time instead of the CPU time of the current thread.
+     */
+    boolean wallClock;
+
     public ElapsedCpuTimer() {
         oldTime = getTime();
     }
 
+    /**
+     * Creates a timer.
+     * @param wallClock if true, the timer measures wall-clock time (System.nanoTime()) instead of
+     *                  the CPU time of the thread that reads it.
+     */
+    public ElapsedCpuTimer(boolean wallClock) {
+        this.wallClock = wallClock;
+        oldTime = getTime();
+    }
+
 
     public ElapsedCpuTimer copy()
     {
@@ -27,9 +42,24 @@ public class ElapsedCpuTimer {
         newCpuTimer.maxTime = this.maxTime;
         newCpuTimer.oldTime = this.oldTime;
         newCpuTimer.bean = this.bean;
+        newCpuTimer.wallClock = this.wallClock;
         return newCpuTimer;
     }
 
+    /**
+     * Creates a wall-clock timer with the time remaining in this one. Unlike CPU time, wall-clock
+     * time is the same for all threads and keeps running while a thread waits, so this timer can
+     * share a time budget among several threads: the thread that received the budget doesn't
+     * use CPU time while it waits for the others.
+     * @return the wall-clock timer.
+     */
+    public ElapsedCpuTimer wallClockCopy()
+    {
+        ElapsedCpuTimer timer = new ElapsedCpuTimer(true);
+        timer.maxTime = this.maxTime - this.elapsed();
+        return timer;
+    }
+
     public long elapsed() {
         return getTime() - oldTime;
     }
@@ -71,7 +101,7 @@ public class ElapsedCpuTimer {
 
     private long getCpuTime() {
 
-        if(CompetitionParameters.OS_WIN)
+        if(wallClock || CompetitionParameters.OS_WIN)
             return System.nanoTime();
 
         if (bean.isCurrentThreadCpuTimeSupported()) {
@@ -1,26 +1,59 @@
 package tools;
 
 import com.musicg.wave.Wave;
+import core.competition.CompetitionParameters;
+
 import javax.sound.sampled.*;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
-
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plays the sounds of the games. Sounds are played by a mixer thread: play(), restart() and
+ * stop() only queue a command and return, so the game loop never waits for the sound system.
+ * Restarts of a sound that is already waiting in the queue are dropped (a sound emitted by
+ * many sprites in a step is restarted once), commands are dropped if the queue is full, and
+ * no more than CompetitionParameters.SOUND_VOICES sounds play at the same time.
+ */
 @SuppressWarnings("FieldCanBeLocal")
 public class SoundManager {
 
     private static SoundManager audioPlayer = null;
     private static HashMap<String, Clip> clips;
-    private static HashMap<String, Wave> waves;
-    private static HashMap<String, int[][]> samples;
     private static String path = "audio/";
-    private static String extension = ".wav";
 
     private BufferedWriter writer;
 
-    public static SoundManager getInstance()
+    private enum Op { PLAY, RESTART, STOP }
+
+    private static final class Command {
+        final Op op;
+        final String audio_file;
+
+        Command(Op op, String audio_file) {
+            this.op = op;
+            this.audio_file = audio_file;
+        }
+    }
+
+    /**
+     * Commands for the mixer thread.
+     */
+    private final BlockingQueue<Command> commands = new ArrayBlockingQueue<>(CompetitionParameters.SOUND_QUEUE_SIZE);
+
+    /**
+     * Sounds with a restart command in the queue.
+     */
+    private final Set<String> pendingRestarts = ConcurrentHashMap.newKeySet();
+
+    public static synchronized SoundManager getInstance()
     {
         if (audioPlayer == null)
         {
@@ -32,111 +65,111 @@ public class SoundManager {
     private SoundManager()
     {
         clips = new HashMap<>();
-        waves = new HashMap<>();
-        samples = new HashMap<>();
+
+        Thread mixer = new Thread(this::mix, "SoundManager mixer");
+        mixer.setDaemon(true);
+        mixer.start();
+    }
+
+    /**
+     * Body of the mixer thread: executes the commands in the order they were queued.
+     */
+    private void mix() {
+        try {
+            while (true) {
+                Command c = commands.take();
+                if (c.op == Op.RESTART)
+                    pendingRestarts.remove(c.audio_file);
+
+                Clip clip = getClip(c.audio_file);
+                if (clip == null)
+                    continue;
+
+                switch (c.op) {
+                    case RESTART:
+                        if (!clip.isRunning() && !voiceAvailable())
+                            break;
+                        clip.setMicrosecondPosition(0);
+                        clip.start();
+                        break;
+                    case PLAY:
+                        if (clip.isRunning() || voiceAvailable())
+                            clip.start();
+                        break;
+                    case STOP:
+                        clip.stop();
+                        break;
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
     }
 
-    private Clip getClip(String audio_file) {
+    /**
+     * Indicates if another sound can start playing without going over the voice limit.
+     * @return true if less than CompetitionParameters.SOUND_VOICES sounds are playing.
+     */
+    private synchronized boolean voiceAvailable() {
+        int playing = 0;
+        for (Clip clip : clips.values()) {
+            if (clip.isRunning() && ++playing >= CompetitionParameters.SOUND_VOICES)
+                return false;
+        }
+        return true;
+    }
+
+    private synchronized Clip getClip(String audio_file) {
         if(clips.containsKey(audio_file)) {
             return clips.get(audio_file);
         }
 
-        try {
-            String fullPath = path + audio_file + extension;
-            if ((new File(fullPath).exists())) {
-                // Create AudioInputStream object
-                AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(new File(fullPath).getAbsoluteFile());
+        AudioAsset asset = AudioAssets.getInstance().get(audio_file);
+        if (asset != null) {
+            try {
+                // Create AudioInputStream object from the preloaded file
+                AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(
+                        new ByteArrayInputStream(asset.getFileBytes()));
                 // Create clip reference
                 Clip clip = AudioSystem.getClip();
                 clip.open(audioInputStream);
                 clips.put(audio_file, clip);
                 return clip;
+            } catch (LineUnavailableException | IOException | UnsupportedAudioFileException e) {
+                e.printStackTrace();
             }
-        } catch (LineUnavailableException | IOException | UnsupportedAudioFileException e) {
-            e.printStackTrace();
         }
 
         return null;
     }
 
-    private int[][] getSamples(String audio_file) {
-        if(samples.containsKey(audio_file)) {
-            return samples.get(audio_file);
-        }
-
-        try {
-            String fullPath = path + audio_file + extension;
-            if ((new File(fullPath).exists())) {
-                // Create AudioInputStream object and get samples from file
-                AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(new File(fullPath).getAbsoluteFile());
-                int frameLength = (int) audioInputStream.getFrameLength();
-                int frameSize = audioInputStream.getFormat().getFrameSize();
-                byte[] eightBitByteArray = new byte[frameLength * frameSize];
-
-                audioInputStream.read(eightBitByteArray);
-                int channels = audioInputStream.getFormat().getChannels();
-                int[][] s = new int[channels][frameLength];
-
-                int sampleIndex = 0;
-                for (int t = 0; t < eightBitByteArray.length;) {
-                    for (int channel = 0; channel < channels; channel++) {
-                        int low = (int) eightBitByteArray[t];
-                        t++;
-                        int high = (int) eightBitByteArray[t];
-                        t++;
-                        int sample = getSixteenBitSample(high, low);
-                        s[channel][sampleIndex] = sample;
-                    }
-                    sampleIndex++;
-                }
-                samples.put(audio_file, s);
-
-                return s;
-            }
-        } catch (IOException | UnsupportedAudioFileException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    private int getSixteenBitSample(int high, int low) {
-        return (high << 8) + (low & 0x00ff);
-    }
-
     public Wave getWave(String audio_file) {
-        if (waves.containsKey(audio_file)) {
-            return waves.get(audio_file);
-        }
-
-        String fullPath = path + audio_file + extension;
-        if ((new File(fullPath).exists())) {
-            Wave wave = new Wave(fullPath);
-            waves.put(audio_file, wave);
-            return wave;
-        }
-
-        return null;
+        AudioAsset asset = AudioAssets.getInstance().get(audio_file);
+        return asset != null ? asset.getWave() : null;
     }
 
     // Method to play the audio
     public void play(String audio_file) {
-        Clip clip = getClip(audio_file);
-        if (clip != null) {
-            clip.start();
-        }
+        if (audio_file != null)
+            commands.offer(new Command(Op.PLAY, audio_file));
     }
 
     // Method to restart the audio
     public void restart(String audio_file) {
-        Clip clip = getClip(audio_file);
-        if (clip != null) {
-            clip.setMicrosecondPosition(0);
-            this.play(audio_file);
+        if (audio_file != null && pendingRestarts.add(audio_file)) {
+            if (!commands.offer(new Command(Op.RESTART, audio_file)))
+                pendingRestarts.remove(audio_file);
         }
     }
 
+    // Method to stop the audio
+    public void stop(String audio_file) {
+        if (audio_file != null)
+            commands.offer(new Command(Op.STOP, audio_file));
+    }
+
     public void render(String audio_file, int gameTick, int idx) {
-        int[][] sample = getSamples(audio_file);
+        AudioAsset asset = AudioAssets.getInstance().get(audio_file);
+        int[][] sample = asset != null ? asset.getSamples() : null;
 
         if (sample != null) {
             String file = path + "img/" + audio_file + "_" + gameTick;
@@ -112,6 +112,21 @@ public class Utils
         return Types.DNONE;
     }
 
+    /**
+     * Combines a 64-bit hash with a value, mixing the bits of both (SplitMix64 finalizer), to
+     * build hashes of game states. The result is the same in all runs.
+     * @param h hash so far (0 to start).
+     * @param value value to add to the hash.
+     * @return the new hash.
+     */
+    public static long hash64(long h, long value)
+    {
+        long z = (h + 0x9E3779B97F4A7C15L) * 0xC2B2AE3D27D4EB4FL + value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     //Normalizes a value between its MIN and MAX.
     public static double normalise(double a_value, double a_min, double a_max)
     {
@@ -1,6 +1,5 @@
 package tools.pathfinder;
 
-import core.game.Game;
 import core.game.StateObservation;
 import core.player.AbstractPlayer;
 import ontology.Types;
@@ -39,8 +38,8 @@ public class Agent extends AbstractPlayer
      */
     public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer)
     {
-        Direction move = Utils.processMovementActionKeys(Game.ki.getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX); //use primary set of keys, idx = 0
-        boolean useOn = Utils.processUseKey(Game.ki.getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX); //use primary set of keys, idx = 0
+        Direction move = Utils.processMovementActionKeys(stateObs.getGameKeyHandler().getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX); //use primary set of keys, idx = 0
+        boolean useOn = Utils.processUseKey(stateObs.getGameKeyHandler().getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX); //use primary set of keys, idx = 0
 
         Types.ACTIONS action = Types.ACTIONS.fromVector(move);
         if(action == Types.ACTIONS.ACTION_NIL && useOn)
@@ -1,18 +1,37 @@
 package tools.pathfinder;
 
+import core.game.Game;
 import core.game.Observation;
 import core.game.StateObservation;
+import core.vgdl.VGDLSprite;
 import ontology.Types;
 import tools.Vector2d;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by dperez on 14/01/16.
+ *
+ * Shortest paths between the cells of the grid that are not obstacles. Instead of storing all
+ * paths, a search is run the first time a path is requested from a cell, and the routing tree
+ * it finds is kept in a flat array with the distance of each cell to the start (UNREACHABLE if
+ * it can't be reached). Paths are rebuilt from these trees when requested: each cell is reached
+ * from its first neighbour, in the order of x_arrNeig, one step closer to the start. Among paths
+ * of the same length, this may not be the one the old all-pairs Dijkstra (see AStar) found, but
+ * it depends only on the distances. Obstacles are the ones in the grid when run() is called.
+ *
+ * When obstacles are created, destroyed or moved, the game gets a new path finder from update(),
+ * which repairs the trees where needed. Repaired distances are the ones a new search finds, so
+ * paths don't depend on which trees were computed before. Path finders are shared by the copies
+ * of the game and never modified once shared, so they are safe to use from several threads.
  */
 public class PathFinder {
 
-    public AStar astar;
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
     public StateObservation state;
 
     public boolean VERBOSE = false;
@@ -22,32 +41,78 @@ public class PathFinder {
 
     public ArrayList<Observation> grid[][];
 
+    private int[] x_arrNeig = null;
+    private int[] y_arrNeig = null;
+
+    /**
+     * Obstacle types, by itype.
+     */
+    private boolean[] obstacleTypes;
+
+    /**
+     * Grid dimensions, and obstacle cells by index (x * height + y).
+     */
+    private int width, height;
+    private boolean[] obstacle;
 
-    private static int[] x_arrNeig = null;
-    private static int[] y_arrNeig = null;
+    /**
+     * True if any obstacle can move, so obstacles must be checked every game tick.
+     */
+    private boolean movingObstacles;
+
+    /**
+     * Routing trees by start cell: the distances of the cells to it, computed lazily (see tree()).
+     * Trees are never modified once they are here: update() repairs copies of them.
+     */
+    private AtomicReferenceArray<int[]> trees;
 
     public PathFinder(ArrayList<Integer> obstacleItypes)
     {
         this.obstacleItypes = obstacleItypes;
+        int maxType = -1;
+        for(Integer itype : obstacleItypes)
+            maxType = Math.max(maxType, itype);
+        obstacleTypes = new boolean[maxType + 1];
+        for(Integer itype : obstacleItypes)
+            obstacleTypes[itype] = true;
+    }
+
+    /**
+     * Copy of a path finder with other obstacles: everything else is shared.
+     */
+    private PathFinder(PathFinder pf, boolean[] obstacle, boolean movingObstacles)
+    {
+        this.state = pf.state;
+        this.VERBOSE = pf.VERBOSE;
+        this.obstacleItypes = pf.obstacleItypes;
+        this.grid = pf.grid;
+        this.x_arrNeig = pf.x_arrNeig;
+        this.y_arrNeig = pf.y_arrNeig;
+        this.obstacleTypes = pf.obstacleTypes;
+        this.width = pf.width;
+        this.height = pf.height;
+        this.obstacle = obstacle;
+        this.movingObstacles = movingObstacles;
+        this.trees = new AtomicReferenceArray<>(width * height);
     }
 
     public void run(StateObservation stateObs)
     {
         this.state = stateObs;
         this.grid = stateObs.getObservationGrid();
-        this.astar = new AStar(this);
 
         init();
-        runAll();
+
+        width = grid.length;
+        height = width > 0 ? grid[0].length : 0;
+        obstacle = new boolean[width * height];
+        for(int i = 0; i < width; ++i)
+            for(int j = 0; j < height; ++j)
+                obstacle[i * height + j] = isObstacle(i, j);
+        trees = new AtomicReferenceArray<>(width * height);
 
         if(VERBOSE)
-        {
-            for(Integer pathId : astar.pathCache.keySet())
-            {
-                ArrayList<Node> nodes = astar.pathCache.get(pathId);
-                astar.printPath(pathId, nodes);
-            }
-        }
+            System.out.println("PathFinder: " + width + "x" + height + " grid, routes computed on demand.");
     }
 
     private void init()
@@ -70,36 +135,434 @@ public class PathFinder {
         }
     }
 
-    private void runAll()
+    /**
+     * Indicates if sprites of a type are obstacles.
+     * @param itype type of the sprites.
+     * @return true if they are obstacles.
+     */
+    public boolean isObstacleType(int itype)
+    {
+        return itype < obstacleTypes.length && obstacleTypes[itype];
+    }
+
+    /**
+     * Indicates if any obstacle can move, so update() must be called every game tick.
+     * @return true if obstacles can move.
+     */
+    public boolean hasMovingObstacles()
+    {
+        return movingObstacles;
+    }
+
+    /**
+     * Returns a path finder for the obstacles that are in the game now. If they are the same
+     * as the ones of this path finder, this is returned. Otherwise, a new path finder is
+     * returned, which keeps the routing trees of this one, repaired where the obstacles changed
+     * (see repair()). This path finder is not modified, as it may be used by other games.
+     * @param game game to take the obstacles from.
+     * @return a path finder for the obstacles of the game.
+     */
+    public PathFinder update(Game game)
+    {
+        //Cells blocked now are marked with the number of this check, so the marks don't have to
+        //be cleared. Nothing else is allocated unless the obstacles changed.
+        Marks marks = Marks.get(width * height);
+        int check = marks.next();
+        int[] blocked = marks.cells;
+
+        boolean moving = false;
+        int blockSize = game.getBlockSize();
+        for(int itype = 0; itype < obstacleTypes.length; ++itype)
+        {
+            if(!obstacleTypes[itype])
+                continue;
+
+            Iterator<VGDLSprite> spriteIt = game.getSpriteGroup(itype);
+            if(spriteIt != null) while(spriteIt.hasNext())
+            {
+                VGDLSprite sp = spriteIt.next();
+                moving |= !sp.is_static;
+
+                //The cells of the sprite, as in the observation grid.
+                int x = sp.rect.x / blockSize, y = sp.rect.y / blockSize;
+                boolean xPlus = sp.rect.x % blockSize > 0, yPlus = sp.rect.y % blockSize > 0;
+                block(blocked, check, x, y);
+                if(xPlus) block(blocked, check, x + 1, y);
+                if(yPlus) block(blocked, check, x, y + 1);
+                if(xPlus && yPlus) block(blocked, check, x + 1, y + 1);
+            }
+        }
+
+        int numChanged = 0;
+        for(int i = 0; i < obstacle.length; ++i)
+            if((blocked[i] == check) != obstacle[i])
+                numChanged++;
+
+        if(numChanged == 0 && moving == movingObstacles)
+            return this;
+
+        boolean[] current = new boolean[width * height];
+        int[] changed = new int[numChanged];
+        numChanged = 0;
+        for(int i = 0; i < current.length; ++i)
+        {
+            current[i] = blocked[i] == check;
+            if(current[i] != obstacle[i])
+                changed[numChanged++] = i;
+        }
+
+        PathFinder pf = new PathFinder(this, current, moving);
+        for(int from = 0; from < current.length; ++from)
+        {
+            int[] dist = trees.get(from);
+            if(dist != null && !current[from])
+                pf.trees.set(from, pf.repair(dist, changed));
+        }
+        return pf;
+    }
+
+    private void block(int[] cells, int check, int x, int y)
     {
-        for(int i = 0; i < grid.length; ++i)
+        if(x >= 0 && x < width && y >= 0 && y < height)
+            cells[x * height + y] = check;
+    }
+
+    /**
+     * Returns the shortest path between two cells, without the start cell, or null if there is
+     * none (or both are the same cell).
+     * @param start start cell.
+     * @param end destination cell.
+     * @return the nodes of the path, each one with the direction it is reached from.
+     */
+    public ArrayList<Node> getPath(Vector2d start, Vector2d end)
+    {
+        int sx = (int) start.x, sy = (int) start.y;
+        int ex = (int) end.x, ey = (int) end.y;
+        if(isBlocked(sx, sy) || isBlocked(ex, ey))
+            return null;
+
+        int from = sx * height + sy;
+        int to = ex * height + ey;
+        int[] dist = tree(from);
+        if(from == to || dist[to] == UNREACHABLE)
+            return null;
+
+        ArrayList<Node> path = new ArrayList<Node>();
+        Node node = new Node(new Vector2d(ex, ey));
+        int cell = to;
+        while(cell != from)
+        {
+            int dir = parent(dist, cell);
+            int px = cell / height + x_arrNeig[dir], py = cell % height + y_arrNeig[dir];
+            Node parent = new Node(new Vector2d(px, py));
+            node.setMoveDir(parent);
+            path.add(node);
+            node = parent;
+            cell = px * height + py;
+        }
+
+        //Nodes were added from the end.
+        for(int i = 0, j = path.size() - 1; i < j; ++i, --j)
+            path.set(i, path.set(j, path.get(i)));
+        return path;
+    }
+
+    /**
+     * Returns the routing tree from a cell, computing it the first time.
+     */
+    private int[] tree(int from)
+    {
+        int[] dist = trees.get(from);
+        if(dist == null)
+        {
+            dist = search(from);
+            //If another thread got here first, both trees are the same.
+            trees.compareAndSet(from, null, dist);
+        }
+        return dist;
+    }
+
+    /**
+     * Index of the neighbour a cell is reached from in a routing tree: the first one, in the
+     * order of x_arrNeig, one step closer to the start.
+     */
+    private int parent(int[] dist, int cell)
+    {
+        int x = cell / height, y = cell % height;
+        int i = 0;
+        while(isBlocked(x + x_arrNeig[i], y + y_arrNeig[i]) ||
+              dist[(x + x_arrNeig[i]) * height + y + y_arrNeig[i]] != dist[cell] - 1)
+            ++i;
+        return i;
+    }
+
+    /**
+     * Breadth-first search from a cell.
+     */
+    private int[] search(int from)
+    {
+        int[] dist = new int[width * height];
+        Arrays.fill(dist, UNREACHABLE);
+        dist[from] = 0;
+
+        Heap heap = new Heap(width * height);
+        heap.push(from, 0);
+        expand(heap, dist);
+        return dist;
+    }
+
+    /**
+     * Repairs the distances of a routing tree after some cells changed from free to obstacle or
+     * the other way around, changing only those of the cells whose routes go through them
+     * (dynamic BFS):
+     *
+     *   - Cells that are now obstacles lose their distance and so, in order of distance, do the
+     *     cells they were the only neighbour one step closer to the start of.
+     *   - Cells without a distance, and new free cells, take the best one of their neighbours,
+     *     and the shorter routes are spread as in search().
+     *
+     * The distances are the ones a new search finds, so routes are the same too (see parent()).
+     * @return the same distances, if none of them changes, or a repaired copy.
+     */
+    private int[] repair(int[] oldDist, int[] changed)
+    {
+        if(!affected(oldDist, changed))
+            return oldDist;
+
+        int[] dist = oldDist.clone();
+        Heap heap = new Heap(width * height);
+        int[] lost = new int[width * height];
+        int numLost = 0;
+
+        //Cells lose their distance when they are pushed, with the old one, so that when a cell
+        //is checked all the cells one step closer to the start that lost theirs are known.
+        for(int cell : changed)
+        {
+            if(obstacle[cell] && dist[cell] != UNREACHABLE)
+            {
+                heap.push(cell, dist[cell]);
+                dist[cell] = UNREACHABLE;
+            }
+        }
+        while(heap.size > 0)
         {
-            for(int j = 0; j < grid[i].length; ++j)
+            int d = heap.dists[0];
+            int cell = heap.pop();
+            lost[numLost++] = cell;
+
+            int x = cell / height, y = cell % height;
+            for(int i = 0; i < x_arrNeig.length; ++i)
             {
-                boolean obstacleCell = isObstacle(i,j);
-                if(!obstacleCell)
+                int nx = x + x_arrNeig[i], ny = y + y_arrNeig[i];
+                if(isBlocked(nx, ny))
+                    continue;
+                int neig = nx * height + ny;
+                if(dist[neig] == d + 1 && !reachedFromNeighbour(dist, neig))
                 {
-                    if(VERBOSE) System.out.println("Running from (" + i +  "," + j + ")");
-                    runAll(i,j);
+                    heap.push(neig, d + 1);
+                    dist[neig] = UNREACHABLE;
                 }
+            }
+        }
+
+        //Free cells without a distance, and new free cells, take the best one of their neighbours.
+        for(int c = 0; c < changed.length + numLost; ++c)
+        {
+            int cell = c < changed.length ? changed[c] : lost[c - changed.length];
+            if(obstacle[cell])
+                continue;
 
+            int x = cell / height, y = cell % height;
+            for(int i = 0; i < x_arrNeig.length; ++i)
+            {
+                int nx = x + x_arrNeig[i], ny = y + y_arrNeig[i];
+                if(isBlocked(nx, ny))
+                    continue;
+                int neig = nx * height + ny;
+                if(dist[neig] != UNREACHABLE && dist[neig] + 1 < dist[cell])
+                    dist[cell] = dist[neig] + 1;
             }
+            if(dist[cell] != UNREACHABLE)
+                heap.push(cell, dist[cell]);
         }
+
+        expand(heap, dist);
+        return dist;
     }
 
-    public ArrayList<Node> getPath(Vector2d start, Vector2d end)
+    /**
+     * Indicates if a cell with a distance has a neighbour one step closer to the start.
+     */
+    private boolean reachedFromNeighbour(int[] dist, int cell)
     {
-        return astar.getPath(new Node(start), new Node(end));
+        int x = cell / height, y = cell % height;
+        for(int i = 0; i < x_arrNeig.length; ++i)
+        {
+            int nx = x + x_arrNeig[i], ny = y + y_arrNeig[i];
+            if(!isBlocked(nx, ny) && dist[nx * height + ny] == dist[cell] - 1)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indicates if any distance of a tree changes with the cells that changed: if a new obstacle
+     * could be reached or a new free cell is next to a cell that can be reached. Otherwise, the
+     * tree is kept as it is.
+     */
+    private boolean affected(int[] dist, int[] changed)
+    {
+        for(int cell : changed)
+        {
+            if(obstacle[cell])
+            {
+                if(dist[cell] != UNREACHABLE)
+                    return true;
+                continue;
+            }
+
+            int x = cell / height, y = cell % height;
+            for(int i = 0; i < x_arrNeig.length; ++i)
+            {
+                int nx = x + x_arrNeig[i], ny = y + y_arrNeig[i];
+                if(!isBlocked(nx, ny) && dist[nx * height + ny] != UNREACHABLE)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expands the cells in the heap by distance, giving distances to the free cells they lead
+     * to that didn't have one, or had a longer one.
+     */
+    private void expand(Heap heap, int[] dist)
+    {
+        while(heap.size > 0)
+        {
+            int d = heap.dists[0];
+            int cell = heap.pop();
+            if(d != dist[cell])
+                continue; //Found again with a shorter route.
+
+            int x = cell / height, y = cell % height;
+            for(int i = 0; i < x_arrNeig.length; ++i)
+            {
+                int nx = x + x_arrNeig[i], ny = y + y_arrNeig[i];
+                if(isBlocked(nx, ny))
+                    continue;
+
+                int neig = nx * height + ny;
+                if(d + 1 < dist[neig])
+                {
+                    dist[neig] = d + 1;
+                    heap.push(neig, d + 1);
+                }
+            }
+        }
     }
 
-    private void runAll(int i, int j) {
-        Node start = new Node(new Vector2d(i,j));
-        Node goal = null; //To get all routes.
+    /**
+     * Cells marked by update(Game), one array per thread, as path finders are shared by the
+     * games of several threads.
+     */
+    private static class Marks
+    {
+        private static final ThreadLocal<Marks> marks = ThreadLocal.withInitial(Marks::new);
+
+        int[] cells = new int[0];
+        int check;
+
+        static Marks get(int size)
+        {
+            Marks m = marks.get();
+            if(m.cells.length < size)
+            {
+                m.cells = new int[size];
+                m.check = 0;
+            }
+            return m;
+        }
 
-        astar.findPath(start, goal);
+        int next()
+        {
+            if(++check == 0)
+            {
+                //Wrapped around: old marks could match again.
+                Arrays.fill(cells, 0);
+                check = 1;
+            }
+            return check;
+        }
     }
 
+    /**
+     * Binary heap of cells by distance.
+     */
+    private static class Heap
+    {
+        int[] cells, dists;
+        int size;
+
+        Heap(int capacity)
+        {
+            cells = new int[capacity];
+            dists = new int[capacity];
+        }
 
+        void push(int cell, int dist)
+        {
+            if(size == cells.length)
+            {
+                cells = Arrays.copyOf(cells, size * 2);
+                dists = Arrays.copyOf(dists, size * 2);
+            }
+            int k = size++;
+            while(k > 0)
+            {
+                int parent = (k - 1) >>> 1;
+                if(dist >= dists[parent])
+                    break;
+                cells[k] = cells[parent];
+                dists[k] = dists[parent];
+                k = parent;
+            }
+            cells[k] = cell;
+            dists[k] = dist;
+        }
+
+        int pop()
+        {
+            int result = cells[0];
+            int n = --size;
+            if(n == 0)
+                return result;
+
+            int cell = cells[n], dist = dists[n];
+            int k = 0;
+            int half = n >>> 1;
+            while(k < half)
+            {
+                int child = (k << 1) + 1;
+                int right = child + 1;
+                if(right < n && dists[child] > dists[right])
+                    child = right;
+                if(dist <= dists[child])
+                    break;
+                cells[k] = cells[child];
+                dists[k] = dists[child];
+                k = child;
+            }
+            cells[k] = cell;
+            dists[k] = dist;
+            return result;
+        }
+    }
+
+    private boolean isBlocked(int x, int y)
+    {
+        return x < 0 || x >= width || y < 0 || y >= height || obstacle[x * height + y];
+    }
 
     private boolean isObstacle(int row, int col)
     {
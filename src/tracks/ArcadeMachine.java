@@ -4,6 +4,7 @@ import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 import core.vgdl.VGDLFactory;
@@ -11,6 +12,7 @@ import core.vgdl.VGDLParser;
 import core.vgdl.VGDLRegistry;
 import core.competition.CompetitionParameters;
 import core.game.Game;
+import core.game.Profiler;
 import core.game.StateObservation;
 import core.game.StateObservationMulti;
 import core.player.AbstractMultiPlayer;
@@ -18,6 +20,7 @@ import core.player.AbstractPlayer;
 import core.player.Player;
 import ontology.Types;
 import tools.ElapsedCpuTimer;
+import tools.IO;
 import tools.StatSummary;
 
 /**
@@ -96,10 +99,11 @@ public class ArcadeMachine {
 
 		// First, we create the game to be played..
 		Game toPlay = new VGDLParser().parseGame(game_file);
+		toPlay.setHeadless(!visuals);
 		toPlay.buildLevel(level_file, randomSeed);
 
 		// Warm the game up.
-		ArcadeMachine.warmUp(toPlay, CompetitionParameters.WARMUP_TIME);
+		ArcadeMachine.warmUp(toPlay, game_file, CompetitionParameters.WARMUP_TIME);
 
 		// Create the players.
 		String[] names = agentNames.split(" ");
@@ -203,6 +207,7 @@ public class ArcadeMachine {
 
 		// First, we create the game to be played..
 		Game toPlay = new VGDLParser().parseGame(game_file);
+		toPlay.setHeadless(!visuals);
 		toPlay.buildLevel(level_file, 0);
 
 		String agentName;
@@ -392,6 +397,28 @@ public class ArcadeMachine {
      *   this array must contain as much String objects as level_files.length*level_times.
      */
     public static void runGames(String game_file, String[] level_files, int level_times, String agentName, String[] actionFiles) {
+	runGames(game_file, level_files, level_times, agentName, actionFiles, new Random().nextLong(),
+		CompetitionParameters.BATCH_THREADS);
+    }
+
+    /**
+     * Reads and launches a game for a bot to be played, spreading the runs
+     * across several threads. The game description is read once and each
+     * thread creates its own game from it. Each run has a seed derived from
+     * baseSeed and its index, so the same baseSeed always plays the same runs.
+     * Graphics always off.
+     * 
+     * @param game_file   game description file.
+     * @param level_files  array of level file names to play.
+     * @param level_times   how many times each level has to be played.
+     * @param actionFiles names of the files where the actions of this player, for this
+     *   game, should be recorded. Accepts null if no recording is desired. If not null,
+     *   this array must contain as much String objects as level_files.length*level_times.
+     * @param baseSeed seed from which the seeds of all runs are derived.
+     * @param numThreads number of threads to play the runs with.
+     */
+    public static void runGames(String game_file, String[] level_files, int level_times, String agentName,
+	    String[] actionFiles, long baseSeed, int numThreads) {
 	VGDLFactory.GetInstance().init(); // This always first thing to do.
 	VGDLRegistry.GetInstance().init();
 
@@ -403,119 +430,150 @@ public class ArcadeMachine {
 			    + "you must supply an action file for each game instance to be played, or null.";
 	}
 
-	Game toPlay = new VGDLParser().parseGame(game_file);
-	int levelIdx = 0;
-
-	StatSummary[] victories = new StatSummary[toPlay.getNoPlayers()];
-	StatSummary[] scores = new StatSummary[toPlay.getNoPlayers()];
-	for (int i = 0; i < toPlay.getNoPlayers(); i++) {
+	String[] desc_lines = new IO().readFile(game_file);
+	final boolean record = recordActions;
+
+	// Run i plays level i / level_times, for the (i % level_times)-th time.
+	double[][][] results = BatchRunner.run(level_files.length * level_times, numThreads, baseSeed, () -> {
+	    Game toPlay = new VGDLParser().parseGame(desc_lines);
+	    toPlay.setHeadless(true);
+	    return (run, randomSeed) -> {
+		int levelIdx = run / level_times;
+		String filename = record ? actionFiles[run] : null;
+		return playRun(toPlay, game_file, level_files[levelIdx], run % level_times, level_times, agentName,
+			filename, randomSeed);
+	    };
+	});
+
+	int no_players = results.length > 0 ? results[0][0].length : 0;
+	StatSummary[] victories = new StatSummary[no_players];
+	StatSummary[] scores = new StatSummary[no_players];
+	for (int i = 0; i < no_players; i++) {
 	    victories[i] = new StatSummary();
 	    scores[i] = new StatSummary();
 	}
 	performance = new StatSummary();
 
-	for (String level_file : level_files) {
-	    for (int i = 0; i < level_times; ++i) {
-		if (VERBOSE)
-		    System.out.println(" ** Playing game " + game_file + ", level " + level_file + " (" + (i + 1) + "/"
-			    + level_times + ") **");
-
-		// Determine the random seed, different for each game to be
-		// played.
-		int randomSeed = new Random().nextInt();
-
-		// build the level in the game.
-		toPlay.buildLevel(level_file, randomSeed);
-
-		String filename = recordActions ? actionFiles[levelIdx * level_times + i] : null;
-
-		// Warm the game up.
-		ArcadeMachine.warmUp(toPlay, CompetitionParameters.WARMUP_TIME);
-
-		// Create the player.
-		String[] agentNames = agentName.split(" ");
-		int no_players = agentNames.length;
-
-		int disqCount = 0; // count how many players disqualified
-		double[] score = new double[no_players]; // store scores for all
-							 // the players
-
-		Player[] players;
-		if (no_players > 1) {
-		    // multi player games
-		    players = new AbstractMultiPlayer[no_players];
-		} else {
-		    // single player games
-		    players = new AbstractPlayer[no_players];
-		}
-
-		for (int j = 0; j < no_players; j++) {
-		    if (no_players > 1) {
-			// multi player
-			players[j] = ArcadeMachine.createMultiPlayer(agentNames[j], filename,
-				toPlay.getObservationMulti(i), randomSeed, j, false);
-		    } else {
-			// single player
-			players[j] = ArcadeMachine.createPlayer(agentNames[j], filename, toPlay.getObservation(),
-				randomSeed, false);
-		    }
-		    score[j] = -1;
-		    if (players[j] == null) {
-				// Something went wrong in the constructor, controller
-				// disqualified
-				// toPlay.disqualify(j);
-				toPlay.getAvatars()[j].disqualify(true);
-
-				disqCount++;
-		    }
-		}
-
-		// Play the game if at least 2 players in multiplayer games or
-		// at least 1 in single player.
-		// Get array of scores back.
-		if ((no_players - disqCount) >= toPlay.no_players) {
-		    score = toPlay.runGame(players, randomSeed);
-		    //score = toPlay.playGame(players, randomSeed, false, 0);
-		    toPlay.printResult();
-		} else {
-		    // Get the score for the result.
-		    score = toPlay.handleResult();
-		    toPlay.printResult();
+	// Get players stats, in run order.
+	for (double[][] result : results)
+	    for (int id = 0; id < no_players; id++)
+		if (!Double.isNaN(result[0][id])) {
+		    scores[id].add(result[0][id]);
+		    victories[id].add(result[1][id]);
 		}
 
-		// Finally, when the game is over, we need to tear the players
-		// down.
-		if (!ArcadeMachine.tearPlayerDown(toPlay, players, filename, randomSeed, true)) {
-		    score = toPlay.handleResult();
-		    toPlay.printResult();
-		}
-
-		// Get players stats
-		for (Player player : players)
-		    if (player != null) {
-			int id = player.getPlayerID();
-			scores[id].add(score[id]);
-			victories[id].add(toPlay.getWinner(id) == Types.WINNER.PLAYER_WINS ? 1 : 0);
-		    }
-
-		// reset the game.
-		toPlay.reset();
-	    }
-
-	    levelIdx++;
-	}
-
 	String vict = "", sc = "";
-	for (int i = 0; i < toPlay.no_players; i++) {
+	for (int i = 0; i < no_players; i++) {
 	    vict += victories[i].mean();
 	    sc += scores[i].mean();
-	    if (i != toPlay.no_players - 1) {
+	    if (i != no_players - 1) {
 		vict += ", ";
 		sc += ", ";
 	    }
 	}
 	System.out.println("Results in game " + game_file + ", " + vict + " , " + sc);
 	 	//+ " , " + performance.mean());
+	Profiler.dump(game_file);
+    }
+
+    /**
+     * Plays one run of runGames(): builds the level, creates the players, plays
+     * the game and resets it.
+     * 
+     * @param toPlay      game to play, already parsed.
+     * @param game_file   game description file.
+     * @param level_file  level file to play.
+     * @param i           how many times this level has been played before.
+     * @param level_times how many times each level has to be played.
+     * @param agentName   names of the agents, separated by spaces.
+     * @param filename    file where the actions are recorded, or null.
+     * @param randomSeed  seed of this run.
+     * @return scores and victories (1 or 0) of each player, NaN for players that
+     *         couldn't be created.
+     */
+    private static double[][] playRun(Game toPlay, String game_file, String level_file, int i, int level_times,
+	    String agentName, String filename, int randomSeed) {
+	if (VERBOSE)
+	    System.out.println(" ** Playing game " + game_file + ", level " + level_file + " (" + (i + 1) + "/"
+		    + level_times + ") **");
+
+	// build the level in the game.
+	toPlay.buildLevel(level_file, randomSeed);
+
+	// Warm the game up.
+	ArcadeMachine.warmUp(toPlay, game_file, CompetitionParameters.WARMUP_TIME);
+
+	// Create the player.
+	String[] agentNames = agentName.split(" ");
+	int no_players = agentNames.length;
+
+	int disqCount = 0; // count how many players disqualified
+	double[] score = new double[no_players]; // store scores for all
+						 // the players
+
+	Player[] players;
+	if (no_players > 1) {
+	    // multi player games
+	    players = new AbstractMultiPlayer[no_players];
+	} else {
+	    // single player games
+	    players = new AbstractPlayer[no_players];
+	}
+
+	for (int j = 0; j < no_players; j++) {
+	    if (no_players > 1) {
+		// multi player
+		players[j] = ArcadeMachine.createMultiPlayer(agentNames[j], filename,
+			toPlay.getObservationMulti(i), randomSeed, j, false);
+	    } else {
+		// single player
+		players[j] = ArcadeMachine.createPlayer(agentNames[j], filename, toPlay.getObservation(),
+			randomSeed, false);
+	    }
+	    score[j] = -1;
+	    if (players[j] == null) {
+			// Something went wrong in the constructor, controller
+			// disqualified
+			// toPlay.disqualify(j);
+			toPlay.getAvatars()[j].disqualify(true);
+
+			disqCount++;
+	    }
+	}
+
+	// Play the game if at least 2 players in multiplayer games or
+	// at least 1 in single player.
+	// Get array of scores back.
+	if ((no_players - disqCount) >= toPlay.no_players) {
+	    score = toPlay.runGame(players, randomSeed);
+	    //score = toPlay.playGame(players, randomSeed, false, 0);
+	    toPlay.printResult();
+	} else {
+	    // Get the score for the result.
+	    score = toPlay.handleResult();
+	    toPlay.printResult();
+	}
+
+	// Finally, when the game is over, we need to tear the players
+	// down.
+	if (!ArcadeMachine.tearPlayerDown(toPlay, players, filename, randomSeed, true)) {
+	    score = toPlay.handleResult();
+	    toPlay.printResult();
+	}
+
+	// Get players stats
+	double[][] result = new double[2][toPlay.no_players];
+	Arrays.fill(result[0], Double.NaN);
+	for (Player player : players)
+	    if (player != null) {
+		int id = player.getPlayerID();
+		result[0][id] = score[id];
+		result[1][id] = toPlay.getWinner(id) == Types.WINNER.PLAYER_WINS ? 1 : 0;
+	    }
+
+	// reset the game.
+	toPlay.reset();
+	return result;
     }
 
     /**
@@ -706,113 +764,75 @@ public class ArcadeMachine {
      * @param toPlay
      *            game to be warmed up.
      * @param howLong
-     *            for how long the warming up process must last (in
+     *            for how long the warming up process can last, at most (in
      *            milliseconds).
      */
-		@SuppressWarnings("unchecked")
     public static void warmUp(Game toPlay, long howLong) {
-        ElapsedCpuTimer ect = new ElapsedCpuTimer();
-        ect.setMaxTimeMillis(howLong);
-        int playoutLength = 10;
-        int copyStats = 0;
-        int advStats = 0;
-        int no_players = toPlay.no_players;
-
-        StatSummary ss1 = new StatSummary();
-        StatSummary ss2 = new StatSummary();
-
-        boolean finish = ect.exceededMaxTime()
-            || (copyStats > CompetitionParameters.WARMUP_CP && advStats > CompetitionParameters.WARMUP_ADV);
-
-        ArrayList<Types.ACTIONS>[] actions = new ArrayList[no_players];
-        StateObservation stateObs;
-
-        if (no_players > 1) {
-            // multi player
-            stateObs = toPlay.getObservationMulti(0);
-            for (int i = 0; i < no_players; i++) {
-            actions[i] = ((StateObservationMulti) stateObs).getAvailableActions(i);
-            }
-        } else {
-            // single player
-            stateObs = toPlay.getObservation();
-            actions[0] = stateObs.getAvailableActions();
-        }
-
-        // while(!ect.exceededMaxTime())
-        while (!finish) {
-            for (int i = 0; i < no_players; i++) {
-            for (Types.ACTIONS action : actions[i]) {
-
-                StateObservation stCopy = stateObs.copy();
-                ElapsedCpuTimer ectAdv = new ElapsedCpuTimer();
-
-                Types.ACTIONS[] acts = new Types.ACTIONS[no_players];
-                for (int j = 0; j < no_players; j++) {
-                if (j != i)
-                    acts[j] = Types.ACTIONS.ACTION_NIL;
-                }
-                acts[i] = action;
-
-                if (no_players > 1) {
-                // multi player
-                ((StateObservationMulti) stCopy).advance(acts);
-                } else {
-                stCopy.advance(action);
-                }
-
-                copyStats++;
-                advStats++;
-
-                if (ect.remainingTimeMillis() < CompetitionParameters.WARMUP_TIME * 0.5) {
-                ss1.add(ectAdv.elapsedNanos());
-                }
-
-                for (int j = 0; j < playoutLength; j++) {
-
-                int[] index = new int[no_players];
-                Types.ACTIONS[] actionPO = new Types.ACTIONS[no_players];
-                for (int k = 0; k < no_players; k++) {
-                    index[k] = new Random().nextInt(actions[i].size());
-                    actionPO[k] = actions[i].get(index[k]);
-                }
-
-                ectAdv = new ElapsedCpuTimer();
-
-                if (no_players > 1) {
-                    ((StateObservationMulti) stCopy).advance(actionPO);
-                } else {
-                    stCopy.advance(actionPO[0]);
-                }
-
-                advStats++;
-
-                if (ect.remainingTimeMillis() < CompetitionParameters.WARMUP_TIME * 0.5) {
-                    ss2.add(ectAdv.elapsedNanos());
-                }
-                }
-            }
+	warmUp(toPlay, null, howLong);
+    }
 
-            finish = ect.exceededMaxTime()
-                || (copyStats > CompetitionParameters.WARMUP_CP && advStats > CompetitionParameters.WARMUP_ADV);
+    /**
+     * Warms the game up, if it hasn't been warmed up in this JVM yet, and keeps
+     * the cost of copy() and advance() measured (see WarmUp).
+     * 
+     * @param toPlay
+     *            game to be warmed up.
+     * @param game_file
+     *            game description file, or null to warm up always.
+     * @param howLong
+     *            for how long the warming up process can last, at most (in
+     *            milliseconds).
+     * @return the cost of copy() and advance(), or null if it's not known yet.
+     */
+    @SuppressWarnings("unchecked")
+    public static WarmUp.Calibration warmUp(Game toPlay, String game_file, long howLong) {
+	int no_players = toPlay.no_players;
+	WarmUp.Calibration calibration;
+
+	if (no_players > 1) {
+	    // multi player
+	    StateObservationMulti stateObs = toPlay.getObservationMulti(0);
+	    ArrayList<Types.ACTIONS>[] actions = new ArrayList[no_players];
+	    for (int i = 0; i < no_players; i++)
+		actions[i] = stateObs.getAvailableActions(i);
+
+	    calibration = WarmUp.warmUp(game_file, howLong, new WarmUp.Simulator<StateObservationMulti>() {
+		public StateObservationMulti copy() {
+		    return stateObs.copy();
+		}
 
-            // if(VERBOSE)
-            // System.out.println("[WARM-UP] Remaining time: " +
-            // ect.remainingTimeMillis() +
-            // " ms, copy() calls: " + copyStats + ", advance() calls: " +
-            // advStats);
-            }
-        }
+		public boolean advance(StateObservationMulti state, Random random) {
+		    if (state.isGameOver())
+			return false;
+		    Types.ACTIONS[] acts = new Types.ACTIONS[no_players];
+		    for (int i = 0; i < no_players; i++)
+			acts[i] = actions[i].get(random.nextInt(actions[i].size()));
+		    state.advance(acts);
+		    return true;
+		}
+	    });
+	} else {
+	    // single player
+	    StateObservation stateObs = toPlay.getObservation();
+	    ArrayList<Types.ACTIONS> actions = stateObs.getAvailableActions();
+
+	    calibration = WarmUp.warmUp(game_file, howLong, new WarmUp.Simulator<StateObservation>() {
+		public StateObservation copy() {
+		    return stateObs.copy();
+		}
 
-        if (VERBOSE) {
-            System.out.println("[WARM-UP] Finished, copy() calls: " + copyStats + ", advance() calls: " + advStats
-                + ", time (s): " + ect.elapsedSeconds());
-            // System.out.println(ss1);
-            // System.out.println(ss2);
-        }
+		public boolean advance(StateObservation state, Random random) {
+		    if (state.isGameOver())
+			return false;
+		    state.advance(actions.get(random.nextInt(actions.size())));
+		    return true;
+		}
+	    });
+	}
 
-        // Reset input to delete warm-up effects.
-        Game.ki.resetAll();
+	// Reset input to delete warm-up effects.
+	toPlay.getKeyHandler().resetAll();
+	return calibration;
     }
 
     /**
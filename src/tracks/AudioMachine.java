@@ -3,13 +3,16 @@ package tracks;
 import core.competition.CompetitionParameters;
 import core.game.AudioStateObservation;
 import core.game.Game;
+import core.game.Profiler;
 import core.player.AudioPlayer;
 import core.player.Player;
 import core.vgdl.VGDLFactory;
 import core.vgdl.VGDLParser;
 import core.vgdl.VGDLRegistry;
 import ontology.Types;
+import tools.AudioAssets;
 import tools.ElapsedCpuTimer;
+import tools.IO;
 import tools.StatSummary;
 
 import java.lang.reflect.Constructor;
@@ -55,6 +58,7 @@ public class AudioMachine {
 									  String agentName, String actionFile, int randomSeed) {
 		VGDLFactory.GetInstance().init(); // This always first thing to do.
 		VGDLRegistry.GetInstance().init();
+		AudioAssets.getInstance(); // Load all sounds before the game starts.
 
 		if (VERBOSE)
 			System.out.println(" ** Playing game " + game_file + ", level " + level_file + " **");
@@ -67,10 +71,11 @@ public class AudioMachine {
 		// First, we create the game to be played..
 		Game toPlay = new VGDLParser().parseGame(game_file);
 		toPlay.setAudio(audio);
+		toPlay.setHeadless(!visuals);
 		toPlay.buildLevel(level_file, randomSeed);
 
 		// Warm the game up.
-		AudioMachine.warmUp(toPlay, CompetitionParameters.WARMUP_TIME);
+		AudioMachine.warmUp(toPlay, game_file, CompetitionParameters.WARMUP_TIME);
 
 		// Create players
 		boolean anyHuman = isHuman(agentName);
@@ -114,69 +119,124 @@ public class AudioMachine {
      *   this array must contain as much String objects as level_files.length*level_times.
      */
     public static void runGames(String game_file, String[] level_files, int level_times, String agentName, String[] actionFiles) {
+		runGames(game_file, level_files, level_times, agentName, actionFiles, new Random().nextLong(),
+			CompetitionParameters.BATCH_THREADS);
+    }
+
+    /**
+     * Reads and launches a game for a bot to be played, spreading the runs
+     * across several threads. The game description is read once and each
+     * thread creates its own game and player from it; the player of a thread
+     * plays all its runs, in order. Each run has a seed derived from baseSeed
+     * and its index, so the same baseSeed and numThreads always play the same
+     * runs. Graphics always off.
+     * 
+     * @param game_file   game description file.
+     * @param level_files  array of level file names to play.
+     * @param level_times   how many times each level has to be played.
+     * @param actionFiles names of the files where the actions of this player, for this
+     *   game, should be recorded. Accepts null if no recording is desired. If not null,
+     *   this array must contain as much String objects as level_files.length*level_times.
+     * @param baseSeed seed from which the seeds of all runs are derived.
+     * @param numThreads number of threads to play the runs with.
+     */
+    public static void runGames(String game_file, String[] level_files, int level_times, String agentName,
+			String[] actionFiles, long baseSeed, int numThreads) {
 		VGDLFactory.GetInstance().init(); // This always first thing to do.
 		VGDLRegistry.GetInstance().init();
+		AudioAssets.getInstance(); // Load all sounds before the game starts.
 
-		boolean recordActions = false;
 		if (actionFiles != null) {
-			recordActions = true;
 			assert actionFiles.length >= level_files.length
 				* level_times : "runGames (actionFiles.length<level_files.length*level_times): "
 					+ "you must supply an action file for each game instance to be played, or null.";
 		}
 
-		Game toPlay = new VGDLParser().parseGame(game_file);
+		String[] desc_lines = new IO().readFile(game_file);
+
+		// Run i plays level i / level_times, for the (i % level_times)-th time.
+		double[][][] results = BatchRunner.run(level_files.length * level_times, numThreads, baseSeed, () -> {
+			Game toPlay = new VGDLParser().parseGame(desc_lines);
+			toPlay.setHeadless(true);
+			Player[] player = new Player[1];
+			return (run, randomSeed) -> {
+				if (player[0] == null) {
+					player[0] = AudioMachine.createPlayer(agentName, null, randomSeed, false);
+					if (!(player[0] instanceof AudioPlayer)) {
+						// Something went wrong in the constructor, controller disqualified
+						toPlay.getAvatar().disqualify(true);
+						toPlay.handleResult();
+						toPlay.printResult();
+					}
+				}
+				if (!(player[0] instanceof AudioPlayer))
+					return null;
+
+				return playRun(toPlay, player[0], game_file, level_files[run / level_times], run % level_times,
+					level_times, randomSeed);
+			};
+		});
+
 		StatSummary victories = new StatSummary();
 		StatSummary scores = new StatSummary();
-
-		// Determine the random seed for the player.
-		int randomSeed = new Random().nextInt();
-		Player player = AudioMachine.createPlayer(agentName, null, randomSeed, false);
-		if (!(player instanceof AudioPlayer)) {
-			// Something went wrong in the constructor, controller disqualified
-			toPlay.getAvatar().disqualify(true);
-			toPlay.handleResult();
-			toPlay.printResult();
-			System.out.println("Results in game " + game_file + ", " + -1 + " , " + 0);
-			return;
+		for (double[][] result : results) {
+			if (result == null) {
+				System.out.println("Results in game " + game_file + ", " + -1 + " , " + 0);
+				return;
+			}
+			scores.add(result[0][0]);
+			victories.add(result[1][0]);
 		}
 
-		for (String level_file : level_files) {
-			for (int i = 0; i < level_times; ++i) {
-				if (VERBOSE)
-					System.out.println(" ** Playing game " + game_file + ", level " + level_file + " (" + (i + 1) + "/"
-						+ level_times + ") **");
-
-				// build the level in the game.
-				toPlay.buildLevel(level_file, randomSeed);
+		String vict = "" + victories.mean(), sc = "" + scores.mean();
+		System.out.println("Results in game " + game_file + ", " + vict + " , " + sc);
+		Profiler.dump(game_file);
+    }
 
-				// Warm the game up.
-				AudioMachine.warmUp(toPlay, CompetitionParameters.WARMUP_TIME);
+    /**
+     * Plays one run of runGames(): builds the level, plays the game and resets
+     * the game and the player.
+     * 
+     * @param toPlay      game to play, already parsed.
+     * @param player      player of the game.
+     * @param game_file   game description file.
+     * @param level_file  level file to play.
+     * @param i           how many times this level has been played before.
+     * @param level_times how many times each level has to be played.
+     * @param randomSeed  seed of this run.
+     * @return score and victory (1 or 0) of the player.
+     */
+    private static double[][] playRun(Game toPlay, Player player, String game_file, String level_file, int i,
+			int level_times, int randomSeed) {
+		if (VERBOSE)
+			System.out.println(" ** Playing game " + game_file + ", level " + level_file + " (" + (i + 1) + "/"
+				+ level_times + ") **");
 
-				// Play game
-				double[] score = toPlay.runGame(new Player[]{player}, randomSeed);
+		// build the level in the game.
+		toPlay.buildLevel(level_file, randomSeed);
 
-				// Finally, when the game is over, we need to tear the player down.
-				if (!AudioMachine.tearPlayerDown(toPlay, player)) {
-					score = toPlay.handleResult();
-					toPlay.printResult();
-				} else {
-					toPlay.printResult();
-				}
+		// Warm the game up.
+		AudioMachine.warmUp(toPlay, game_file, CompetitionParameters.WARMUP_TIME);
 
-				// Get players stats
-				int id = player.getPlayerID();
-				scores.add(score[0]);
-				victories.add(toPlay.getWinner(id) == Types.WINNER.PLAYER_WINS ? 1 : 0);
+		// Play game
+		double[] score = toPlay.runGame(new Player[]{player}, randomSeed);
 
-				// Reset the game and player.
-				toPlay.reset();
-				player.reset();
-			}
+		// Finally, when the game is over, we need to tear the player down.
+		if (!AudioMachine.tearPlayerDown(toPlay, player)) {
+			score = toPlay.handleResult();
+			toPlay.printResult();
+		} else {
+			toPlay.printResult();
 		}
 
-		String vict = "" + victories.mean(), sc = "" + scores.mean();
-		System.out.println("Results in game " + game_file + ", " + vict + " , " + sc);
+		// Get players stats
+		int id = player.getPlayerID();
+		double[][] result = new double[][]{{score[0]}, {toPlay.getWinner(id) == Types.WINNER.PLAYER_WINS ? 1 : 0}};
+
+		// Reset the game and player.
+		toPlay.reset();
+		player.reset();
+		return result;
     }
 
     /**
@@ -294,83 +354,38 @@ public class AudioMachine {
 
 
     /**
-     * This methods takes the game and warms it up. This allows Java to finish
-     * the runtime compilation process and optimize the code before the proper
-     * game starts.
+     * This methods takes the game and warms it up, if it hasn't been warmed up in
+     * this JVM yet. This allows Java to finish the runtime compilation process and
+     * optimize the code before the proper game starts (see WarmUp).
      * 
      * @param toPlay
      *            game to be warmed up.
+     * @param game_file
+     *            game description file.
      * @param howLong
-     *            for how long the warming up process must last (in
+     *            for how long the warming up process can last, at most (in
      *            milliseconds).
      */
-		@SuppressWarnings("unchecked")
-	private static void warmUp(Game toPlay, long howLong) {
-        ElapsedCpuTimer ect = new ElapsedCpuTimer();
-        ect.setMaxTimeMillis(howLong);
-        int playoutLength = 10;
-        int copyStats = 0;
-        int advStats = 0;
-        int no_players = toPlay.no_players;
-
-        StatSummary ss1 = new StatSummary();
-        StatSummary ss2 = new StatSummary();
-
-        boolean finish = ect.exceededMaxTime();
-
-        ArrayList<Types.ACTIONS>[] actions = new ArrayList[no_players];
-        AudioStateObservation stateObs;
-
-		stateObs = toPlay.getObservationAudio();
-		actions[0] = stateObs.getAvailableActions();
-
-        // while(!ect.exceededMaxTime())
-        while (!finish) {
-            for (int i = 0; i < no_players; i++) {
-				for (Types.ACTIONS action : actions[i]) {
-
-					AudioStateObservation stCopy = stateObs.copy();
-					ElapsedCpuTimer ectAdv = new ElapsedCpuTimer();
-					stCopy.advance(action);
-					copyStats++;
-					advStats++;
-
-					if (ect.remainingTimeMillis() < CompetitionParameters.WARMUP_TIME * 0.5) {
-						ss1.add(ectAdv.elapsedNanos());
-					}
-
-					for (int j = 0; j < playoutLength; j++) {
-						ectAdv = new ElapsedCpuTimer();
-						stCopy.advance(actions[i].get(new Random().nextInt(actions[i].size())));
-						advStats++;
-
-						if (ect.remainingTimeMillis() < CompetitionParameters.WARMUP_TIME * 0.5) {
-							ss2.add(ectAdv.elapsedNanos());
-						}
-					}
-				}
+	private static void warmUp(Game toPlay, String game_file, long howLong) {
+		AudioStateObservation stateObs = toPlay.getObservationAudio();
+		ArrayList<Types.ACTIONS> actions = stateObs.getAvailableActions();
 
-				finish = ect.exceededMaxTime()
-					|| (copyStats > CompetitionParameters.WARMUP_CP && advStats > CompetitionParameters.WARMUP_ADV);
-
-				// if(VERBOSE)
-				// System.out.println("[WARM-UP] Remaining time: " +
-				// ect.remainingTimeMillis() +
-				// " ms, copy() calls: " + copyStats + ", advance() calls: " +
-				// advStats);
+		WarmUp.warmUp(game_file, howLong, new WarmUp.Simulator<AudioStateObservation>() {
+			public AudioStateObservation copy() {
+				return stateObs.copy();
 			}
-        }
 
-        if (VERBOSE) {
-            System.out.println("[WARM-UP] Finished, copy() calls: " + copyStats + ", advance() calls: " + advStats
-                + ", time (s): " + ect.elapsedSeconds());
-            // System.out.println(ss1);
-            // System.out.println(ss2);
-        }
+			public boolean advance(AudioStateObservation state, Random random) {
+				if (state.isGameOver())
+					return false;
+				state.advance(actions.get(random.nextInt(actions.size())));
+				return true;
+			}
+		});
 
-        // Reset input to delete warm-up effects.
-        Game.ki.resetAll();
-    }
+		// Reset input to delete warm-up effects.
+		toPlay.getKeyHandler().resetAll();
+	}
 
     /**
      * Tears the player down. This initiates the saving of actions to file. It
@@ -0,0 +1,130 @@
+package tracks;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import core.logging.Logger;
+import core.logging.Message;
+import core.vgdl.VGDLRegistry;
+
+/**
+ * Plays a batch of runs of a game spread across several worker threads. Each worker
+ * has its own game context (VGDL registry and logger), creates its own game once and
+ * plays its share of the runs with it. Runs are assigned to workers in a fixed way
+ * (run i goes to worker i % numThreads, in increasing order) and each run has a seed
+ * derived from a base seed and its index, so results only depend on the base seed
+ * and the number of threads. A batch with one thread is played in the calling thread.
+ *
+ * Afterwards, the registry of the calling thread has the sprite types of the game and
+ * its logger has the messages of all workers, as if the runs had been played in it.
+ */
+class BatchRunner {
+
+    /**
+     * Plays the runs assigned to a worker thread.
+     */
+    interface Worker {
+	/**
+	 * Plays one run of the game.
+	 *
+	 * @param run
+	 *            index of the run in the batch.
+	 * @param randomSeed
+	 *            seed of this run.
+	 * @return the result of the run, or null if it couldn't be played.
+	 */
+	double[][] play(int run, int randomSeed);
+    }
+
+    /**
+     * Returns the seed of a run, mixing the base seed and the run index (SplitMix64).
+     *
+     * @param baseSeed
+     *            seed of the whole batch.
+     * @param run
+     *            index of the run.
+     * @return the seed for the run.
+     */
+    static int runSeed(long baseSeed, int run) {
+	long z = baseSeed + (run + 1) * 0x9E3779B97F4A7C15L;
+	z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+	z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+	return (int) (z ^ (z >>> 31));
+    }
+
+    /**
+     * Plays all runs of a batch.
+     *
+     * @param numRuns
+     *            number of runs to play.
+     * @param numThreads
+     *            number of worker threads.
+     * @param baseSeed
+     *            seed of the whole batch.
+     * @param workers
+     *            creates the worker of each thread. It's called from the worker
+     *            thread, after its game context has been set up (or from the
+     *            calling thread, if there is only one).
+     * @return the result of each run, in run order.
+     */
+    static double[][][] run(int numRuns, int numThreads, long baseSeed, Supplier<Worker> workers) {
+	double[][][] results = new double[numRuns][][];
+	numThreads = Math.max(1, Math.min(numThreads, numRuns));
+
+	if (numThreads == 1) {
+	    Worker worker = workers.get();
+	    for (int run = 0; run < numRuns; run++)
+		results[run] = worker.play(run, runSeed(baseSeed, run));
+	    return results;
+	}
+
+	VGDLRegistry[] registries = new VGDLRegistry[numThreads];
+	Logger[] loggers = new Logger[numThreads];
+	ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+	ArrayList<Future<?>> futures = new ArrayList<>();
+	for (int t = 0; t < numThreads; t++) {
+	    final int first = t;
+	    final int step = numThreads;
+	    futures.add(executor.submit(() -> {
+		VGDLRegistry.useThreadInstance();
+		Logger.useThreadInstance();
+		registries[first] = VGDLRegistry.GetInstance();
+		loggers[first] = Logger.getInstance();
+		try {
+		    Worker worker = workers.get();
+		    for (int run = first; run < numRuns; run += step)
+			results[run] = worker.play(run, runSeed(baseSeed, run));
+		} finally {
+		    Logger.releaseThreadInstance();
+		    VGDLRegistry.releaseThreadInstance();
+		}
+	    }));
+	}
+
+	try {
+	    for (Future<?> future : futures)
+		future.get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(e);
+	} catch (ExecutionException e) {
+	    throw new RuntimeException(e.getCause());
+	} finally {
+	    executor.shutdownNow();
+
+	    // All workers parse the same game, so they have the same sprite types.
+	    if (registries[0] != null)
+		VGDLRegistry.GetInstance().init(registries[0]);
+	    for (Logger logger : loggers)
+		if (logger != null)
+		    for (Message message : logger.getMessages())
+			Logger.getInstance().addMessage(message);
+	}
+
+	return results;
+    }
+}
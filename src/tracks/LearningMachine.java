@@ -2,6 +2,7 @@ package tracks;
 
 import core.competition.CompetitionParameters;
 import core.game.Game;
+import core.game.Profiler;
 import core.game.StateObservation;
 import core.game.StateObservationMulti;
 import core.player.LearningPlayer;
@@ -11,6 +12,7 @@ import core.vgdl.VGDLParser;
 import core.vgdl.VGDLRegistry;
 import ontology.Types;
 import tools.ElapsedCpuTimer;
+import tools.IO;
 import tools.StatSummary;
 
 import java.io.IOException;
@@ -67,7 +69,50 @@ public class LearningMachine {
         LearningPlayer player = LearningMachine.createPlayer(cmd);
 
         // Play the training games.
-        runGames(game_file, level_files, 1, player, actionFiles, visuals);
+        if (CompetitionParameters.LEARNING_ENVS > 1)
+            runVectorGames(game_file, level_files, CompetitionParameters.LEARNING_ENVS,
+                CompetitionParameters.LEARNING_ENV_THREADS, player);
+        else
+            runGames(game_file, level_files, 1, player, actionFiles, visuals);
+    }
+
+    /**
+     * Plays several games at the same time for a learning client (a vectorized environment, see
+     * VectorEnv), until the client stops. The client receives the observations of all games in one
+     * message, and replies with the actions for all of them in one message. Only training levels
+     * are played, and finished games are restarted. Graphics always off.
+     *
+     * @param game_file game description file.
+     * @param level_files level files; game i plays training level i % Types.NUM_TRAINING_LEVELS.
+     * @param numEnvs number of games played at the same time.
+     * @param numThreads number of threads that step the games.
+     * @param player player connected to the client.
+     */
+    public static void runVectorGames(String game_file, String[] level_files, int numEnvs, int numThreads,
+                                      LearningPlayer player) throws IOException {
+        VGDLFactory.GetInstance().init(); //This always first thing to do.
+        VGDLRegistry.GetInstance().init();
+        CompetitionParameters.IS_LEARNING = true;
+
+        if (!player.startPlayerCommunication())
+            return;
+
+        String[] trainingLevels = new String[Types.NUM_TRAINING_LEVELS];
+        System.arraycopy(level_files, 0, trainingLevels, 0, trainingLevels.length);
+
+        System.out.println("[PHASE] Starting Training in " + numEnvs + " games at the same time.");
+        VectorEnv env = new VectorEnv(new IO().readFile(game_file), trainingLevels, numEnvs, numThreads, player);
+        try {
+            env.play();
+        } finally {
+            env.close();
+        }
+        System.out.println("[PHASE] End Training. Games: " + env.scores.n() + ", victories: " + env.victories.mean()
+            + ", score: " + env.scores.mean());
+        Profiler.dump(game_file);
+
+        //Finally, we need to finish the communication with the client.
+        player.finishPlayerCommunication();
     }
 
     /**
@@ -227,6 +272,7 @@ public class LearningMachine {
 
 //        System.out.println("[LOG] Results in game " + game_file + ", " +
 //                vict + " , " + sc);
+        Profiler.dump(game_file);
 
         //Finally, when the game is over, we need to finish the communication with the client.
         player.finishPlayerCommunication();
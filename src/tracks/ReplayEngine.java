@@ -0,0 +1,398 @@
+package tracks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import core.competition.CompetitionParameters;
+import core.game.AudioStateObservation;
+import core.game.Game;
+import core.game.GameSnapshot;
+import core.game.StateObservation;
+import core.game.StateObservationMulti;
+import core.player.Player;
+import core.vgdl.VGDLFactory;
+import core.vgdl.VGDLParser;
+import core.vgdl.VGDLRegistry;
+import ontology.Types;
+import tools.ElapsedCpuTimer;
+
+/**
+ * Replays a recorded game headless, from any game tick. While a game is recorded or replayed, a
+ * keyframe (a snapshot of the game, see Game.snapshot()) is taken every
+ * CompetitionParameters.REPLAY_KEYFRAME_INTERVAL ticks, so seek() restores the nearest keyframe
+ * before a tick and only replays the ticks after it.
+ *
+ * The actions are saved in the same file as ArcadeMachine.replayGame() reads, and the hash of
+ * the state at each keyframe in a second file, the action file with ".keyframes" added. verify()
+ * replays the game from the start and checks that the state is the same at each of them.
+ */
+public class ReplayEngine {
+
+    /**
+     * Game replayed, and its players, that take the recorded actions.
+     */
+    private final Game game;
+    private final ReplayPlayer[] players;
+
+    private int randomSeed;
+    private int interval = CompetitionParameters.REPLAY_KEYFRAME_INTERVAL;
+
+    /**
+     * Actions of the players, per game tick.
+     */
+    private final ArrayList<Types.ACTIONS[]> actions = new ArrayList<>();
+
+    /**
+     * Keyframes taken in this JVM, and hashes of the state recorded, per game tick. The hash of
+     * the last tick is the one of the state when the game ended.
+     */
+    private final TreeMap<Integer, GameSnapshot> keyframes = new TreeMap<>();
+    private final TreeMap<Integer, Long> hashes = new TreeMap<>();
+
+    /**
+     * Recorded result of the game.
+     */
+    private int[] win;
+    private double[] score;
+    private int timesteps;
+
+    private boolean started = false;
+    private boolean ended = false;
+
+    private ReplayEngine(String game_file) {
+	VGDLFactory.GetInstance().init(); // This always first thing to do.
+	VGDLRegistry.GetInstance().init();
+
+	game = new VGDLParser().parseGame(game_file);
+	game.setHeadless(true);
+
+	players = new ReplayPlayer[game.getNoPlayers()];
+	for (int i = 0; i < players.length; i++)
+	    players[i] = new ReplayPlayer(i);
+	win = new int[players.length];
+	score = new double[players.length];
+    }
+
+    /**
+     * Plays a game with some agents, headless, recording their actions and keyframes.
+     *
+     * @param game_file
+     *            game description file.
+     * @param level_file
+     *            file with the level to be played.
+     * @param agentNames
+     *            names (inc. package) of the agents, one per player, separated by space.
+     * @param randomSeed
+     *            sampleRandom seed for the sampleRandom generator.
+     * @return the replay of the game, at its end.
+     */
+    public static ReplayEngine record(String game_file, String level_file, String agentNames, int randomSeed) {
+	ReplayEngine replay = new ReplayEngine(game_file);
+	Game toPlay = replay.game;
+	replay.randomSeed = randomSeed;
+	toPlay.buildLevel(level_file, randomSeed);
+
+	// Warm the game up.
+	ArcadeMachine.warmUp(toPlay, game_file, CompetitionParameters.WARMUP_TIME);
+
+	// Create the agents, that play through the players of the replay.
+	String[] names = agentNames.split(" ");
+	int no_players = replay.players.length;
+	if (names.length < no_players)
+	    throw new IllegalArgumentException(no_players + " agents needed to record " + game_file);
+
+	Player[] agents = new Player[no_players];
+	for (int i = 0; i < no_players; i++) {
+	    if (no_players > 1)
+		agents[i] = ArcadeMachine.createMultiPlayer(names[i], null, toPlay.getObservationMulti(i), randomSeed, i,
+			false);
+	    else
+		agents[i] = ArcadeMachine.createPlayer(names[i], null, toPlay.getObservation(), randomSeed, false);
+
+	    if (agents[i] == null)
+		throw new RuntimeException("Controller " + names[i] + " couldn't be created.");
+	    replay.players[i].agent = agents[i];
+	}
+
+	// Play the game, taking the keyframes, and keep their hashes and the one of the end.
+	replay.start();
+	while (!replay.ended)
+	    replay.step();
+	for (Integer tick : replay.keyframes.keySet())
+	    replay.hashes.put(tick, replay.keyframes.get(tick).getStateHash());
+	replay.hashes.put(toPlay.getGameTick(), toPlay.getStateHash(true));
+
+	ArcadeMachine.tearPlayerDown(toPlay, agents, null, randomSeed, false);
+	toPlay.handleResult();
+
+	replay.timesteps = toPlay.getGameTick();
+	for (int i = 0; i < no_players; i++) {
+	    replay.win[i] = toPlay.getWinner(i) == Types.WINNER.PLAYER_WINS ? 1 : 0;
+	    replay.score[i] = toPlay.getScore(i);
+	    replay.players[i].agent = null;
+	}
+	return replay;
+    }
+
+    /**
+     * Reads a recorded game: the actions file, as written by ArcadeMachine or save(), and the
+     * keyframes file if there is one.
+     *
+     * @param game_file
+     *            game description file.
+     * @param level_file
+     *            file with the level played.
+     * @param actionFile
+     *            file with the actions of the players.
+     * @return the replay of the game, not started.
+     */
+    public static ReplayEngine load(String game_file, String level_file, String actionFile) throws IOException {
+	ReplayEngine replay = new ReplayEngine(game_file);
+	int no_players = replay.players.length;
+
+	try (BufferedReader br = new BufferedReader(new FileReader(actionFile))) {
+	    String[] firstLine = br.readLine().split(" ");
+	    replay.randomSeed = Integer.parseInt(firstLine[0]);
+	    if (no_players < 2) {
+		// seed, win, score and timesteps, then one action per line.
+		replay.win[0] = Integer.parseInt(firstLine[1]);
+		replay.score[0] = Double.parseDouble(firstLine[2]);
+		replay.timesteps = Integer.parseInt(firstLine[3]);
+	    } else {
+		// seed and timesteps, scores, win states, then the actions of all players per line.
+		replay.timesteps = Integer.parseInt(firstLine[1]);
+		String[] scores = br.readLine().split(" ");
+		String[] wins = br.readLine().split(" ");
+		for (int i = 0; i < no_players; i++) {
+		    replay.score[i] = scores.length > i ? Double.parseDouble(scores[i]) : 0;
+		    replay.win[i] = wins.length > i ? Integer.parseInt(wins[i]) : 0;
+		}
+	    }
+
+	    String line = br.readLine();
+	    while (line != null) {
+		String[] acts = line.split(" ");
+		Types.ACTIONS[] tickActions = new Types.ACTIONS[no_players];
+		for (int i = 0; i < no_players; i++)
+		    tickActions[i] = acts.length > i ? Types.ACTIONS.fromString(acts[i]) : Types.ACTIONS.ACTION_NIL;
+		replay.actions.add(tickActions);
+		line = br.readLine();
+	    }
+	}
+
+	File keyframeFile = new File(actionFile + ".keyframes");
+	if (keyframeFile.exists()) {
+	    try (BufferedReader br = new BufferedReader(new FileReader(keyframeFile))) {
+		replay.interval = Integer.parseInt(br.readLine().trim());
+		String line = br.readLine();
+		while (line != null) {
+		    String[] tickHash = line.split(" ");
+		    if (tickHash.length == 2)
+			replay.hashes.put(Integer.parseInt(tickHash[0]), Long.parseLong(tickHash[1]));
+		    line = br.readLine();
+		}
+	    }
+	}
+
+	replay.game.buildLevel(level_file, replay.randomSeed);
+	return replay;
+    }
+
+    /**
+     * Writes the actions in the format read by ArcadeMachine.replayGame(), and the hashes of the
+     * keyframes next to them.
+     *
+     * @param actionFile
+     *            file where the actions are written.
+     */
+    public void save(String actionFile) throws IOException {
+	try (BufferedWriter writer = new BufferedWriter(new FileWriter(actionFile))) {
+	    if (players.length < 2) {
+		writer.write(randomSeed + " " + win[0] + " " + score[0] + " " + timesteps + "\n");
+	    } else {
+		writer.write(randomSeed + " " + timesteps + "\n");
+		String scores = "", winState = "";
+		for (int i = 0; i < players.length; i++) {
+		    scores += score[i] + " ";
+		    winState += win[i] + " ";
+		}
+		writer.write(scores + "\n" + winState + "\n");
+	    }
+
+	    for (Types.ACTIONS[] tickActions : actions) {
+		String line = "";
+		for (Types.ACTIONS act : tickActions)
+		    line += act.toString() + " ";
+		writer.write(line.trim() + "\n");
+	    }
+	}
+
+	try (BufferedWriter writer = new BufferedWriter(new FileWriter(actionFile + ".keyframes"))) {
+	    writer.write(interval + "\n");
+	    for (Map.Entry<Integer, Long> hash : hashes.entrySet())
+		writer.write(hash.getKey() + " " + hash.getValue() + "\n");
+	}
+    }
+
+    /**
+     * Moves the game to a tick, restoring the nearest keyframe before it (unless the game is
+     * already between that keyframe and the tick) and replaying the ticks after it.
+     *
+     * @param tick
+     *            game tick to move to.
+     * @return the observation of the game at the tick, when the players are about to act, or
+     *         at the end of the game if it ends before.
+     */
+    public StateObservation seek(int tick) {
+	if (!started)
+	    start();
+
+	Map.Entry<Integer, GameSnapshot> keyframe = keyframes.floorEntry(Math.max(0, tick));
+	int now = game.getGameTick();
+	if (now > tick || now < keyframe.getKey()) {
+	    game.restore(keyframe.getValue(), players);
+	    ended = false;
+	}
+
+	while (!ended && game.getGameTick() < tick)
+	    step();
+	return game.getObservation();
+    }
+
+    /**
+     * Replays the game from the start, comparing the state at each keyframe and at the end with
+     * the recorded hashes, and the result with the recorded one.
+     *
+     * @return the first tick where the state is not the recorded one, the last tick if the result
+     *         is different, or -1 if the replay is the same as the recorded game.
+     */
+    public int verify() {
+	seek(0);
+
+	for (Map.Entry<Integer, Long> hash : hashes.entrySet()) {
+	    // The game ends during the cycle of its last tick, and stays in it.
+	    int tick = hash.getKey();
+	    while (!ended && (game.getGameTick() < tick || tick == timesteps))
+		step();
+	    if (game.getGameTick() != tick || ended != (tick == timesteps)
+		    || game.getStateHash(true) != hash.getValue())
+		return Math.min(tick, game.getGameTick());
+	}
+
+	while (!ended)
+	    step();
+	game.handleResult();
+	if (game.getGameTick() != timesteps)
+	    return Math.min(timesteps, game.getGameTick());
+	for (int i = 0; i < players.length; i++) {
+	    int actualWinner = game.getWinner(i) == Types.WINNER.PLAYER_WINS ? 1 : 0;
+	    if (actualWinner != win[i] || game.getScore(i) != score[i])
+		return timesteps;
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the game replayed, at the tick of the last seek().
+     *
+     * @return the game.
+     */
+    public Game getGame() {
+	return game;
+    }
+
+    /**
+     * Returns the number of ticks of the recorded game.
+     *
+     * @return the game ticks.
+     */
+    public int getTimesteps() {
+	return timesteps;
+    }
+
+    /**
+     * Starts the game, taking the keyframe of tick 0.
+     */
+    private void start() {
+	game.startSteppedGame(players, randomSeed, null);
+	started = true;
+	ended = false;
+	keyframes.putIfAbsent(0, game.snapshot());
+    }
+
+    /**
+     * Plays a game tick, taking a keyframe if the next one is due.
+     *
+     * @return true if the game is over.
+     */
+    private boolean step() {
+	ended = game.stepGame(null);
+	int tick = game.getGameTick();
+	if (!ended && tick % interval == 0 && !keyframes.containsKey(tick))
+	    keyframes.put(tick, game.snapshot());
+	return ended;
+    }
+
+    /**
+     * Player of the replay: takes the recorded action of the tick, or, while the game is
+     * recorded, the action of the agent, and records it.
+     */
+    private class ReplayPlayer extends Player {
+	private Player agent;
+
+	ReplayPlayer(int playerID) {
+	    setPlayerID(playerID);
+	}
+
+	@Override
+	public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer) {
+	    if (agent == null)
+		return recorded(stateObs.getGameTick());
+	    return record(stateObs.getGameTick(), agent.act(stateObs, elapsedTimer));
+	}
+
+	@Override
+	public Types.ACTIONS act(StateObservationMulti stateObs, ElapsedCpuTimer elapsedTimer) {
+	    if (agent == null)
+		return recorded(stateObs.getGameTick());
+	    return record(stateObs.getGameTick(), agent.act(stateObs, elapsedTimer));
+	}
+
+	@Override
+	public Types.ACTIONS act(AudioStateObservation aso, ElapsedCpuTimer elapsedCpuTimer) {
+	    if (agent == null)
+		return recorded(aso.getGameTick());
+	    return record(aso.getGameTick(), agent.act(aso, elapsedCpuTimer));
+	}
+
+	@Override
+	public void reset() {
+	}
+
+	private Types.ACTIONS recorded(int tick) {
+	    if (tick < 0 || tick >= actions.size())
+		return Types.ACTIONS.ACTION_NIL;
+	    return actions.get(tick)[getPlayerID()];
+	}
+
+	private Types.ACTIONS record(int tick, Types.ACTIONS action) {
+	    if (action == null)
+		action = Types.ACTIONS.ACTION_NIL;
+	    while (actions.size() <= tick) {
+		Types.ACTIONS[] tickActions = new Types.ACTIONS[players.length];
+		Arrays.fill(tickActions, Types.ACTIONS.ACTION_NIL);
+		actions.add(tickActions);
+	    }
+	    actions.get(tick)[getPlayerID()] = action;
+	    return action;
+	}
+    }
+}
@@ -0,0 +1,237 @@
+package tracks;
+
+import core.game.AudioStateObservation;
+import core.game.Game;
+import core.game.SerializableStateObservation;
+import core.game.StateObservation;
+import core.game.StateObservationMulti;
+import core.logging.Logger;
+import core.player.LearningPlayer;
+import core.player.Player;
+import core.vgdl.VGDLParser;
+import core.vgdl.VGDLRegistry;
+import core.vgdl.VGDLViewer;
+import ontology.Types;
+import tools.ElapsedCpuTimer;
+import tools.StatSummary;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A vectorized environment: several independent games played at the same time by one learning
+ * client. The client receives the observations of all games in one message and replies with one
+ * action per game; then all games are stepped together, spread across worker threads. As in
+ * BatchRunner, each worker has its own game context (VGDL registry and logger) and always steps
+ * the same games. A finished game is restarted, with a new seed, the next time it's stepped (the
+ * action for it is ignored), so the client always receives the final observation of each game.
+ */
+class VectorEnv {
+
+    /**
+     * A game of the environment.
+     */
+    private static class Env {
+        Game game;
+        String levelFile;
+        int levelIdx;
+        StepPlayer player = new StepPlayer();
+        VGDLViewer view;
+        boolean ended;
+        SerializableStateObservation observation;
+    }
+
+    /**
+     * Player of a game of the environment, which plays the action chosen by the client.
+     */
+    private static class StepPlayer extends Player {
+        Types.ACTIONS action = Types.ACTIONS.ACTION_NIL;
+
+        @Override
+        public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer) { return action; }
+        @Override
+        public Types.ACTIONS act(StateObservationMulti stateObs, ElapsedCpuTimer elapsedTimer) { return action; }
+        @Override
+        public Types.ACTIONS act(AudioStateObservation aso, ElapsedCpuTimer elapsedCpuTimer) { return action; }
+        @Override
+        public void reset() {}
+    }
+
+    private final Env[] envs;
+    private final ExecutorService[] workers;
+    private final LearningPlayer client;
+    private final boolean images;
+    private final Random random = new Random();
+
+    /**
+     * Scores and victories of the finished games.
+     */
+    final StatSummary scores = new StatSummary();
+    final StatSummary victories = new StatSummary();
+
+    /**
+     * Creates the games of the environment, each one in the worker that will step it, and
+     * starts them. Game i plays level_files[i % level_files.length].
+     *
+     * @param desc_lines game description.
+     * @param level_files levels to play.
+     * @param numEnvs number of games.
+     * @param numThreads number of worker threads.
+     * @param client player connected to the learning client.
+     */
+    VectorEnv(String[] desc_lines, String[] level_files, int numEnvs, int numThreads, LearningPlayer client) {
+        this.client = client;
+        Types.LEARNING_SSO_TYPE ssoType = client.getLearningSsoType();
+        this.images = ssoType == Types.LEARNING_SSO_TYPE.IMAGE || ssoType == Types.LEARNING_SSO_TYPE.BOTH;
+
+        envs = new Env[numEnvs];
+        for (int i = 0; i < numEnvs; i++) {
+            envs[i] = new Env();
+            envs[i].levelIdx = i % level_files.length;
+            envs[i].levelFile = level_files[envs[i].levelIdx];
+        }
+
+        workers = new ExecutorService[Math.max(1, Math.min(numThreads, numEnvs))];
+        for (int w = 0; w < workers.length; w++)
+            workers[w] = Executors.newSingleThreadExecutor();
+
+        forEachWorker(() -> {
+            VGDLRegistry.useThreadInstance();
+            Logger.useThreadInstance();
+        });
+        forEachEnv(env -> {
+            env.game = new VGDLParser().parseGame(desc_lines);
+            env.game.setHeadless(!images);
+            start(env);
+        });
+    }
+
+    /**
+     * Plays until the client stops: sends the observations of all games, and steps them with
+     * the actions received.
+     */
+    void play() {
+        SerializableStateObservation[] batch = new SerializableStateObservation[envs.length];
+        while (true) {
+            for (int i = 0; i < envs.length; i++)
+                batch[i] = envs[i].observation;
+
+            Types.ACTIONS[] actions = client.act(batch);
+            if (actions == null)
+                return;
+
+            for (int i = 0; i < envs.length; i++)
+                envs[i].player.action = actions[i];
+            forEachEnv(this::step);
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    void close() {
+        forEachWorker(() -> {
+            Logger.releaseThreadInstance();
+            VGDLRegistry.releaseThreadInstance();
+        });
+        for (ExecutorService worker : workers)
+            worker.shutdownNow();
+    }
+
+    /**
+     * Builds the level of a game and starts it.
+     */
+    private void start(Env env) {
+        int randomSeed;
+        synchronized (random) {
+            randomSeed = random.nextInt();
+        }
+
+        env.game.buildLevel(env.levelFile, randomSeed);
+        Player[] players = new Player[]{env.player};
+        if (images) {
+            env.view = new VGDLViewer(env.game, env.player);
+            env.view.justImage = true;
+            env.view.paintsFramebuffer = true;
+        }
+        env.game.startSteppedGame(players, randomSeed, env.view);
+        env.ended = false;
+        observe(env);
+    }
+
+    /**
+     * Steps a game with the action of its player, or restarts it if it was over.
+     */
+    private void step(Env env) {
+        if (env.ended) {
+            env.game.reset();
+            start(env);
+            return;
+        }
+
+        env.ended = env.game.stepGame(env.view);
+        if (env.ended) {
+            double[] score = env.game.handleResult();
+            env.game.printLearningResult(env.levelIdx, false);
+            synchronized (scores) {
+                scores.add(score[0]);
+                victories.add(env.game.getWinner(0) == Types.WINNER.PLAYER_WINS ? 1 : 0);
+            }
+        }
+        observe(env);
+    }
+
+    /**
+     * Creates the observation of a game to send to the client.
+     */
+    private void observe(Env env) {
+        StateObservation so = env.game.getObservation();
+        so.currentGameState = env.ended ? Types.GAMESTATES.END_STATE : Types.GAMESTATES.ACT_STATE;
+        env.observation = client.serialize(so);
+    }
+
+    private interface EnvTask {
+        void run(Env env);
+    }
+
+    /**
+     * Runs a task on all games, each one in its worker, and waits for all of them.
+     */
+    private void forEachEnv(EnvTask task) {
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < workers.length; w++) {
+            final int first = w;
+            futures.add(workers[w].submit(() -> {
+                for (int i = first; i < envs.length; i += workers.length)
+                    task.run(envs[i]);
+            }));
+        }
+        waitFor(futures);
+    }
+
+    /**
+     * Runs a task once in each worker thread, and waits for all of them.
+     */
+    private void forEachWorker(Runnable task) {
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (ExecutorService worker : workers)
+            futures.add(worker.submit(task));
+        waitFor(futures);
+    }
+
+    private static void waitFor(ArrayList<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package tracks;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import core.competition.CompetitionParameters;
+import tools.ElapsedCpuTimer;
+
+/**
+ * Warms the JVM up before a game is played, copying a state and advancing the copies with
+ * random actions until the time of copy() and advance() stops changing (the runtime
+ * compilation has finished), or CompetitionParameters.WARMUP_TIME is over. Each game is
+ * warmed up once per JVM: later runs of the same game skip it.
+ *
+ * The cost of copy() and advance() measured at the end is the calibration of the game. If
+ * CompetitionParameters.WARMUP_CACHE is set, it is also saved in that file, so agents and
+ * schedulers of later runs can read the expected cost of a game (see getCalibration())
+ * without measuring it again.
+ */
+public class WarmUp {
+
+    /**
+     * Copies per round, and steps each copy is advanced.
+     */
+    private static final int ROUND_COPIES = 10;
+    private static final int PLAYOUT_LENGTH = 10;
+
+    /**
+     * Number of consecutive rounds whose times must be similar to finish.
+     */
+    private static final int WINDOW = 5;
+
+    /**
+     * Games warmed up in this JVM, and calibrations known (measured or read from the cache).
+     */
+    private static final ConcurrentHashMap<String, Boolean> warmed = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Calibration> calibrations = new ConcurrentHashMap<>();
+    private static boolean cacheRead = false;
+
+    /**
+     * Expected cost of a game, in nanoseconds per call.
+     */
+    public static class Calibration {
+	public final double copyNanos;
+	public final double advanceNanos;
+
+	/**
+	 * True if the times were stable when the warm-up finished, false if it ran out of time.
+	 */
+	public final boolean stable;
+
+	public Calibration(double copyNanos, double advanceNanos, boolean stable) {
+	    this.copyNanos = copyNanos;
+	    this.advanceNanos = advanceNanos;
+	    this.stable = stable;
+	}
+
+	@Override
+	public String toString() {
+	    return String.format("copy() %.1f us, advance() %.1f us%s", copyNanos / 1000, advanceNanos / 1000,
+		    stable ? "" : " (not stable)");
+	}
+    }
+
+    /**
+     * State of a game that can be copied and advanced.
+     */
+    interface Simulator<S> {
+	S copy();
+
+	/**
+	 * Advances the state with a random action.
+	 *
+	 * @return false if the game is over, and the state wasn't advanced.
+	 */
+	boolean advance(S state, Random random);
+    }
+
+    /**
+     * Warms a game up, if it hasn't been warmed up in this JVM yet.
+     *
+     * @param game
+     *            key of the game (its description file), or null to warm up always and not
+     *            keep the calibration.
+     * @param howLong
+     *            maximum time of the warm-up (in milliseconds).
+     * @param simulator
+     *            copies and advances the state of the game.
+     * @return the calibration of the game, or null if it's not known yet (another thread is
+     *         warming it up).
+     */
+    static <S> Calibration warmUp(String game, long howLong, Simulator<S> simulator) {
+	if (game != null && warmed.putIfAbsent(game, Boolean.TRUE) != null)
+	    return calibrations.get(game);
+
+	ElapsedCpuTimer ect = new ElapsedCpuTimer();
+	ect.setMaxTimeMillis(howLong);
+	Random random = new Random();
+
+	double[] copyTimes = new double[WINDOW];
+	double[] advanceTimes = new double[WINDOW];
+	int rounds = 0, copies = 0, advances = 0;
+	boolean stable = false;
+
+	while (!ect.exceededMaxTime()) {
+	    long copyNanos = 0, advanceNanos = 0;
+	    int roundAdvances = 0;
+	    for (int c = 0; c < ROUND_COPIES; c++) {
+		long t = System.nanoTime();
+		S state = simulator.copy();
+		long t2 = System.nanoTime();
+		copyNanos += t2 - t;
+
+		int steps = 0;
+		while (steps < PLAYOUT_LENGTH && simulator.advance(state, random))
+		    steps++;
+		advanceNanos += System.nanoTime() - t2;
+		roundAdvances += steps;
+	    }
+	    copies += ROUND_COPIES;
+	    advances += roundAdvances;
+
+	    copyTimes[rounds % WINDOW] = copyNanos / (double) ROUND_COPIES;
+	    advanceTimes[rounds % WINDOW] = advanceNanos / (double) Math.max(1, roundAdvances);
+	    rounds++;
+
+	    if (rounds >= WINDOW && copies > CompetitionParameters.WARMUP_CP
+		    && advances > CompetitionParameters.WARMUP_ADV && isStable(copyTimes) && isStable(advanceTimes)) {
+		stable = true;
+		break;
+	    }
+	}
+
+	Calibration calibration = new Calibration(mean(copyTimes, rounds), mean(advanceTimes, rounds), stable);
+	if (ArcadeMachine.VERBOSE)
+	    System.out.println("[WARM-UP] Finished, copy() calls: " + copies + ", advance() calls: " + advances
+		    + ", time (s): " + ect.elapsedSeconds() + ", " + calibration);
+
+	if (game != null) {
+	    calibrations.put(game, calibration);
+	    save(game, calibration);
+	}
+	return calibration;
+    }
+
+    /**
+     * Returns the calibration of a game: the one measured in this JVM, or the one in
+     * CompetitionParameters.WARMUP_CACHE.
+     *
+     * @param game
+     *            description file of the game.
+     * @return the calibration, or null if the game hasn't been calibrated.
+     */
+    public static Calibration getCalibration(String game) {
+	Calibration calibration = calibrations.get(game);
+	if (calibration == null) {
+	    readCache();
+	    calibration = calibrations.get(game);
+	}
+	return calibration;
+    }
+
+    /**
+     * Indicates if the times of the last rounds are within CompetitionParameters.WARMUP_TOLERANCE
+     * of their mean.
+     */
+    private static boolean isStable(double[] times) {
+	double mean = mean(times, times.length);
+	for (double t : times)
+	    if (Math.abs(t - mean) > mean * CompetitionParameters.WARMUP_TOLERANCE)
+		return false;
+	return true;
+    }
+
+    private static double mean(double[] times, int rounds) {
+	int n = Math.min(rounds, times.length);
+	double sum = 0;
+	for (int i = 0; i < n; i++)
+	    sum += times[i];
+	return n > 0 ? sum / n : 0;
+    }
+
+    /**
+     * Reads the calibrations of the cache file, once. Calibrations measured in this JVM are kept.
+     */
+    private static synchronized void readCache() {
+	if (cacheRead || CompetitionParameters.WARMUP_CACHE == null)
+	    return;
+	cacheRead = true;
+
+	Properties cache = load();
+	for (String key : cache.stringPropertyNames()) {
+	    if (!key.endsWith(".copy"))
+		continue;
+	    String game = key.substring(0, key.length() - ".copy".length());
+	    try {
+		calibrations.putIfAbsent(game, new Calibration(Double.parseDouble(cache.getProperty(key)),
+			Double.parseDouble(cache.getProperty(game + ".advance")),
+			Boolean.parseBoolean(cache.getProperty(game + ".stable"))));
+	    } catch (NullPointerException | NumberFormatException e) {
+		// Incomplete entry, ignored.
+	    }
+	}
+    }
+
+    /**
+     * Adds (or replaces) the calibration of a game in the cache file.
+     */
+    private static synchronized void save(String game, Calibration calibration) {
+	if (CompetitionParameters.WARMUP_CACHE == null)
+	    return;
+
+	Properties cache = load();
+	cache.setProperty(game + ".copy", String.valueOf(calibration.copyNanos));
+	cache.setProperty(game + ".advance", String.valueOf(calibration.advanceNanos));
+	cache.setProperty(game + ".stable", String.valueOf(calibration.stable));
+	try (OutputStream out = new FileOutputStream(CompetitionParameters.WARMUP_CACHE)) {
+	    cache.store(out, "Cost of copy() and advance() per game, in nanoseconds (see tracks.WarmUp)");
+	} catch (IOException e) {
+	    System.out.println("Warm-up calibration couldn't be saved: " + e.getMessage());
+	}
+    }
+
+    private static Properties load() {
+	Properties cache = new Properties();
+	try (InputStream in = new FileInputStream(CompetitionParameters.WARMUP_CACHE)) {
+	    cache.load(in);
+	} catch (IOException e) {
+	    // No cache yet.
+	}
+	return cache;
+    }
+}
@@ -5,29 +5,67 @@ import core.game.AudioStateObservation;
 import ontology.Types;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * State made of the last action of the avatar and the first (up to 10) audio observations.
+ * It is stored as a 64-bit fingerprint of the last action and the sorted list of audio
+ * sources heard, with their quantized intensities, so states can be used as primitive keys
+ * (see QTable). The order in which the sounds are observed doesn't change the state.
+ */
 public class AudioInfoState implements LearningState {
+
+    /**
+     * Intensities closer than this are considered the same.
+     */
+    private static final double INTENSITY_QUANTUM = 0.01;
+
     private Types.ACTIONS avatarLastAction;
 
-    private AudioObservation[] obs;
+    private long fingerprint;
     private int resultLength = 10;
 
     public AudioInfoState(AudioStateObservation aso)
     {
-        obs = new AudioObservation[resultLength];
         this.avatarLastAction = aso.getAvatarLastAction();
 
         ArrayList<AudioObservation> observations = aso.getAudioObservations();
-        int nObservations = observations.size();
-        for (int i = 0; i < resultLength && i < nObservations; i++) {
-            obs[i] = observations.get(i);
+        int nObservations = Math.min(resultLength, observations.size());
+        long[] sources = new long[nObservations];
+        for (int i = 0; i < nObservations; i++) {
+            AudioObservation ao = observations.get(i);
+            long source = ((long) ao.itype << 32) ^ (ao.audioSrc == null ? 0 : ao.audioSrc.hashCode());
+            sources[i] = mix(source * 31 + Math.round(ao.intensity / INTENSITY_QUANTUM));
         }
+        Arrays.sort(sources);
+
+        long fp = mix(avatarLastAction.ordinal() + 1);
+        for (long source : sources)
+            fp = mix(fp * 31 + source);
+        fingerprint = mix(fp + nObservations);
+    }
+
+    /**
+     * Scrambles the bits of a value (SplitMix64 finalizer).
+     * @param z value to scramble.
+     * @return the scrambled value.
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public long fingerprint()
+    {
+        return fingerprint;
     }
 
     @Override
-    // This is super necessary to do the equals bit, or it won't even call the method
     public int hashCode(){
-        return avatarLastAction.ordinal()*10;
+        return (int) (fingerprint ^ (fingerprint >>> 32));
     }
 
     @Override
@@ -35,14 +73,7 @@ public class AudioInfoState implements LearningState {
     {
         if (!(state instanceof AudioInfoState)) return false;
 
-        // Consider two states are the same when all observations are the same
-        AudioInfoState anotherState = (AudioInfoState)state;
-        if (!avatarLastAction.equals(anotherState.avatarLastAction)) return false;
-        for (int i = 0; i < resultLength; i++) {
-            if (obs[i] == null && anotherState.obs[i] != null) return false;
-            if (obs[i] != null && anotherState.obs[i] == null) return false;
-            if (obs[i] != null && anotherState.obs[i] != null && !obs[i].equals(anotherState.obs[i])) return false;
-        }
-        return true;
+        // Consider two states are the same when their fingerprints are the same
+        return fingerprint == ((AudioInfoState) state).fingerprint;
     }
 }
@@ -8,4 +8,10 @@ public interface LearningState {
     int hashCode();
     @Override
     boolean equals(Object state);
+
+    /**
+     * 64-bit fingerprint of this state. Two states are considered the same if their fingerprints are.
+     * @return the fingerprint of this state.
+     */
+    long fingerprint();
 }
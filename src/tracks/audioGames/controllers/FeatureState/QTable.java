@@ -0,0 +1,141 @@
+package tracks.audioGames.controllers.FeatureState;
+
+import ontology.Types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Q-table indexed by state fingerprints (see LearningState.fingerprint()). Each state has
+ * an array with one Q-value per action, indexed by the action ordinal; actions not tried
+ * yet in a state have NaN as value. States are kept in an open addressing hash table of
+ * primitive keys, so no objects are created to look them up.
+ */
+public class QTable {
+
+    private static final int NUM_ACTIONS = Types.ACTIONS.values().length;
+
+    private long[] keys;
+    private double[][] values;
+    private int size;
+
+    public QTable()
+    {
+        keys = new long[64];
+        values = new double[64][];
+    }
+
+    /**
+     * Returns the Q-values of a state.
+     * @param state fingerprint of the state.
+     * @return the Q-values of the state, or null if the state is not in the table.
+     */
+    public double[] get(long state)
+    {
+        int mask = keys.length - 1;
+        for (int i = slot(state, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == state)
+                return values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the Q-values of a state, adding it (with no values) if it's not in the table.
+     * @param state fingerprint of the state.
+     * @return the Q-values of the state.
+     */
+    public double[] getOrAdd(long state)
+    {
+        int mask = keys.length - 1;
+        int i = slot(state, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == state)
+                return values[i];
+        }
+
+        double[] q = new double[NUM_ACTIONS];
+        Arrays.fill(q, Double.NaN);
+        keys[i] = state;
+        values[i] = q;
+        if (++size * 2 > keys.length)
+            grow();
+        return q;
+    }
+
+    /**
+     * Number of states in the table.
+     * @return the number of states.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the action with the highest value in a state, among the ones given. The first one
+     * wins in case of a tie.
+     * @param q Q-values of the state.
+     * @param actions actions to choose from.
+     * @return the best action, or null if none of them has a value.
+     */
+    public static Types.ACTIONS maxAction(double[] q, ArrayList<Types.ACTIONS> actions)
+    {
+        Types.ACTIONS maxAction = null;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Types.ACTIONS action : actions) {
+            double v = q[action.ordinal()];
+            if (!Double.isNaN(v) && (maxAction == null || max < v)) {
+                maxAction = action;
+                max = v;
+            }
+        }
+        return maxAction;
+    }
+
+    /**
+     * Returns the highest value of a state.
+     * @param q Q-values of the state (may be null).
+     * @return the highest value, or 0 if there are none.
+     */
+    public static double maxValue(double[] q)
+    {
+        if (q == null)
+            return 0;
+
+        boolean found = false;
+        double max = -Double.MAX_VALUE;
+        for (double v : q) {
+            if (!Double.isNaN(v)) {
+                found = true;
+                if (max < v)
+                    max = v;
+            }
+        }
+        return found ? max : 0;
+    }
+
+    private static int slot(long state, int mask)
+    {
+        return (int) (state ^ (state >>> 32)) & mask;
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        double[][] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new double[oldValues.length * 2][];
+
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == null)
+                continue;
+            int i = slot(oldKeys[j], mask);
+            while (values[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
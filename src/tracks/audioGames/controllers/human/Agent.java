@@ -1,7 +1,6 @@
 package tracks.audioGames.controllers.human;
 
 import core.game.AudioStateObservation;
-import core.game.Game;
 import core.player.AudioPlayer;
 import ontology.Types;
 import tools.Direction;
@@ -31,8 +30,8 @@ public class Agent extends AudioPlayer
      */
     public Types.ACTIONS act(AudioStateObservation stateObs, ElapsedCpuTimer elapsedTimer)
     {
-        Direction move = Utils.processMovementActionKeys(Game.ki.getMask(), DEFAULT_SINGLE_PLAYER_KEYIDX);
-        boolean useOn = Utils.processUseKey(Game.ki.getMask(), DEFAULT_SINGLE_PLAYER_KEYIDX);
+        Direction move = Utils.processMovementActionKeys(stateObs.getGameKeyHandler().getMask(), DEFAULT_SINGLE_PLAYER_KEYIDX);
+        boolean useOn = Utils.processUseKey(stateObs.getGameKeyHandler().getMask(), DEFAULT_SINGLE_PLAYER_KEYIDX);
 
         //In the keycontroller, move has preference.
         Types.ACTIONS action = Types.ACTIONS.fromVector(move);
@@ -8,6 +8,7 @@ import tools.ElapsedCpuTimer;
 import tools.Pair;
 import tracks.audioGames.controllers.FeatureState.AudioInfoState;
 import tracks.audioGames.controllers.FeatureState.LearningState;
+import tracks.audioGames.controllers.FeatureState.QTable;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -27,7 +28,7 @@ public class Agent extends AudioPlayer {
 
     private Random random;
 
-    private HashMap<LearningState, HashMap<Types.ACTIONS,Double>> QValues;
+    private QTable QValues;
     private static double ALPHA = 0.05;
     private static double GAMMA = 0.8;
     private static double EPSILON = 0.1;
@@ -41,7 +42,7 @@ public class Agent extends AudioPlayer {
     private ArrayList<ArrayList<AudioObservation>> audioTrace;
 
     public Agent(){
-        QValues = new HashMap<>();
+        QValues = new QTable();
         random = new Random();
         soundKnowledge = new HashMap<>();
         reset();
@@ -73,33 +74,30 @@ public class Agent extends AudioPlayer {
 
         // Update Q Value
         if (previousState != null) {
-            HashMap<Types.ACTIONS,Double> mapper = QValues.get(previousState);
-            Types.ACTIONS lastAction = aso.getAvatarLastAction();
+            double[] q = QValues.getOrAdd(previousState.fingerprint());
+            int lastAction = aso.getAvatarLastAction().ordinal();
 
             // Update the previous values if we have one stored
-            if (mapper.containsKey(lastAction)) {
-                double oldQ = mapper.get(lastAction);
+            if (!Double.isNaN(q[lastAction])) {
+                double oldQ = q[lastAction];
                 double plusReward = stateReward - previousReward;
 
                 // Actual Q-learning equation
                 double newQ = oldQ + ALPHA*(plusReward + GAMMA*(getMaxQNext(previousState))-oldQ);
-                mapper.replace(lastAction,newQ);
+                q[lastAction] = newQ;
             }
 
             // Or just put game score if we haven't found this before
             else
             {
-                mapper.put(lastAction, stateReward);
+                q[lastAction] = stateReward;
             }
         }
 
         Types.ACTIONS toActAction;
 
-        // Put new key in mapper if we don't have it
-        if (!QValues.containsKey(currentState)) {
-            HashMap<Types.ACTIONS,Double> mapper = new HashMap<>();
-            QValues.put(currentState, mapper);
-        }
+        // Put new state in the table if we don't have it
+        QValues.getOrAdd(currentState.fingerprint());
 
         // Get the best action with probability 1-EPSILON, if we're still learning, if validating, just pick the best we know
         if(random.nextDouble() > EPSILON) {
@@ -168,35 +166,13 @@ public class Agent extends AudioPlayer {
     private Types.ACTIONS getMaxAction(LearningState state, ArrayList<Types.ACTIONS> actions) {
         int index = random.nextInt(actions.size());
 
-        if (!QValues.containsKey(state))
-            return actions.get(index);
-
-        HashMap<Types.ACTIONS, Double> mapper = QValues.get(state);
-        if (mapper.keySet().size() == 0)
-            return actions.get(index);
-
-        Types.ACTIONS maxAction = mapper.keySet().iterator().next();
-        for (Types.ACTIONS action : mapper.keySet()) {
-            if (mapper.get(maxAction) < mapper.get(action))
-                maxAction = action;
-        }
-        return maxAction;
+        double[] q = QValues.get(state.fingerprint());
+        Types.ACTIONS maxAction = q == null ? null : QTable.maxAction(q, actions);
+        return maxAction != null ? maxAction : actions.get(index);
     }
 
     // Another get max, but for the next possible states, given the current one
     private double getMaxQNext(LearningState state) {
-        if (!QValues.containsKey(state))
-            return 0;
-
-        HashMap<Types.ACTIONS, Double> mapper = QValues.get(state);
-        if (mapper.keySet().size() == 0)
-            return 0;
-
-        double maxAction = -Double.MAX_VALUE;
-        for (Types.ACTIONS actions : mapper.keySet()) {
-            if (maxAction < mapper.get(actions))
-                maxAction = mapper.get(actions);
-        }
-        return maxAction;
+        return QTable.maxValue(QValues.get(state.fingerprint()));
     }
 }
@@ -1,6 +1,5 @@
 package tracks.multiPlayer.tools.human;
 
-import core.game.Game;
 import core.game.StateObservation;
 import core.game.StateObservationMulti;
 import core.player.AbstractMultiPlayer;
@@ -38,8 +37,8 @@ public class Agent extends AbstractMultiPlayer
     public Types.ACTIONS act(StateObservationMulti stateObs, ElapsedCpuTimer elapsedTimer)
     {
         //int id = (getPlayerID() + 1) % stateObs.getNoPlayers();
-        Direction move = Utils.processMovementActionKeys(Game.ki.getMask(), id);
-        boolean useOn = Utils.processUseKey(Game.ki.getMask(), id);
+        Direction move = Utils.processMovementActionKeys(stateObs.getGameKeyHandler().getMask(), id);
+        boolean useOn = Utils.processUseKey(stateObs.getGameKeyHandler().getMask(), id);
 
         //In the keycontroller, move has preference.
         Types.ACTIONS action = Types.ACTIONS.fromVector(move);
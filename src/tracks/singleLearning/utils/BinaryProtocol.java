@@ -0,0 +1,446 @@
+package tracks.singleLearning.utils;
+
+import core.competition.CompetitionParameters;
+import core.game.Observation;
+import core.game.SerializableStateObservation;
+import ontology.Types;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Binary protocol of the learning track, an alternative to the JSON text lines for socket clients.
+ * A client asks for it appending "#BINARY" to its START_DONE reply, and all the following messages
+ * in both directions are frames:
+ *
+ *   int length (of the rest of the frame) | long message ID | byte kind | payload
+ *
+ * The payload of a TEXT frame is a UTF-8 string (the same as the text of a JSON line message), and
+ * the payload of an OBSERVATION frame is a SerializableStateObservation packed in primitives (see
+ * writeObservation()). A BATCH frame holds the observations of a vectorized environment: their
+ * number (int) followed by each observation. Clients that also append "#DELTA" receive DELTA
+ * frames instead of OBSERVATION frames, with only what changed since the previous observation (see
+ * writeDelta()), and DELTA_BATCH frames instead of BATCH frames, with a delta for each game. All values are big-endian. The first byte of a frame is always 0 (frames are
+ * shorter than 16MB), while text lines start with a digit, so clients can tell if the server agreed.
+ */
+public class BinaryProtocol {
+
+    /**
+     * Suffix of the START_DONE reply of clients that want the binary protocol.
+     */
+    public static final String BINARY = "BINARY";
+
+    /**
+     * Kinds of frames.
+     */
+    public static final byte TEXT = 0;
+    public static final byte OBSERVATION = 1;
+    public static final byte BATCH = 2;
+    public static final byte DELTA = 3;
+    public static final byte DELTA_BATCH = 4;
+
+    /**
+     * Suffix of the START_DONE reply (after BINARY) of clients that want delta observations.
+     */
+    public static final String DELTA_OBSERVATIONS = "DELTA";
+
+    /**
+     * Size of the frame header after the length: message ID and kind.
+     */
+    static final int HEADER = 8 + 1;
+
+    /**
+     * A frame being written, in a direct buffer that grows as needed and is reused for all frames.
+     */
+    public static class Frame {
+
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+        /**
+         * Starts a new frame.
+         * @param messageId ID of the message.
+         * @param kind kind of frame.
+         */
+        public void begin(long messageId, byte kind) {
+            buffer.clear();
+            buffer.putInt(0);
+            buffer.putLong(messageId);
+            buffer.put(kind);
+        }
+
+        /**
+         * Ends the frame, writing its length.
+         * @return the buffer with the frame, ready to be written.
+         */
+        public ByteBuffer end() {
+            buffer.putInt(0, buffer.position() - 4);
+            buffer.flip();
+            return buffer;
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        public void putByte(int v) { ensure(1); buffer.put((byte) v); }
+        public void putBoolean(boolean v) { putByte(v ? 1 : 0); }
+        public void putInt(int v) { ensure(4); buffer.putInt(v); }
+        public void putFloat(float v) { ensure(4); buffer.putFloat(v); }
+        public void putDouble(double v) { ensure(8); buffer.putDouble(v); }
+
+        /**
+         * Writes an array of bytes, preceded by its length (-1 if null).
+         * @param v bytes to write.
+         */
+        public void putBytes(byte[] v) {
+            if (v == null) {
+                putInt(-1);
+            } else {
+                putInt(v.length);
+                ensure(v.length);
+                buffer.put(v);
+            }
+        }
+
+        public void putString(String v) {
+            ensure(v.length() * 3);
+            buffer.put(v.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Writes the remaining bytes of a buffer, as they are.
+         * @param v bytes to write.
+         */
+        void put(ByteBuffer v) {
+            ensure(v.remaining());
+            buffer.put(v);
+        }
+
+        void putInt(int position, int v) { buffer.putInt(position, v); }
+        int position() { return buffer.position(); }
+
+        /**
+         * Discards the contents, to use the frame as a scratch area.
+         */
+        void reset() { buffer.clear(); }
+
+        /**
+         * Returns the bytes written since the last reset() or begin(), without copying them.
+         * @return a view of the bytes, only valid until something else is written.
+         */
+        ByteBuffer written() {
+            ByteBuffer v = buffer.duplicate();
+            v.flip();
+            return v;
+        }
+    }
+
+    /**
+     * What a client knows about its last observation, to send it the next one as a delta (see
+     * writeDelta()). There is one per stream of observations: one per game of a vectorized environment.
+     */
+    static class DeltaState {
+        private int framesToKeyframe;
+        private int[] layout;
+        private ByteBuffer scalars;
+
+        /**
+         * Values of the rows sent, per section (see writeDelta()): OBS_VALUES per observation.
+         */
+        private double[][][] rows = new double[SECTIONS][0][];
+        private final Frame scratch = new Frame();
+    }
+
+    /**
+     * Sections of the rows of a delta: observationGrid and the six arrays of positions.
+     */
+    private static final int SECTIONS = 7;
+
+    /**
+     * Values kept for each observation of a row: category, itype, obsID, position, reference
+     * flag, reference and sqDist.
+     */
+    private static final int OBS_VALUES = 9;
+
+    /**
+     * Writes an observation in a frame. Fields are written in this order:
+     *
+     *   phase, isValidation, gameScore, gameTick, gameWinner, isGameOver, availableActions,
+     *   image (raw flag, width, height, bytes), data flag and, if set:
+     *   worldDimension, blockSize, noOfPlayers, avatarSpeed, avatarOrientation, avatarPosition,
+     *   avatarLastAction, avatarType, avatarHealthPoints, avatarMaxHealthPoints,
+     *   avatarLimitHealthPoints, isAvatarAlive, avatarResources, observationGrid, NPCPositions,
+     *   immovablePositions, movablePositions, resourcesPositions, portalsPositions,
+     *   fromAvatarSpritesPositions.
+     *
+     * Enums are written as their ordinal (-1 if null). Arrays and lists are preceded by their
+     * length (-1 if null).
+     *
+     * @param sso observation to write.
+     * @param out frame to write it to.
+     */
+    public static void writeObservation(SerializableStateObservation sso, Frame out) {
+        writeHeader(sso, out);
+
+        boolean data = sso.worldDimension != null;
+        out.putBoolean(data);
+        if (!data)
+            return;
+
+        writeScalars(sso, out);
+        if (sso.observationGrid == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(sso.observationGrid.length);
+            for (Observation[][] column : sso.observationGrid)
+                putObservations(column, out);
+        }
+        putObservations(sso.NPCPositions, out);
+        putObservations(sso.immovablePositions, out);
+        putObservations(sso.movablePositions, out);
+        putObservations(sso.resourcesPositions, out);
+        putObservations(sso.portalsPositions, out);
+        putObservations(sso.fromAvatarSpritesPositions, out);
+    }
+
+    /**
+     * Writes an observation as a delta of the previous one of the same stream. The fields up to the
+     * image are always written, as in writeObservation(), followed by the data flag. If set:
+     *
+     *   keyframe flag, layout flag and, if set, the layout, scalars flag and, if set, the fields
+     *   from worldDimension to avatarResources (as in writeObservation()), number of changed rows
+     *   and, for each one, its section (byte), its index in the section and its observations.
+     *
+     * Section 0 holds the cells of observationGrid (cell [i][j] has index i * rows + j), and sections
+     * 1 to 6 the rows (sprite types) of NPCPositions, immovablePositions, movablePositions,
+     * resourcesPositions, portalsPositions and fromAvatarSpritesPositions. The layout, written when
+     * it changes, is the number of columns and rows of the grid and the number of rows of each of
+     * those arrays (-1 if null). Rows are only written if they changed or are new; the client keeps
+     * the others from the previous observation. If the size of the grid changes, all its cells are
+     * written.
+     *
+     * Keyframes, where everything is written and the client must forget previous observations, are
+     * sent at the start of each game and every CompetitionParameters.LEARNING_DELTA_KEYFRAME_INTERVAL
+     * observations.
+     *
+     * @param sso observation to write.
+     * @param state last observation sent in this stream, updated with this one.
+     * @param out frame to write it to.
+     */
+    static void writeDelta(SerializableStateObservation sso, DeltaState state, Frame out) {
+        writeHeader(sso, out);
+
+        boolean data = sso.worldDimension != null;
+        out.putBoolean(data);
+        if (!data) {
+            state.framesToKeyframe = 0;
+            return;
+        }
+
+        boolean keyframe = state.framesToKeyframe <= 0 || sso.phase == SerializableStateObservation.Phase.INIT;
+        out.putBoolean(keyframe);
+        if (keyframe) {
+            state.framesToKeyframe = CompetitionParameters.LEARNING_DELTA_KEYFRAME_INTERVAL;
+            state.layout = null;
+            state.scalars = null;
+            state.rows = new double[SECTIONS][0][];
+        }
+        state.framesToKeyframe--;
+
+        Observation[][][] sections = new Observation[][][]{null, sso.NPCPositions, sso.immovablePositions,
+            sso.movablePositions, sso.resourcesPositions, sso.portalsPositions, sso.fromAvatarSpritesPositions};
+        int[] layout = new int[SECTIONS + 1];
+        layout[0] = sso.observationGrid == null ? -1 : sso.observationGrid.length;
+        layout[1] = layout[0] <= 0 ? 0 : sso.observationGrid[0].length;
+        for (int i = 1; i < SECTIONS; i++)
+            layout[i + 1] = sections[i] == null ? -1 : sections[i].length;
+
+        boolean layoutChanged = !Arrays.equals(layout, state.layout);
+        out.putBoolean(layoutChanged);
+        if (layoutChanged) {
+            for (int v : layout)
+                out.putInt(v);
+            if (state.layout == null || state.layout[0] != layout[0] || state.layout[1] != layout[1])
+                state.rows[0] = new double[Math.max(0, layout[0]) * layout[1]][];
+            for (int i = 1; i < SECTIONS; i++)
+                state.rows[i] = Arrays.copyOf(state.rows[i], Math.max(0, layout[i + 1]));
+            state.layout = layout;
+        }
+
+        Frame scratch = state.scratch;
+        scratch.reset();
+        writeScalars(sso, scratch);
+        ByteBuffer scalars = scratch.written();
+        boolean scalarsChanged = !scalars.equals(state.scalars);
+        out.putBoolean(scalarsChanged);
+        if (scalarsChanged) {
+            if (state.scalars == null || state.scalars.capacity() < scalars.remaining())
+                state.scalars = ByteBuffer.allocate(scalars.remaining());
+            state.scalars.clear();
+            state.scalars.put(scalars.duplicate()).flip();
+            out.put(scalars);
+        }
+
+        int countPosition = out.position();
+        out.putInt(0);
+        int changed = 0;
+        if (sso.observationGrid != null) {
+            int idx = 0;
+            for (Observation[][] column : sso.observationGrid)
+                for (Observation[] cell : column)
+                    changed += putRowIfChanged(cell, 0, idx++, state, out);
+        }
+        for (int i = 1; i < SECTIONS; i++)
+            if (sections[i] != null)
+                for (int idx = 0; idx < sections[i].length; idx++)
+                    changed += putRowIfChanged(sections[i][idx], i, idx, state, out);
+        out.putInt(countPosition, changed);
+    }
+
+    /**
+     * Writes a row of a delta (its section, index and observations) if it's different from the last
+     * one sent, and keeps its values.
+     * @return 1 if written, 0 otherwise.
+     */
+    private static int putRowIfChanged(Observation[] obs, int section, int idx, DeltaState state, Frame out) {
+        double[] last = state.rows[section][idx];
+        if (last != null && last.length == obs.length * OBS_VALUES) {
+            boolean same = true;
+            for (int i = 0, v = 0; same && i < obs.length; i++, v += OBS_VALUES) {
+                Observation o = obs[i];
+                same = last[v] == o.category && last[v + 1] == o.itype && last[v + 2] == o.obsID
+                    && last[v + 3] == o.position.x && last[v + 4] == o.position.y
+                    && last[v + 5] == (o.reference != null ? 1 : 0)
+                    && (o.reference == null || (last[v + 6] == o.reference.x && last[v + 7] == o.reference.y))
+                    && last[v + 8] == o.sqDist;
+            }
+            if (same)
+                return 0;
+        } else {
+            last = new double[obs.length * OBS_VALUES];
+            state.rows[section][idx] = last;
+        }
+
+        for (int i = 0, v = 0; i < obs.length; i++, v += OBS_VALUES) {
+            Observation o = obs[i];
+            last[v] = o.category;
+            last[v + 1] = o.itype;
+            last[v + 2] = o.obsID;
+            last[v + 3] = o.position.x;
+            last[v + 4] = o.position.y;
+            last[v + 5] = o.reference != null ? 1 : 0;
+            last[v + 6] = o.reference != null ? o.reference.x : 0;
+            last[v + 7] = o.reference != null ? o.reference.y : 0;
+            last[v + 8] = o.sqDist;
+        }
+        out.putByte(section);
+        out.putInt(idx);
+        putRow(obs, out);
+        return 1;
+    }
+
+    /**
+     * Writes the fields from phase to the image.
+     */
+    private static void writeHeader(SerializableStateObservation sso, Frame out) {
+        out.putByte(sso.phase.ordinal());
+        out.putBoolean(sso.isValidation);
+        out.putFloat(sso.gameScore);
+        out.putInt(sso.gameTick);
+        putEnum(sso.gameWinner, out);
+        out.putBoolean(sso.isGameOver);
+        if (sso.availableActions == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(sso.availableActions.size());
+            for (Types.ACTIONS a : sso.availableActions)
+                out.putByte(a.ordinal());
+        }
+
+        out.putBoolean(sso.imageArray != null && CompetitionParameters.LEARNING_RAW_IMAGE);
+        out.putInt(sso.imageWidth);
+        out.putInt(sso.imageHeight);
+        out.putBytes(sso.imageArray);
+    }
+
+    /**
+     * Writes the fields from worldDimension to avatarResources.
+     */
+    private static void writeScalars(SerializableStateObservation sso, Frame out) {
+        out.putDouble(sso.worldDimension[0]);
+        out.putDouble(sso.worldDimension[1]);
+        out.putInt(sso.blockSize);
+        out.putInt(sso.noOfPlayers);
+        out.putFloat(sso.avatarSpeed);
+        out.putDouble(sso.avatarOrientation[0]);
+        out.putDouble(sso.avatarOrientation[1]);
+        out.putDouble(sso.avatarPosition[0]);
+        out.putDouble(sso.avatarPosition[1]);
+        putEnum(sso.avatarLastAction, out);
+        out.putInt(sso.avatarType);
+        out.putInt(sso.avatarHealthPoints);
+        out.putInt(sso.avatarMaxHealthPoints);
+        out.putInt(sso.avatarLimitHealthPoints);
+        out.putBoolean(sso.isAvatarAlive);
+
+        if (sso.avatarResources == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(sso.avatarResources.size());
+            for (Map.Entry<Integer, Integer> e : sso.avatarResources.entrySet()) {
+                out.putInt(e.getKey());
+                out.putInt(e.getValue());
+            }
+        }
+    }
+
+    private static void putEnum(Enum<?> e, Frame out) {
+        out.putByte(e == null ? -1 : e.ordinal());
+    }
+
+    private static void putObservations(Observation[][] obs, Frame out) {
+        if (obs == null) {
+            out.putInt(-1);
+            return;
+        }
+
+        out.putInt(obs.length);
+        for (Observation[] row : obs)
+            putRow(row, out);
+    }
+
+    private static void putRow(Observation[] row, Frame out) {
+        out.putInt(row.length);
+        for (Observation o : row) {
+            out.putInt(o.category);
+            out.putInt(o.itype);
+            out.putInt(o.obsID);
+            out.putDouble(o.position.x);
+            out.putDouble(o.position.y);
+            out.putBoolean(o.reference != null);
+            if (o.reference != null) {
+                out.putDouble(o.reference.x);
+                out.putDouble(o.reference.y);
+            }
+            out.putDouble(o.sqDist);
+        }
+    }
+
+    /**
+     * Reads the text of a TEXT frame.
+     * @param payload payload of the frame.
+     * @return the text.
+     */
+    static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -66,7 +66,7 @@ public abstract class Comm extends Thread {
 
             SerializableStateObservation sso = new SerializableStateObservation(so);
 
-            commSend(sso.serialize(null));
+            commSend(sso);
 
             String response = commRecv();
 
@@ -171,6 +171,32 @@ public abstract class Comm extends Thread {
      */
     public abstract void commSend(String msg) throws IOException;
 
+    /**
+     * Sends an observation to the client, serialized as JSON unless the communication
+     * supports something better.
+     *
+     * @param sso observation to send.
+     */
+    public void commSend(SerializableStateObservation sso) throws IOException {
+        commSend(sso.serialize(null));
+    }
+
+    /**
+     * Sends the observations of all the games of a vectorized environment in one message,
+     * serialized as a JSON array unless the communication supports something better.
+     *
+     * @param batch observations to send, one per game.
+     */
+    public void commSend(SerializableStateObservation[] batch) throws IOException {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < batch.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(batch[i].serialize(null));
+        }
+        commSend(sb.append(']').toString());
+    }
+
     public Types.LEARNING_SSO_TYPE getLastSsoType() {
         return this.lastSsoType;
     }
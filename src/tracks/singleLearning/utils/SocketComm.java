@@ -5,23 +5,56 @@ package tracks.singleLearning.utils;
  */
 
 import core.competition.CompetitionParameters;
+import core.game.SerializableStateObservation;
 import ontology.Types.LEARNING_SSO_TYPE;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Scanner;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+/**
+ * Communication with the client through a socket. Messages are JSON text lines, unless the
+ * client asks for the binary protocol when it starts (see BinaryProtocol).
+ */
 public class SocketComm extends Comm {
 
 
     public int port = CompetitionParameters.SOCKET_PORT; //default
-    private Socket socket;
-    private Scanner in;
-    private PrintStream out;
+    private SocketChannel socket;
     private boolean end;
     private static int THRESHOLD = 60000;
 
+    /**
+     * Data received from the client, not processed yet.
+     */
+    private ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+
+    /**
+     * Messages to send to the client.
+     */
+    private BinaryProtocol.Frame out = new BinaryProtocol.Frame();
+
+    /**
+     * Bytes of the text line being read.
+     */
+    private ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    /**
+     * True if messages are exchanged in binary frames.
+     */
+    private boolean binary;
+
+    /**
+     * True if observations are sent as deltas of the previous ones (see BinaryProtocol.writeDelta()),
+     * and what the client knows about each stream of observations.
+     */
+    private boolean delta;
+    private BinaryProtocol.DeltaState[] deltaStates = new BinaryProtocol.DeltaState[0];
+
     /**
      * Public constructor of the player.
      */
@@ -40,14 +73,14 @@ public class SocketComm extends Comm {
         try{
             //Accepting the socket connection.
             while (socket == null) {
-                ServerSocket serverSocket = new ServerSocket(port);
+                ServerSocketChannel serverSocket = ServerSocketChannel.open();
+                serverSocket.bind(new InetSocketAddress(port));
                 socket = serverSocket.accept();
             }
+            socket.socket().setTcpNoDelay(true);
 
-
-            //Initialize input and output through socket.
-            in = new Scanner(socket.getInputStream());
-            out = new PrintStream(socket.getOutputStream());
+            //Nothing received yet.
+            in.clear().flip();
 
         } catch(java.net.BindException e)
         {
@@ -86,12 +119,146 @@ public class SocketComm extends Comm {
      * @param msg message to send.
      */
     public void commSend(String msg) throws IOException {
-        String message = messageId + TOKEN_SEP + msg + lineSep;
-        out.format(message);
-        out.flush();
+        out.begin(messageId, BinaryProtocol.TEXT);
+        out.putString(binary ? msg : messageId + TOKEN_SEP + msg + lineSep);
+        send();
+    }
+
+    /**
+     * Sends an observation: a binary frame if the client asked for it, JSON text otherwise.
+     *
+     * @param sso observation to send.
+     */
+    @Override
+    public void commSend(SerializableStateObservation sso) throws IOException {
+        if (!binary) {
+            commSend(sso.serialize(null));
+            return;
+        }
+
+        if (delta) {
+            out.begin(messageId, BinaryProtocol.DELTA);
+            BinaryProtocol.writeDelta(sso, deltaState(0), out);
+        } else {
+            out.begin(messageId, BinaryProtocol.OBSERVATION);
+            BinaryProtocol.writeObservation(sso, out);
+        }
+        send();
+    }
+
+    /**
+     * Sends the observations of a vectorized environment: a binary frame if the client asked for it,
+     * a JSON array otherwise.
+     *
+     * @param batch observations to send, one per game.
+     */
+    @Override
+    public void commSend(SerializableStateObservation[] batch) throws IOException {
+        if (!binary) {
+            super.commSend(batch);
+            return;
+        }
+
+        out.begin(messageId, delta ? BinaryProtocol.DELTA_BATCH : BinaryProtocol.BATCH);
+        out.putInt(batch.length);
+        for (int i = 0; i < batch.length; i++) {
+            if (delta)
+                BinaryProtocol.writeDelta(batch[i], deltaState(i), out);
+            else
+                BinaryProtocol.writeObservation(batch[i], out);
+        }
+        send();
+    }
+
+    /**
+     * Returns what the client knows about a stream of observations.
+     *
+     * @param stream index of the stream: the game in a vectorized environment, 0 otherwise.
+     * @return the state of the stream.
+     */
+    private BinaryProtocol.DeltaState deltaState(int stream) {
+        if (stream >= deltaStates.length) {
+            int length = deltaStates.length;
+            deltaStates = Arrays.copyOf(deltaStates, stream + 1);
+            for (int i = length; i < deltaStates.length; i++)
+                deltaStates[i] = new BinaryProtocol.DeltaState();
+        }
+        return deltaStates[stream];
+    }
+
+    /**
+     * Writes the frame in the output buffer to the socket. Text lines are written without the frame header.
+     */
+    private void send() throws IOException {
+        ByteBuffer frame = out.end();
+        if (!binary)
+            frame.position(4 + BinaryProtocol.HEADER);
+        while (frame.hasRemaining())
+            socket.write(frame);
         messageId++;
     }
 
+    /**
+     * Reads the next message from the client: a text line, or the payload of a frame when
+     * using the binary protocol (with its ID in front, as in text lines).
+     *
+     * @return the message, or null if the connection was closed.
+     */
+    private String readMessage() throws IOException {
+        if (binary) {
+            if (!fill(4))
+                return null;
+            int length = in.getInt();
+            if (!fill(length))
+                return null;
+            long id = in.getLong();
+            in.get(); //kind, always TEXT from the client.
+
+            int limit = in.limit();
+            in.limit(in.position() + length - BinaryProtocol.HEADER);
+            String msg = id + TOKEN_SEP + BinaryProtocol.readString(in);
+            in.limit(limit);
+            return msg;
+        }
+
+        line.reset();
+        while (true) {
+            if (!in.hasRemaining() && !fill(1))
+                return line.size() > 0 ? line.toString("UTF-8") : null;
+            byte b = in.get();
+            if (b == '\n')
+                return line.toString("UTF-8").trim();
+            line.write(b);
+        }
+    }
+
+    /**
+     * Reads from the socket until the input buffer has some bytes available.
+     *
+     * @param bytes number of bytes needed.
+     * @return false if the connection was closed before.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (in.remaining() >= bytes)
+            return true;
+
+        in.compact();
+        if (in.capacity() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(bytes, in.capacity() * 2));
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+        while (in.position() < bytes) {
+            if (socket.read(in) < 0) {
+                in.flip();
+                return false;
+            }
+        }
+        in.flip();
+        return true;
+    }
+
     /**
      * Receives a message from the client.
      *
@@ -155,7 +322,7 @@ public class SocketComm extends Comm {
     public String commRecv() {
         float timeout = 0;
         String response = null;
-        while (timeout < THRESHOLD && response == null)
+        while (timeout < THRESHOLD && response == null && !end)
         {
             response = processCommRecv();
         }
@@ -166,9 +333,14 @@ public class SocketComm extends Comm {
     }
 
     private String processCommRecv(){
-        String ret = null;
-        if (in.hasNextLine()) {
-            ret = in.nextLine();
+        String ret;
+        try {
+            ret = readMessage();
+        } catch (IOException e) {
+            e.printStackTrace();
+            ret = null;
+        }
+        if (ret != null) {
             //System.out.println("Received in server: " + ret);
             if (ret != null && ret.trim().length() > 0) {
                 String messageParts[] = ret.split(TOKEN_SEP);
@@ -197,6 +369,14 @@ public class SocketComm extends Comm {
                     }
                 }
 
+                //The client asks for the binary protocol (see BinaryProtocol).
+                if (messageParts.length >= 4 && messageParts[3].equals(BinaryProtocol.BINARY)
+                        && CompetitionParameters.LEARNING_BINARY_PROTOCOL) {
+                    binary = true;
+                    delta = messageParts.length >= 5 && messageParts[4].equals(BinaryProtocol.DELTA_OBSERVATIONS)
+                        && CompetitionParameters.LEARNING_DELTA_KEYFRAME_INTERVAL > 0;
+                }
+
                 if (receivedID == (messageId - 1)) {
                     return msg.trim();
                 } else if (receivedID < (messageId - 1)) {
@@ -211,6 +391,8 @@ public class SocketComm extends Comm {
                 return null;
             }
         } else {
+            //Connection closed.
+            end = true;
             return null;
         }
     }
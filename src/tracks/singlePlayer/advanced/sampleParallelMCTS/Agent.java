@@ -0,0 +1,93 @@
+package tracks.singlePlayer.advanced.sampleParallelMCTS;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import core.game.StateObservation;
+import core.player.AbstractPlayer;
+import ontology.Types;
+import tools.ElapsedCpuTimer;
+import tools.StatSummary;
+
+/**
+ * MCTS UCT, as sampleMCTS, searched by several threads (see ParallelMCTSPlayer). MODE and
+ * NUM_THREADS are read when the agent is created. The number of iterations per action is
+ * printed at the end of each game, to measure how the search scales with the threads.
+ */
+public class Agent extends AbstractPlayer {
+
+    /**
+     * ParallelMCTSPlayer.ROOT or ParallelMCTSPlayer.TREE.
+     */
+    public static int MODE = ParallelMCTSPlayer.TREE;
+
+    /**
+     * Threads that search, including the one of the game.
+     */
+    public static int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+    public int num_actions;
+    public Types.ACTIONS[] actions;
+
+    protected ParallelMCTSPlayer mctsPlayer;
+
+    /**
+     * Iterations of each search in this game.
+     */
+    protected StatSummary iterations = new StatSummary();
+
+    /**
+     * Public constructor with state observation and time due.
+     * @param so state observation of the current game.
+     * @param elapsedTimer Timer for the controller creation.
+     */
+    public Agent(StateObservation so, ElapsedCpuTimer elapsedTimer)
+    {
+        //Get the actions in a static array.
+        ArrayList<Types.ACTIONS> act = so.getAvailableActions();
+        actions = new Types.ACTIONS[act.size()];
+        for(int i = 0; i < actions.length; ++i)
+        {
+            actions[i] = act.get(i);
+        }
+        num_actions = actions.length;
+
+        //Create the player.
+        mctsPlayer = new ParallelMCTSPlayer(new Random(), num_actions, actions, MODE, NUM_THREADS);
+    }
+
+
+    /**
+     * Picks an action. This function is called every game step to request an
+     * action from the player.
+     * @param stateObs Observation of the current state.
+     * @param elapsedTimer Timer when the action returned is due.
+     * @return An action for the current state
+     */
+    public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer) {
+
+        //Set the state observation object as the new root of the trees.
+        mctsPlayer.init(stateObs);
+
+        //Determine the action using MCTS...
+        int action = mctsPlayer.run(elapsedTimer);
+        iterations.add(mctsPlayer.iterations);
+
+        //... and return it.
+        return actions[action];
+    }
+
+    /**
+     * Prints the iterations per action, and stops the helper threads.
+     * @param stateObs the game state at the end of the game
+     * @param elapsedCpuTimer timer when this method is meant to finish.
+     */
+    @Override
+    public void result(StateObservation stateObs, ElapsedCpuTimer elapsedCpuTimer)
+    {
+        System.out.println("Parallel MCTS (" + (MODE == ParallelMCTSPlayer.ROOT ? "root" : "tree") + ", "
+            + mctsPlayer.m_rnd.length + " threads): " + iterations.mean() + " iterations per action.");
+        mctsPlayer.close();
+    }
+
+}
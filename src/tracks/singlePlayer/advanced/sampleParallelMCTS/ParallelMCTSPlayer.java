@@ -0,0 +1,259 @@
+package tracks.singlePlayer.advanced.sampleParallelMCTS;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import core.game.StateObservation;
+import core.logging.Logger;
+import core.termination.Termination;
+import core.vgdl.VGDLRegistry;
+import ontology.Types;
+import tools.ElapsedCpuTimer;
+import tools.Utils;
+import tracks.singlePlayer.advanced.sampleMCTS.SingleTreeNode;
+
+/**
+ * MCTS searched by several threads at the same time, in one of two ways:
+ *
+ *   ROOT: root parallelization. Each thread searches its own tree (a sampleMCTS.SingleTreeNode)
+ *         and the visits of the children of all roots are added up to choose the action.
+ *   TREE: tree parallelization. All threads search the same tree (see ParallelTreeNode).
+ *
+ * The thread that calls run() searches too, so with one thread this is the same as sampleMCTS.
+ * The budget is shared with a wall-clock timer (see ElapsedCpuTimer.wallClockCopy()), as the
+ * CPU time of the calling thread doesn't run while it waits for the others.
+ *
+ * All threads copy the root state for each iteration: copying a forward model doesn't modify
+ * it, and copies share the state of the game they come from without modifying it either. Each
+ * thread executes its own instances of the effects (see ForwardModel.useThreadRules()). Helper
+ * threads read the VGDL registry of the calling thread, and have their own logger and flag of
+ * counter terminations (see Termination.canEnd()), taken from the calling thread in each search.
+ */
+public class ParallelMCTSPlayer
+{
+    public static final int ROOT = 0;
+    public static final int TREE = 1;
+
+    public int mode;
+    public int num_actions;
+    public Types.ACTIONS[] actions;
+
+    /**
+     * Random generators, one per thread.
+     */
+    public Random[] m_rnd;
+
+    /**
+     * Roots of the trees: one per thread in ROOT mode, one in TREE mode.
+     */
+    public SingleTreeNode[] rootTrees;
+    public ParallelTreeNode rootNode;
+
+    /**
+     * State of the game at the root, copied by all threads.
+     */
+    private StateObservation rootState;
+
+    /**
+     * Iterations done in the last search, by all threads.
+     */
+    public int iterations;
+
+    private final ExecutorService helpers;
+
+    public ParallelMCTSPlayer(Random a_rnd, int num_actions, Types.ACTIONS[] actions, int mode, int numThreads)
+    {
+        this.num_actions = num_actions;
+        this.actions = actions;
+        this.mode = mode;
+        m_rnd = new Random[Math.max(1, numThreads)];
+        m_rnd[0] = a_rnd;
+        for (int i = 1; i < m_rnd.length; i++)
+            m_rnd[i] = new Random(a_rnd.nextLong());
+
+        helpers = m_rnd.length > 1 ? Executors.newFixedThreadPool(m_rnd.length - 1, r -> {
+            Thread t = new Thread(() -> {
+                Logger.useThreadInstance();
+                r.run();
+            }, "parallel-mcts");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    /**
+     * Inits the trees with the new observation state in the root.
+     * @param a_gameState current state of the game.
+     */
+    public void init(StateObservation a_gameState)
+    {
+        rootState = a_gameState;
+
+        if (mode == ROOT) {
+            rootTrees = new SingleTreeNode[m_rnd.length];
+            for (int i = 0; i < rootTrees.length; i++) {
+                rootTrees[i] = new SingleTreeNode(m_rnd[i], num_actions, actions);
+                rootTrees[i].rootState = rootState;
+            }
+        } else {
+            rootNode = new ParallelTreeNode(actions);
+        }
+    }
+
+    /**
+     * Runs MCTS in all threads to decide the action to take.
+     * @param elapsedTimer Timer when the action returned is due.
+     * @return the action to execute in the game.
+     */
+    public int run(ElapsedCpuTimer elapsedTimer)
+    {
+        ElapsedCpuTimer timer = elapsedTimer.wallClockCopy();
+        VGDLRegistry registry = VGDLRegistry.GetInstance();
+        boolean canEnd = Termination.canEnd();
+
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < m_rnd.length; i++) {
+            final int thread = i;
+            futures.add(helpers.submit(() -> {
+                VGDLRegistry.useThreadInstance(registry);
+                Termination.setCanEnd(canEnd);
+                try {
+                    search(thread, timer);
+                } finally {
+                    VGDLRegistry.releaseThreadInstance();
+                }
+            }));
+        }
+        search(0, timer);
+
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        if (mode == ROOT) {
+            iterations = 0;
+            for (SingleTreeNode root : rootTrees)
+                iterations += root.nVisits;
+            return mostVisitedAction();
+        }
+        iterations = rootNode.nVisits.get();
+        return mostVisitedAction();
+    }
+
+    /**
+     * Searches in one thread until the time is over, as in SingleTreeNode.mctsSearch().
+     */
+    private void search(int thread, ElapsedCpuTimer timer)
+    {
+        if (mode == ROOT) {
+            rootTrees[thread].mctsSearch(timer);
+            return;
+        }
+
+        double avgTimeTaken = 0;
+        double acumTimeTaken = 0;
+        long remaining = timer.remainingTimeMillis();
+        int numIters = 0;
+
+        int remainingLimit = 5;
+        while(remaining > 2*avgTimeTaken && remaining > remainingLimit){
+            ElapsedCpuTimer elapsedTimerIteration = new ElapsedCpuTimer(true);
+            rootNode.iterate(rootState.copy(), m_rnd[thread]);
+
+            numIters++;
+            acumTimeTaken += (elapsedTimerIteration.elapsedMillis()) ;
+            avgTimeTaken  = acumTimeTaken/numIters;
+            remaining = timer.remainingTimeMillis();
+        }
+    }
+
+    /**
+     * Returns the action whose children have most visits (added up over all trees in ROOT mode),
+     * breaking ties by the best mean value, as SingleTreeNode.mostVisitedAction().
+     */
+    private int mostVisitedAction()
+    {
+        double[] visits = new double[num_actions];
+        double[] values = new double[num_actions];
+        boolean[] expanded = new boolean[num_actions];
+        for (int i = 0; i < num_actions; i++) {
+            if (mode == ROOT) {
+                for (SingleTreeNode root : rootTrees) {
+                    SingleTreeNode child = root.children[i];
+                    if (child != null) {
+                        expanded[i] = true;
+                        visits[i] += child.nVisits;
+                        values[i] += child.totValue;
+                    }
+                }
+            } else {
+                ParallelTreeNode child = rootNode.children.get(i);
+                if (child != null) {
+                    expanded[i] = true;
+                    visits[i] = child.nVisits.get();
+                    values[i] = child.totValue.sum();
+                }
+            }
+        }
+
+        Random rnd = m_rnd[0];
+        int selected = -1;
+        double bestValue = -Double.MAX_VALUE;
+        boolean allEqual = true;
+        double first = -1;
+
+        for (int i = 0; i < num_actions; i++) {
+            if (expanded[i]) {
+                if (first == -1)
+                    first = visits[i];
+                else if (first != visits[i])
+                    allEqual = false;
+
+                double childValue = Utils.noise(visits[i], ParallelTreeNode.epsilon, rnd.nextDouble());
+                if (childValue > bestValue) {
+                    bestValue = childValue;
+                    selected = i;
+                }
+            }
+        }
+
+        if (selected == -1) {
+            System.out.println("Unexpected selection!");
+            return 0;
+        }
+        if (!allEqual)
+            return selected;
+
+        //If all are equal, we opt to choose for the one with the best Q.
+        bestValue = -Double.MAX_VALUE;
+        for (int i = 0; i < num_actions; i++) {
+            if (expanded[i]) {
+                double childValue = values[i] / (visits[i] + ParallelTreeNode.epsilon);
+                childValue = Utils.noise(childValue, ParallelTreeNode.epsilon, rnd.nextDouble());
+                if (childValue > bestValue) {
+                    bestValue = childValue;
+                    selected = i;
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Stops the helper threads.
+     */
+    public void close()
+    {
+        if (helpers != null)
+            helpers.shutdownNow();
+    }
+}
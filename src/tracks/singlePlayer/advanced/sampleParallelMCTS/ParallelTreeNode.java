@@ -0,0 +1,216 @@
+package tracks.singlePlayer.advanced.sampleParallelMCTS;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import core.game.StateObservation;
+import ontology.Types;
+import tools.Utils;
+
+/**
+ * Node of a tree searched by several threads at the same time (tree parallelization). It works
+ * as sampleMCTS.SingleTreeNode, but without locks: children are added with compare-and-set, and
+ * visits, values and bounds are atomic counters. A thread going down the tree adds a virtual
+ * loss to the nodes it selects, which counts as visits with the worst value seen until the
+ * rollout is backed up, so other threads tend to explore other branches meanwhile.
+ */
+public class ParallelTreeNode
+{
+    private static final double HUGE_NEGATIVE = -10000000.0;
+    private static final double HUGE_POSITIVE =  10000000.0;
+    public static double epsilon = 1e-6;
+    public static int ROLLOUT_DEPTH = 10;
+    public static double K = Math.sqrt(2);
+
+    /**
+     * Visits added by a thread going through a node.
+     */
+    public static int VIRTUAL_LOSS = 1;
+
+    public final ParallelTreeNode parent;
+    public final AtomicReferenceArray<ParallelTreeNode> children;
+    public final int childIdx;
+    public final int m_depth;
+
+    public final AtomicInteger nVisits = new AtomicInteger();
+    public final AtomicInteger virtualLoss = new AtomicInteger();
+    public final DoubleAdder totValue = new DoubleAdder();
+    protected final DoubleAccumulator minBound = new DoubleAccumulator(Math::min, Double.MAX_VALUE);
+    protected final DoubleAccumulator maxBound = new DoubleAccumulator(Math::max, -Double.MAX_VALUE);
+
+    private final Types.ACTIONS[] actions;
+
+    public ParallelTreeNode(Types.ACTIONS[] actions) {
+        this(null, -1, actions);
+    }
+
+    public ParallelTreeNode(ParallelTreeNode parent, int childIdx, Types.ACTIONS[] actions) {
+        this.parent = parent;
+        this.childIdx = childIdx;
+        this.actions = actions;
+        this.children = new AtomicReferenceArray<>(actions.length);
+        this.m_depth = parent != null ? parent.m_depth + 1 : 0;
+    }
+
+    /**
+     * Runs one iteration of MCTS from this node (the root) on a copy of the root state.
+     * @param state copy of the root state, advanced by the iteration.
+     * @param rnd random generator of the thread.
+     */
+    public void iterate(StateObservation state, Random rnd) {
+        ParallelTreeNode selected = treePolicy(state, rnd);
+        double delta = selected.rollOut(state, rnd);
+        backUp(selected, delta);
+    }
+
+    public ParallelTreeNode treePolicy(StateObservation state, Random rnd) {
+
+        ParallelTreeNode cur = this;
+
+        while (!state.isGameOver() && cur.m_depth < ROLLOUT_DEPTH)
+        {
+            if (cur.notFullyExpanded()) {
+                ParallelTreeNode expanded = cur.expand(state, rnd);
+                if (expanded != null)
+                    return expanded;
+                //Another thread added that child first: try again.
+            } else {
+                cur = cur.uct(state, rnd);
+            }
+        }
+
+        return cur;
+    }
+
+    /**
+     * Adds a random child that doesn't exist yet, and advances the state with its action.
+     * @return the new child, or null if another thread added it at the same time.
+     */
+    public ParallelTreeNode expand(StateObservation state, Random rnd) {
+
+        int bestAction = -1;
+        double bestValue = -1;
+
+        for (int i = 0; i < children.length(); i++) {
+            double x = rnd.nextDouble();
+            if (x > bestValue && children.get(i) == null) {
+                bestAction = i;
+                bestValue = x;
+            }
+        }
+
+        if (bestAction == -1)
+            return null;
+
+        ParallelTreeNode tn = new ParallelTreeNode(this, bestAction, actions);
+        tn.virtualLoss.addAndGet(VIRTUAL_LOSS);
+        if (!children.compareAndSet(bestAction, null, tn))
+            return null;
+
+        //Roll the state
+        state.advance(actions[bestAction]);
+        return tn;
+    }
+
+    public ParallelTreeNode uct(StateObservation state, Random rnd) {
+
+        ParallelTreeNode selected = null;
+        double bestValue = -Double.MAX_VALUE;
+        double min = minBound.get(), max = maxBound.get();
+        double lossValue = min <= max ? min : 0;
+        int visits = nVisits.get() + virtualLoss.get();
+
+        for (int i = 0; i < children.length(); i++)
+        {
+            ParallelTreeNode child = children.get(i);
+            int loss = child.virtualLoss.get();
+            double childVisits = child.nVisits.get() + loss;
+            double hvVal = child.totValue.sum() + loss * lossValue;
+            double childValue =  hvVal / (childVisits + epsilon);
+
+            childValue = Utils.normalise(childValue, min, max);
+
+            double uctValue = childValue +
+                    K * Math.sqrt(Math.log(visits + 1) / (childVisits + epsilon));
+
+            uctValue = Utils.noise(uctValue, epsilon, rnd.nextDouble());     //break ties randomly
+
+            if (uctValue > bestValue) {
+                selected = child;
+                bestValue = uctValue;
+            }
+        }
+        if (selected == null)
+        {
+            throw new RuntimeException("Warning! returning null: " + bestValue + " : " + children.length() + " " +
+            + min + " " + max);
+        }
+
+        selected.virtualLoss.addAndGet(VIRTUAL_LOSS);
+
+        //Roll the state:
+        state.advance(actions[selected.childIdx]);
+
+        return selected;
+    }
+
+    public double rollOut(StateObservation state, Random rnd)
+    {
+        int thisDepth = this.m_depth;
+
+        while (thisDepth < ROLLOUT_DEPTH && !state.isGameOver()) {
+            int action = rnd.nextInt(actions.length);
+            state.advance(actions[action]);
+            thisDepth++;
+        }
+
+        return value(state);
+    }
+
+    public double value(StateObservation a_gameState) {
+
+        boolean gameOver = a_gameState.isGameOver();
+        Types.WINNER win = a_gameState.getGameWinner();
+        double rawScore = a_gameState.getGameScore();
+
+        if(gameOver && win == Types.WINNER.PLAYER_LOSES)
+            rawScore += HUGE_NEGATIVE;
+
+        if(gameOver && win == Types.WINNER.PLAYER_WINS)
+            rawScore += HUGE_POSITIVE;
+
+        return rawScore;
+    }
+
+    /**
+     * Adds the result of a rollout to the node and its ancestors, and removes the virtual loss
+     * added when they were selected.
+     */
+    public void backUp(ParallelTreeNode node, double result)
+    {
+        ParallelTreeNode n = node;
+        while(n != null)
+        {
+            n.totValue.add(result);
+            n.nVisits.incrementAndGet();
+            if (n.parent != null)
+                n.virtualLoss.addAndGet(-VIRTUAL_LOSS);
+            n.minBound.accumulate(result);
+            n.maxBound.accumulate(result);
+            n = n.parent;
+        }
+    }
+
+    public boolean notFullyExpanded() {
+        for (int i = 0; i < children.length(); i++) {
+            if (children.get(i) == null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -1,6 +1,5 @@
 package tracks.singlePlayer.tools.human;
 
-import core.game.Game;
 import core.game.StateObservation;
 import core.player.AbstractPlayer;
 import ontology.Types;
@@ -33,8 +32,8 @@ public class Agent extends AbstractPlayer
      */
     public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer)
     {
-        Direction move = Utils.processMovementActionKeys(Game.ki.getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX);
-        boolean useOn = Utils.processUseKey(Game.ki.getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX);
+        Direction move = Utils.processMovementActionKeys(stateObs.getGameKeyHandler().getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX);
+        boolean useOn = Utils.processUseKey(stateObs.getGameKeyHandler().getMask(), Types.DEFAULT_SINGLE_PLAYER_KEYIDX);
 
         //In the keycontroller, move has preference.
         Types.ACTIONS action = Types.ACTIONS.fromVector(move);